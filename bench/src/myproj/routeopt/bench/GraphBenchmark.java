@@ -0,0 +1,87 @@
+package myproj.routeopt.bench;
+
+import myproj.routeopt.model.CsrGraph;
+import myproj.routeopt.model.Graph;
+import myproj.routeopt.model.GraphBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Road network construction and raw edge lookups, up to 100k intersections.
+// These do not need all-pairs distances, so they cover the full size range.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"RANDOM", "CLUSTERED", "GRID"})
+    public InstanceGenerator.Shape shape;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int nodes;
+
+    @Param("42")
+    public long seed;
+
+    private InstanceGenerator.Instance instance;
+    private CsrGraph graph;
+    private int[] lookupFrom;
+    private int[] lookupTo;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        instance = InstanceGenerator.generate(shape, nodes, nodes / 2, Math.max(1, nodes / 100), seed);
+        graph = (CsrGraph) instance.buildGraph();
+        // Half of the lookups hit an existing edge, half are misses
+        Random random = new Random(seed);
+        lookupFrom = new int[LOOKUPS];
+        lookupTo = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (i % 2 == 0) {
+                int e = random.nextInt(instance.edgeFrom.length);
+                lookupFrom[i] = instance.edgeFrom[e];
+                lookupTo[i] = instance.edgeTo[e];
+            } else {
+                lookupFrom[i] = random.nextInt(nodes);
+                lookupTo[i] = random.nextInt(nodes);
+            }
+        }
+    }
+
+    @Benchmark
+    public Graph buildGraph() {
+        GraphBuilder builder = new GraphBuilder(nodes, instance.edgeFrom.length);
+        for (int e = 0; e < instance.edgeFrom.length; e++) {
+            builder.addEdge(instance.edgeFrom[e], instance.edgeTo[e], instance.edgeWeight[e]);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long edgeLookup() {
+        long sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += graph.getDistance(lookupFrom[i], lookupTo[i]);
+        }
+        return sum;
+    }
+}
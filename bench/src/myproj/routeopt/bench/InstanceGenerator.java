@@ -0,0 +1,221 @@
+package myproj.routeopt.bench;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.Graph;
+import myproj.routeopt.model.GraphBuilder;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Seeded synthetic city instances for the benchmarks. The same shape, size and
+// seed always give the same instance, so runs before and after a change are
+// comparable.
+//   RANDOM    - uniformly scattered intersections, random spanning tree plus shortcuts
+//   CLUSTERED - dense neighbourhoods joined by a few long arterial roads
+//   GRID      - Manhattan style lattice with random block lengths
+// Every shape has about three roads per intersection, like a real road network.
+public final class InstanceGenerator {
+    public enum Shape {
+        RANDOM,
+        CLUSTERED,
+        GRID
+    }
+
+    private InstanceGenerator() {
+    }
+
+    public static Instance generate(Shape shape, int nodes, int stops, int vehicles, long seed) {
+        if (stops >= nodes) {
+            throw new IllegalArgumentException("Need more nodes than stops, the depot takes one");
+        }
+        Random random = new Random(seed);
+        EdgeList edges = new EdgeList(nodes * 2);
+        switch (shape) {
+            case RANDOM:
+                randomEdges(random, nodes, edges);
+                break;
+            case CLUSTERED:
+                clusteredEdges(random, nodes, edges);
+                break;
+            case GRID:
+                gridEdges(random, nodes, edges);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+
+        // Stops are distinct non-depot nodes; vehicles get 10% slack over the total demand
+        int[] order = shuffledRange(random, 1, nodes);
+        int[] stopIds = Arrays.copyOf(order, stops);
+        int[] demands = new int[stops];
+        long totalDemand = 0;
+        for (int i = 0; i < stops; i++) {
+            demands[i] = 1 + random.nextInt(10);
+            totalDemand += demands[i];
+        }
+        int[] capacities = new int[vehicles];
+        Arrays.fill(capacities, (int) Math.max(10, totalDemand * 11 / 10 / vehicles + 1));
+        return new Instance(nodes, 0, edges.trim(), stopIds, demands, capacities);
+    }
+
+    private static void randomEdges(Random random, int nodes, EdgeList edges) {
+        double[] x = new double[nodes];
+        double[] y = new double[nodes];
+        for (int i = 0; i < nodes; i++) {
+            x[i] = random.nextDouble() * 1000;
+            y[i] = random.nextDouble() * 1000;
+        }
+        for (int i = 1; i < nodes; i++) {
+            int j = random.nextInt(i);
+            edges.add(i, j, euclidean(x, y, i, j));
+        }
+        for (int e = 0; e < nodes / 2; e++) {
+            int i = random.nextInt(nodes);
+            int j = random.nextInt(nodes);
+            if (i != j) {
+                edges.add(i, j, euclidean(x, y, i, j));
+            }
+        }
+    }
+
+    private static void clusteredEdges(Random random, int nodes, EdgeList edges) {
+        int clusters = Math.max(1, (int) Math.sqrt(nodes) / 4);
+        double[] x = new double[nodes];
+        double[] y = new double[nodes];
+        double[] centreX = new double[clusters];
+        double[] centreY = new double[clusters];
+        for (int c = 0; c < clusters; c++) {
+            centreX[c] = random.nextDouble() * 1000;
+            centreY[c] = random.nextDouble() * 1000;
+        }
+        // Node i belongs to cluster i % clusters; inside a cluster nodes form a tree plus shortcuts
+        for (int i = 0; i < nodes; i++) {
+            int c = i % clusters;
+            x[i] = centreX[c] + random.nextGaussian() * 20;
+            y[i] = centreY[c] + random.nextGaussian() * 20;
+            if (i >= clusters) {
+                int j = i - clusters * (1 + random.nextInt(i / clusters));
+                edges.add(i, j, euclidean(x, y, i, j));
+            }
+        }
+        for (int e = 0; e < nodes / 2; e++) {
+            int i = random.nextInt(nodes);
+            int j = i % clusters + clusters * random.nextInt(Math.max(1, nodes / clusters));
+            if (j < nodes && i != j) {
+                edges.add(i, j, euclidean(x, y, i, j));
+            }
+        }
+        // Arterial roads: a chain through the cluster centres (nodes 0 .. clusters - 1)
+        for (int c = 1; c < clusters; c++) {
+            edges.add(c - 1, c, euclidean(x, y, c - 1, c));
+        }
+    }
+
+    private static void gridEdges(Random random, int nodes, EdgeList edges) {
+        int side = (int) Math.ceil(Math.sqrt(nodes));
+        for (int i = 0; i < nodes; i++) {
+            if (i % side != side - 1 && i + 1 < nodes) {
+                edges.add(i, i + 1, 50 + random.nextInt(100));
+            }
+            if (i + side < nodes) {
+                edges.add(i, i + side, 50 + random.nextInt(100));
+            }
+        }
+    }
+
+    private static int euclidean(double[] x, double[] y, int i, int j) {
+        return 1 + (int) Math.hypot(x[i] - x[j], y[i] - y[j]);
+    }
+
+    private static int[] shuffledRange(Random random, int from, int to) {
+        int[] values = new int[to - from];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i;
+        }
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        return values;
+    }
+
+    public static final class Instance {
+        public final int nodes;
+        public final int depot;
+        public final int[] edgeFrom;
+        public final int[] edgeTo;
+        public final int[] edgeWeight;
+        public final int[] stopIds;
+        public final int[] demands;
+        public final int[] capacities;
+
+        Instance(int nodes, int depot, EdgeList edges, int[] stopIds, int[] demands, int[] capacities) {
+            this.nodes = nodes;
+            this.depot = depot;
+            this.edgeFrom = edges.from;
+            this.edgeTo = edges.to;
+            this.edgeWeight = edges.weight;
+            this.stopIds = stopIds;
+            this.demands = demands;
+            this.capacities = capacities;
+        }
+
+        public Graph buildGraph() {
+            GraphBuilder builder = new GraphBuilder(nodes, edgeFrom.length);
+            for (int e = 0; e < edgeFrom.length; e++) {
+                builder.addEdge(edgeFrom[e], edgeTo[e], edgeWeight[e]);
+            }
+            return builder.build();
+        }
+
+        // A fresh system over graph using the given distances (time windows are left wide open)
+        public SmartRouteOptimization newSystem(Graph graph, DistanceOracle distances) {
+            SmartRouteOptimization system = new SmartRouteOptimization(graph, depot);
+            if (distances != null) {
+                system.setDistanceOracle(distances);
+            }
+            for (int i = 0; i < stopIds.length; i++) {
+                system.addDeliveryPoint(stopIds[i], demands[i], 0, Integer.MAX_VALUE / 4);
+            }
+            for (int v = 0; v < capacities.length; v++) {
+                system.addVehicle(v, capacities[v]);
+            }
+            return system;
+        }
+    }
+
+    private static final class EdgeList {
+        int[] from;
+        int[] to;
+        int[] weight;
+        int size;
+
+        EdgeList(int expected) {
+            from = new int[expected];
+            to = new int[expected];
+            weight = new int[expected];
+        }
+
+        void add(int u, int v, int w) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+            }
+            from[size] = u;
+            to[size] = v;
+            weight[size] = w;
+            size++;
+        }
+
+        EdgeList trim() {
+            from = Arrays.copyOf(from, size);
+            to = Arrays.copyOf(to, size);
+            weight = Arrays.copyOf(weight, size);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package myproj.routeopt.bench;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.model.Graph;
+import myproj.routeopt.model.ShortestPathOracle;
+import myproj.routeopt.solver.CandidateLists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The solve pipeline on top of precomputed shortest paths. The all-pairs table
+// is vertices^2 ints (twice that with predecessors), so sizes stop at 5000
+// intersections; larger networks need an on-demand distance oracle.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SolverBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"RANDOM", "CLUSTERED", "GRID"})
+    public InstanceGenerator.Shape shape;
+
+    @Param({"100", "1000", "5000"})
+    public int nodes;
+
+    // Share of the intersections that are delivery stops
+    @Param("0.5")
+    public double stopRatio;
+
+    // Average stops per vehicle
+    @Param("50")
+    public int stopsPerVehicle;
+
+    @Param("42")
+    public long seed;
+
+    private InstanceGenerator.Instance instance;
+    private Graph graph;
+    private ShortestPathOracle distances;
+    private SmartRouteOptimization system;
+    private int[] lookupFrom;
+    private int[] lookupTo;
+    private int[] remaining;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int stops = Math.max(1, (int) (nodes * stopRatio));
+        instance = InstanceGenerator.generate(shape, nodes, stops, Math.max(1, stops / stopsPerVehicle), seed);
+        graph = instance.buildGraph();
+        distances = graph.computeShortestPaths();
+        system = instance.newSystem(graph, distances);
+        system.assignDeliveries();
+        system.optimizeRoutes();
+
+        Random random = new Random(seed);
+        lookupFrom = new int[LOOKUPS];
+        lookupTo = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookupFrom[i] = random.nextInt(nodes);
+            lookupTo[i] = random.nextInt(nodes);
+        }
+        remaining = instance.stopIds.clone();
+    }
+
+    @Benchmark
+    public ShortestPathOracle shortestPaths() {
+        return graph.computeShortestPaths();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long getDistance() {
+        long sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += distances.getDistance(lookupFrom[i], lookupTo[i]);
+        }
+        return sum;
+    }
+
+    // One full scan over every stop, the fallback of nearest neighbour routing
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int findNearestLocation() {
+        return system.findNearestLocation(instance.depot, remaining, remaining.length);
+    }
+
+    @Benchmark
+    public CandidateLists candidateLists() {
+        int[] locations = new int[remaining.length + 1];
+        System.arraycopy(remaining, 0, locations, 0, remaining.length);
+        locations[remaining.length] = instance.depot;
+        return CandidateLists.build(distances, locations, 16);
+    }
+
+    @Benchmark
+    public SmartRouteOptimization assignDeliveries() {
+        system.assignDeliveries();
+        return system;
+    }
+
+    // Rebuilds every route from the assignment made in setUp
+    @Benchmark
+    public SmartRouteOptimization optimizeRoutes() {
+        system.optimizeRoutes();
+        return system;
+    }
+}
@@ -1,26 +1,210 @@
 package myproj;
 
+import myproj.routeopt.io.PlanSnapshot;
+import myproj.routeopt.metrics.SolverMetrics;
 import myproj.routeopt.model.*;
 
 import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.ContractionHierarchy;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.LazyDistanceOracle;
 import myproj.routeopt.model.Graph;
+import myproj.routeopt.model.ShortestPathOracle;
 import myproj.routeopt.model.Vehicle;
+import myproj.routeopt.solver.CandidateLists;
+import myproj.routeopt.solver.CapacityIndex;
+import myproj.routeopt.solver.RouteImprover;
+import myproj.routeopt.solver.SolveControl;
+import myproj.routeopt.solver.TimeWindowInsertion;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 public class SmartRouteOptimization {
+    // Per-delivery and per-route lines are FINE, one summary line per phase is INFO
+    private static final Logger LOG = Logger.getLogger(SmartRouteOptimization.class.getName());
+
+    // Packing rule used by assignDeliveries; points are always taken largest demand first
+    public enum AssignmentMode {
+        WORST_FIT,
+        BEST_FIT
+    }
+
     private Graph cityGraph;
+    private DistanceOracle distances;
     private List<DeliveryPoint> deliveryPoints;
+    // Ids of deliveryPoints; solvers index stops by location, so each id is planned once
+    private final Set<Integer> deliveryIds = new HashSet<>();
     private List<Vehicle> vehicles;
     private int depotLocation;
+    private int candidateListSize = 16;
+    private CandidateLists candidateLists;
+    private long improvementTimeBudgetMillis = 0;
+    private int improvementMaxMoves = Integer.MAX_VALUE;
+    private int routeParallelism = Runtime.getRuntime().availableProcessors();
+    private long[] routeTimingsNanos = new long[0];
+    private AssignmentMode assignmentMode = AssignmentMode.WORST_FIT;
+    // Vehicle indexes changed by incremental updates and not yet repaired
+    private final Set<Integer> dirtyVehicles = new TreeSet<>();
+    // Time windows by vertex for the incremental changes; only delivery
+    // locations are meaningful, filled by loadTimeWindows
+    private long[] windowStart = new long[0];
+    private long[] windowEnd = new long[0];
+    // Cancellation and progress for the solve in flight; solver loops poll it
+    private volatile SolveControl solveControl = new SolveControl();
+    private final SolverMetrics metrics = new SolverMetrics();
+    // 0 means computeShortestPaths builds the full table
+    private int onDemandCacheEntries;
+    private boolean contractionHierarchy;
+    // Set for systems made from a snapshot, whose graph other scenarios share
+    private boolean sharedGraph;
+    // Set once a snapshot shares the distance table, which edge updates then copy first
+    private boolean sharedDistances;
 
     public SmartRouteOptimization(Graph cityGraph, int depotLocation) {
         this.cityGraph = cityGraph;
+        this.distances = cityGraph;
         this.depotLocation = depotLocation;
         this.deliveryPoints = new ArrayList<>();
         this.vehicles = new ArrayList<>();
     }
 
+    // A fresh system over the snapshot's graph, oracle, points and fleet. The
+    // graph and oracle stay shared with the snapshot, so edge updates are refused.
+    public static SmartRouteOptimization fromSnapshot(ProblemSnapshot snapshot) {
+        SmartRouteOptimization system = new SmartRouteOptimization(snapshot.getGraph(), snapshot.getDepot());
+        system.sharedGraph = true;
+        if (snapshot.hasRoadDistances()) {
+            system.distances = snapshot.getDistanceOracle();
+        }
+        system.candidateListSize = snapshot.getCandidateListSize();
+        for (DeliveryPoint dp : snapshot.getDeliveryPoints()) {
+            system.addDeliveryPoint(dp);
+        }
+        for (int i = 0; i < snapshot.getVehicleCount(); i++) {
+            system.addVehicle(snapshot.getVehicleId(i), snapshot.getCapacity(i));
+        }
+        return system;
+    }
+
+    // Immutable copy of the problem as it stands; routes are not part of it
+    public ProblemSnapshot snapshot() {
+        int[] ids = new int[vehicles.size()];
+        int[] capacities = new int[vehicles.size()];
+        for (int i = 0; i < vehicles.size(); i++) {
+            ids[i] = vehicles.get(i).getId();
+            capacities[i] = vehicles.get(i).getCapacity();
+        }
+        sharedDistances = true;
+        return new ProblemSnapshot(cityGraph, distances, depotLocation, deliveryPoints, ids, capacities,
+                candidateListSize);
+    }
+
+    // The current routes as a value that no later change to this system affects.
+    // Routes that leave delivery points unserved give an infeasible solution.
+    public Solution toSolution(String strategy, long solveNanos) {
+        int[] ids = new int[vehicles.size()];
+        for (int i = 0; i < vehicles.size(); i++) {
+            ids[i] = vehicles.get(i).getId();
+        }
+        List<Integer> unserved = findUnservedDeliveries();
+        if (!unserved.isEmpty()) {
+            return Solution.infeasible(strategy, ids, unserved.size() + " delivery points unserved: " + unserved,
+                    solveNanos);
+        }
+        int[][] routes = new int[vehicles.size()][];
+        int[] loads = new int[vehicles.size()];
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            routes[i] = vehicle.getRouteArray();
+            loads[i] = vehicle.getCurrentLoad();
+        }
+        return new Solution(strategy, ids, routes, loads, getTotalDistance(), solveNanos);
+    }
+
+    // Replace raw edge weights with road distances before routing
+    public void computeShortestPaths() {
+        SolveControl control = solveControl;
+        control.progress("Computing shortest paths", 0);
+        SolverMetrics.Phase shortestPathsPhase = metrics.startPhase("shortest-paths");
+        try {
+            if (contractionHierarchy) {
+                ContractionHierarchy hierarchy = ContractionHierarchy.build(cityGraph,
+                        ForkJoinPool.getCommonPoolParallelism(), control::isCancelled,
+                        fraction -> control.progress("Contracting road graph", fraction));
+                hierarchy.setCacheEntries(onDemandCacheEntries);
+                distances = hierarchy;
+            } else if (onDemandCacheEntries > 0) {
+                distances = cityGraph.computeDistancesOnDemand(onDemandCacheEntries);
+            } else {
+                distances = ShortestPathOracle.compute(cityGraph, ForkJoinPool.getCommonPoolParallelism(),
+                        control::isCancelled, fraction -> control.progress("Computing shortest paths", fraction));
+            }
+        } finally {
+            shortestPathsPhase.close();
+        }
+        candidateLists = null;
+    }
+
+    // With a positive cache size computeShortestPaths sets up a LazyDistanceOracle
+    // instead of the all-pairs table; 0 goes back to the table
+    public void setOnDemandDistances(int cacheEntries) {
+        if (cacheEntries < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
+        onDemandCacheEntries = cacheEntries;
+    }
+
+    // When set, computeShortestPaths contracts the graph into a ContractionHierarchy,
+    // which takes precedence over on-demand distances; an on-demand cache size then
+    // caches hierarchy queries. A hierarchy saved earlier can be passed to
+    // setDistanceOracle instead.
+    public void setContractionHierarchy(boolean contractionHierarchy) {
+        this.contractionHierarchy = contractionHierarchy;
+    }
+
+    // True once distances come from a closure or a precomputed table rather than raw edges
+    public boolean hasRoadDistances() {
+        return distances != cityGraph;
+    }
+
+    // Called when the graph changes so stale road distances are not used
+    public void invalidateDistances() {
+        distances = cityGraph;
+        candidateLists = null;
+    }
+
+    // Expand a stop sequence into the full road path, stop to stop
+    public List<Integer> expandRoute(List<Integer> route) {
+        if (!(distances instanceof ShortestPathOracle)) {
+            throw new IllegalStateException("Shortest paths have not been computed");
+        }
+        ShortestPathOracle paths = (ShortestPathOracle) distances;
+        List<Integer> roadPath = new ArrayList<>();
+        for (int i = 0; i < route.size(); i++) {
+            if (i == 0) {
+                roadPath.add(route.get(0));
+                continue;
+            }
+            List<Integer> leg = paths.getPath(route.get(i - 1), route.get(i));
+            if (leg.isEmpty()) {
+                throw new IllegalStateException(String.format("Location %d is unreachable from %d",
+                        route.get(i), route.get(i - 1)));
+            }
+            roadPath.addAll(leg.subList(1, leg.size()));
+        }
+        return roadPath;
+    }
+
     // Check if total capacity is sufficient
     public boolean validateCapacity() {
         int totalDemand = deliveryPoints.stream()
@@ -44,103 +228,849 @@ public class SmartRouteOptimization {
             throw new IllegalStateException("Total vehicle capacity insufficient for total demand");
         }
 
-        // Reset all vehicles but preserve their capacity
+        SolverMetrics.Phase assignPhase = metrics.startPhase("assign");
+        try {
+            assignInOrder();
+        } finally {
+            assignPhase.close();
+        }
+    }
+
+    private void assignInOrder() {
+        // Start every vehicle empty so a second run does not count loads twice
         for (Vehicle vehicle : vehicles) {
-            vehicle.resetRoute();
+            vehicle.clearDeliveries();
         }
 
         // Sort delivery points by demand (largest first)
         List<DeliveryPoint> sortedPoints = new ArrayList<>(deliveryPoints);
         sortedPoints.sort((dp1, dp2) -> Integer.compare(dp2.getDemand(), dp1.getDemand()));
 
+        int[] capacities = new int[vehicles.size()];
+        for (int i = 0; i < capacities.length; i++) {
+            capacities[i] = vehicles.get(i).getCapacity();
+        }
+        CapacityIndex capacityIndex = new CapacityIndex(capacities);
+        StringBuilder log = LOG.isLoggable(Level.FINE) ? new StringBuilder() : null;
+        SolveControl control = solveControl;
+
         // Try to assign each delivery point
+        int assigned = 0;
         for (DeliveryPoint dp : sortedPoints) {
-            Vehicle bestVehicle = null;
-            int maxRemainingCapacity = -1;
-
-            for (Vehicle vehicle : vehicles) {
-                int remainingCapacity = vehicle.getCapacity() - vehicle.getCurrentLoad();
-                if (remainingCapacity >= dp.getDemand() && remainingCapacity > maxRemainingCapacity) {
-                    bestVehicle = vehicle;
-                    maxRemainingCapacity = remainingCapacity;
-                }
+            if ((++assigned & 1023) == 0) {
+                control.checkCancelled();
+                control.progress("Assigning deliveries", (double) assigned / sortedPoints.size());
             }
+            int best = assignmentMode == AssignmentMode.BEST_FIT
+                    ? capacityIndex.bestFit(dp.getDemand())
+                    : capacityIndex.worstFit(dp.getDemand());
 
-            if (bestVehicle == null) {
+            if (best < 0) {
                 throw new IllegalStateException(
                         String.format("Unable to assign delivery point %d (demand: %d) - no vehicle has sufficient remaining capacity",
                                 dp.getId(), dp.getDemand())
                 );
             }
 
+            Vehicle bestVehicle = vehicles.get(best);
             bestVehicle.addDelivery(dp.getId(), dp.getDemand());
-            System.out.println(String.format("Assigned delivery point %d (demand: %d) to vehicle %d",
-                    dp.getId(), dp.getDemand(), bestVehicle.getId()));
+            capacityIndex.consume(best, dp.getDemand());
+            if (log != null) {
+                log.append(String.format("Assigned delivery point %d (demand: %d) to vehicle %d%n",
+                        dp.getId(), dp.getDemand(), bestVehicle.getId()));
+            }
         }
+        metrics.add(SolverMetrics.Counter.STOPS_ASSIGNED, sortedPoints.size());
+        if (log != null) {
+            LOG.fine(log.toString());
+        }
+    }
+
+    public void setAssignmentMode(AssignmentMode assignmentMode) {
+        this.assignmentMode = assignmentMode;
+    }
+
+    public AssignmentMode getAssignmentMode() {
+        return assignmentMode;
     }
 
     public void optimizeRoutes() {
-        for (Vehicle vehicle : vehicles) {
-            if (vehicle.getDeliveryLoads().isEmpty()) {
-                // If no deliveries assigned, just set route as depot->depot
-                List<Integer> emptyRoute = new ArrayList<>();
-                emptyRoute.add(depotLocation);
-                emptyRoute.add(depotLocation);
-                vehicle.setRoute(emptyRoute);
+        SolverMetrics.Phase buildRoutesPhase = metrics.startPhase("build-routes");
+        try {
+            buildAllRoutes();
+        } finally {
+            buildRoutesPhase.close();
+        }
+    }
+
+    private void buildAllRoutes() {
+        SolveControl control = solveControl;
+        control.progress("Building routes", 0);
+        CandidateLists candidates = getCandidateLists();
+        int[][] routes = new int[vehicles.size()][];
+        routeTimingsNanos = new long[vehicles.size()];
+        AtomicInteger built = new AtomicInteger();
+
+        if (routeParallelism <= 1 || vehicles.size() <= 1) {
+            // Vertex -> index in the pending stops, -1 when not a pending stop
+            int[] position = newPositionTable();
+            for (int i = 0; i < vehicles.size(); i++) {
+                routes[i] = timedBuildRoute(i, candidates, position, control);
+                control.progress("Building routes", (double) built.incrementAndGet() / vehicles.size());
+            }
+        } else {
+            // Each route is an independent problem; workers keep their own position table
+            ThreadLocal<int[]> positions = ThreadLocal.withInitial(this::newPositionTable);
+            List<Callable<int[]>> tasks = new ArrayList<>();
+            for (int i = 0; i < vehicles.size(); i++) {
+                int index = i;
+                tasks.add(() -> {
+                    int[] route = timedBuildRoute(index, candidates, positions.get(), control);
+                    control.progress("Building routes", (double) built.incrementAndGet() / vehicles.size());
+                    return route;
+                });
+            }
+            ForkJoinPool pool = new ForkJoinPool(routeParallelism);
+            try {
+                List<Future<int[]>> results = pool.invokeAll(tasks);
+                for (int i = 0; i < results.size(); i++) {
+                    routes[i] = results.get(i).get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Route optimization interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) {
+                    throw (CancellationException) e.getCause();
+                }
+                throw new IllegalStateException("Route optimization failed: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        control.offerRoutes(() -> Arrays.asList(routes));
+
+        metrics.add(SolverMetrics.Counter.ROUTES_BUILT, vehicles.size());
+        // Routes are logged once, in vehicle order, after the workers are done
+        if (LOG.isLoggable(Level.FINE)) {
+            StringBuilder log = new StringBuilder();
+            for (int i = 0; i < vehicles.size(); i++) {
+                log.append(String.format("Optimized route for vehicle %d: %s (%.3f ms)%n",
+                        vehicles.get(i).getId(), Arrays.toString(routes[i]), routeTimingsNanos[i] / 1_000_000.0));
+            }
+            LOG.fine(log.toString());
+        }
+    }
+
+    private int[] newPositionTable() {
+        int[] position = new int[distances.getVertices()];
+        Arrays.fill(position, -1);
+        return position;
+    }
+
+    private int[] timedBuildRoute(int index, CandidateLists candidates, int[] position, SolveControl control) {
+        control.checkCancelled();
+        long start = System.nanoTime();
+        int[] route = buildRoute(vehicles.get(index), candidates, position, control);
+        routeTimingsNanos[index] = System.nanoTime() - start;
+        return route;
+    }
+
+    // Nearest neighbour route for one vehicle. position must be all -1 and is left that way.
+    private int[] buildRoute(Vehicle vehicle, CandidateLists candidates, int[] position, SolveControl control) {
+        if (vehicle.getDeliveryCount() == 0) {
+            // If no deliveries assigned, just set route as depot->depot
+            int[] emptyRoute = {depotLocation, depotLocation};
+            vehicle.setRoute(emptyRoute, emptyRoute.length);
+            return emptyRoute;
+        }
+
+        int[] remaining = vehicle.getDeliveryIds();
+        int remainingCount = remaining.length;
+        for (int i = 0; i < remainingCount; i++) {
+            position[remaining[i]] = i;
+        }
+        int[] optimizedRoute = new int[remainingCount + 2];
+        int routeSize = 0;
+        optimizedRoute[routeSize++] = depotLocation;
+
+        // Current location starts at depot
+        int currentLocation = depotLocation;
+
+        // Build route using nearest neighbor, candidates first
+        DistanceOracle metered = metrics.meter(distances);
+        while (remainingCount > 0) {
+            if ((remainingCount & 1023) == 0 && control.isCancelled()) {
+                // Leave the position table clean for the next route before giving up
+                for (int i = 0; i < remainingCount; i++) {
+                    position[remaining[i]] = -1;
+                }
+                control.checkCancelled();
+            }
+            int nearest = findNearestCandidate(candidates, currentLocation, position);
+            if (nearest < 0 && distances instanceof LazyDistanceOracle) {
+                nearest = findNearestBySearch((LazyDistanceOracle) distances, currentLocation, position);
+            }
+            if (nearest < 0) {
+                nearest = findNearestLocation(metered, currentLocation, remaining, remainingCount);
+            }
+            optimizedRoute[routeSize++] = nearest;
+
+            // Swap-remove from the pending stops
+            int index = position[nearest];
+            int last = remaining[--remainingCount];
+            remaining[index] = last;
+            position[last] = index;
+            position[nearest] = -1;
+            currentLocation = nearest;
+        }
+
+        // Return to depot
+        optimizedRoute[routeSize++] = depotLocation;
+
+        // Set the optimized route
+        vehicle.setRoute(optimizedRoute, routeSize);
+        return optimizedRoute;
+    }
+
+    // Number of worker threads for optimizeRoutes; 1 builds the routes sequentially
+    public void setRouteParallelism(int routeParallelism) {
+        if (routeParallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.routeParallelism = routeParallelism;
+    }
+
+    // Wall time spent building each vehicle's route in the last optimizeRoutes, by vehicle id
+    public Map<Integer, Long> getRouteTimingsNanos() {
+        Map<Integer, Long> timings = new LinkedHashMap<>();
+        for (int i = 0; i < routeTimingsNanos.length && i < vehicles.size(); i++) {
+            timings.put(vehicles.get(i).getId(), routeTimingsNanos[i]);
+        }
+        return timings;
+    }
+
+    // Assigns and sequences deliveries in one pass while keeping every stop inside
+    // its time window. Replaces assignDeliveries + optimizeRoutes for windowed
+    // instances; returns the delivery points no vehicle could serve in time.
+    public List<Integer> constructTimeWindowRoutes() {
+        if (deliveryPoints.isEmpty()) {
+            throw new IllegalStateException("No delivery points added");
+        }
+        if (vehicles.isEmpty()) {
+            throw new IllegalStateException("No vehicles added");
+        }
+        SolverMetrics.Phase timeWindowInsertionPhase = metrics.startPhase("time-window-insertion");
+        try {
+            TimeWindowInsertion insertion = new TimeWindowInsertion(metrics.meter(distances), getCandidateLists(),
+                    depotLocation);
+            insertion.setSolveControl(solveControl);
+            insertion.setMetrics(metrics);
+            List<Integer> unserved = insertion.solve(deliveryPoints, vehicles);
+            if (!unserved.isEmpty()) {
+                LOG.info(String.format("%d delivery points could not be served within their time windows",
+                        unserved.size()));
+            }
+            return unserved;
+        } finally {
+            timeWindowInsertionPhase.close();
+        }
+    }
+
+    // 2-opt / Or-opt local search over the constructed routes, returns the distance saved
+    public long improveRoutes() {
+        SolverMetrics.Phase improvePhase = metrics.startPhase("improve");
+        try {
+            RouteImprover improver = newImprover();
+            long saved = improver.improve(vehicles);
+            LOG.info(String.format("Route improvement applied %d moves, saved distance %d",
+                    improver.getMovesApplied(), saved));
+            return saved;
+        } finally {
+            improvePhase.close();
+        }
+    }
+
+    private RouteImprover newImprover() {
+        RouteImprover improver = new RouteImprover(metrics.meter(distances), getCandidateLists(), depotLocation);
+        improver.setSolveControl(solveControl);
+        improver.setMetrics(metrics);
+        improver.setTimeBudgetMillis(improvementTimeBudgetMillis);
+        improver.setMaxMoves(improvementMaxMoves);
+        return improver;
+    }
+
+    // Incremental changes to an optimized plan. Each change only touches the
+    // vehicles it affects (marked dirty) and repairs those with cheapest
+    // insertion and local search restricted to them; every other route is left
+    // exactly as it was. Inserting or removing a stop drops the candidate
+    // lists, which are rebuilt over the new stops when next needed; edge
+    // updates keep them (see updateEdgeWeights).
+    // When the current plan meets every time window (as one built by
+    // constructTimeWindowRoutes does) the changes keep it that way.
+
+    // Adds a late order to the vehicle where it is cheapest to insert
+    public void insertDelivery(int id, int demand, int timeStart, int timeEnd) {
+        if (id < 0 || id >= cityGraph.getVertices()) {
+            throw new IllegalArgumentException(String.format("Location %d is outside the graph (0-%d)",
+                    id, cityGraph.getVertices() - 1));
+        }
+        requireRoutes();
+        if (deliveryIds.contains(id)) {
+            throw new IllegalArgumentException("Delivery point " + id + " is already planned");
+        }
+        loadTimeWindows();
+        boolean windowed = meetsTimeWindows(vehicles);
+        windowStart[id] = timeStart;
+        windowEnd[id] = timeEnd;
+        long[] begin = new long[0];
+        long[] latestStart = new long[0];
+        int bestVehicle = -1;
+        int bestPosition = -1;
+        long bestCost = Long.MAX_VALUE;
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            if (vehicle.getCapacity() - vehicle.getCurrentLoad() < demand) {
+                continue;
+            }
+            int[] route = vehicle.getRouteArray();
+            if (windowed) {
+                if (begin.length < route.length) {
+                    begin = new long[route.length];
+                    latestStart = new long[route.length];
+                }
+                TimeWindowInsertion.schedule(distances, route, route.length, windowStart, windowEnd,
+                        begin, latestStart, 0, route.length - 2);
+            }
+            for (int p = 0; p + 1 < route.length; p++) {
+                if (windowed && TimeWindowInsertion.startAfterInsertion(distances, route, route.length,
+                        windowStart, windowEnd, begin, latestStart, id, p) < 0) {
+                    continue;
+                }
+                int a = route[p];
+                int b = route[p + 1];
+                long cost = (long) distances.getDistance(a, id) + distances.getDistance(id, b)
+                        - distances.getDistance(a, b);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestVehicle = i;
+                    bestPosition = p + 1;
+                }
+            }
+        }
+        if (bestVehicle < 0) {
+            throw new IllegalStateException(String.format(
+                    "Unable to insert delivery point %d (demand: %d) - no vehicle has sufficient remaining capacity%s",
+                    id, demand, windowed ? " and a slot inside every time window" : ""));
+        }
+
+        addDeliveryPoint(new DeliveryPoint(id, demand, timeStart, timeEnd));
+        Vehicle vehicle = vehicles.get(bestVehicle);
+        int[] current = vehicle.getRouteArray();
+        int[] route = new int[current.length + 1];
+        System.arraycopy(current, 0, route, 0, bestPosition);
+        route[bestPosition] = id;
+        System.arraycopy(current, bestPosition, route, bestPosition + 1, current.length - bestPosition);
+        vehicle.addDelivery(id, demand);
+        vehicle.setRoute(route, route.length);
+        dirtyVehicles.add(bestVehicle);
+        repairRoutes();
+    }
+
+    // Cancels an order; its vehicle simply skips the stop
+    public void removeDelivery(int id) {
+        requireRoutes();
+        if (!deliveryIds.remove(id)) {
+            throw new IllegalArgumentException("Unknown delivery point " + id);
+        }
+        deliveryPoints.removeIf(dp -> dp.getId() == id);
+        candidateLists = null;
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            if (vehicle.hasDelivery(id)) {
+                vehicle.removeDelivery(id);
+                dirtyVehicles.add(i);
+            }
+        }
+        repairRoutes();
+    }
+
+    // Rebuilds the routes from a stored plan, typically yesterday's, instead of
+    // solving from nothing. Stops that are still delivery points stay on their
+    // vehicle in their stored order, as long as today's demands still fit;
+    // everything else is added by cheapest insertion next to its candidate
+    // neighbours. Only vehicles that lost or gained stops are then repaired.
+    // Vehicles are matched by id. Returns the number of stops inserted.
+    public int warmStart(PlanSnapshot plan) {
+        int n = cityGraph.getVertices();
+        int[] demand = new int[n];
+        Arrays.fill(demand, -1);
+        for (DeliveryPoint dp : deliveryPoints) {
+            demand[dp.getId()] = Math.max(demand[dp.getId()], 0) + dp.getDemand();
+        }
+        Map<Integer, Integer> vehicleIndex = new HashMap<>();
+        for (int i = 0; i < vehicles.size(); i++) {
+            vehicleIndex.put(vehicles.get(i).getId(), i);
+            vehicles.get(i).clearDeliveries();
+            vehicles.get(i).setRoute(new int[]{depotLocation, depotLocation}, 2);
+        }
+        dirtyVehicles.clear();
+
+        boolean[] placed = new boolean[n];
+        int kept = 0;
+        int[] route = new int[16];
+        for (int v = 0; v < plan.getVehicleCount(); v++) {
+            Integer index = vehicleIndex.get(plan.getVehicleId(v));
+            if (index == null) {
                 continue;
             }
+            Vehicle vehicle = vehicles.get(index);
+            int size = 0;
+            route = ensureLength(route, plan.getRouteSize(v) + 2);
+            route[size++] = depotLocation;
+            for (int p = 0; p < plan.getRouteSize(v); p++) {
+                int stop = plan.getRouteStop(v, p);
+                if (stop < 0 || stop >= n || stop == depotLocation) {
+                    continue;
+                }
+                if (demand[stop] < 0 || placed[stop]
+                        || vehicle.getCurrentLoad() + demand[stop] > vehicle.getCapacity()) {
+                    dirtyVehicles.add(index); // the stop is gone, served twice or no longer fits
+                    continue;
+                }
+                placed[stop] = true;
+                vehicle.addDelivery(stop, demand[stop]);
+                route[size++] = stop;
+                kept++;
+            }
+            route[size++] = depotLocation;
+            vehicle.setRoute(route, size);
+        }
+
+        List<DeliveryPoint> pending = new ArrayList<>();
+        for (DeliveryPoint dp : deliveryPoints) {
+            if (!placed[dp.getId()]) {
+                placed[dp.getId()] = true;
+                pending.add(dp);
+            }
+        }
+        // Largest first, while there is still room for them
+        pending.sort(Comparator.comparingInt((DeliveryPoint dp) -> demand[dp.getId()]).reversed());
+        CandidateLists candidates = getCandidateLists();
+        int[] vehicleOf = new int[n];
+        Arrays.fill(vehicleOf, -1);
+        for (int i = 0; i < vehicles.size(); i++) {
+            for (int id : vehicles.get(i).getDeliveryIds()) {
+                vehicleOf[id] = i;
+            }
+        }
+        RoomSearch rooms = new RoomSearch(candidates.getNodes());
+        SolverMetrics.Phase warmStartPhase = metrics.startPhase("warm-start");
+        try {
+            for (DeliveryPoint dp : pending) {
+                solveControl.checkCancelled();
+                int id = dp.getId();
+                int[] best = cheapestInsertion(candidates, id, demand[id], vehicleOf, rooms);
+                if (best == null) {
+                    throw new IllegalStateException(String.format(
+                            "Unable to insert delivery point %d (demand: %d) - no vehicle has sufficient remaining capacity",
+                            id, demand[id]));
+                }
+                Vehicle vehicle = vehicles.get(best[0]);
+                int size = vehicle.getRouteSize();
+                route = ensureLength(route, size + 1);
+                for (int p = 0, q = 0; p < size; p++) {
+                    if (p == best[1]) {
+                        route[q++] = id;
+                    }
+                    route[q++] = vehicle.getRouteStop(p);
+                }
+                vehicle.addDelivery(id, demand[id]);
+                vehicle.setRoute(route, size + 1);
+                vehicleOf[id] = best[0];
+                dirtyVehicles.add(best[0]);
+            }
+        } finally {
+            warmStartPhase.close();
+        }
+        LOG.info(String.format("Warm start kept %d stops from the stored plan and inserted %d, repairing %d vehicles",
+                kept, pending.size(), dirtyVehicles.size()));
+        repairRoutes();
+        return pending.size();
+    }
+
+    // {vehicle index, route position} of the cheapest feasible insertion of id,
+    // trying only the slots beside its candidate neighbours and empty vehicles
+    // first, and the slots beside the stops nearest to it on routes with room
+    // for it when none of those fit
+    private int[] cheapestInsertion(CandidateLists candidates, int id, int demand, int[] vehicleOf,
+                                    RoomSearch rooms) {
+        int[] best = null;
+        long[] bestCost = {Long.MAX_VALUE};
+        int start = candidates.rowStart(id);
+        if (start >= 0) {
+            for (int i = start, end = start + candidates.getK(); i < end; i++) {
+                best = tryBeside(candidates.getCandidate(i), id, demand, vehicleOf, best, bestCost);
+            }
+        }
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            if (vehicle.getRouteSize() == 2 && vehicle.getCapacity() >= demand) {
+                long cost = insertionCost(vehicle, 1, id);
+                if (cost < bestCost[0]) {
+                    bestCost[0] = cost;
+                    best = new int[]{i, 1};
+                }
+            }
+        }
+        if (best == null) {
+            for (int stop : rooms.nearest(id, demand, vehicleOf)) {
+                best = tryBeside(stop, id, demand, vehicleOf, best, bestCost);
+            }
+        }
+        return best;
+    }
+
+    // Inserting id just before or just after stop, when its vehicle has room
+    private int[] tryBeside(int stop, int id, int demand, int[] vehicleOf, int[] best, long[] bestCost) {
+        int index = stop == depotLocation ? -1 : vehicleOf[stop];
+        if (index < 0) {
+            return best;
+        }
+        Vehicle vehicle = vehicles.get(index);
+        if (vehicle.getCapacity() - vehicle.getCurrentLoad() < demand) {
+            return best;
+        }
+        int position = vehicle.getRoutePosition(stop);
+        for (int p = position; p <= position + 1; p++) {
+            long cost = insertionCost(vehicle, p, id);
+            if (cost < bestCost[0]) {
+                bestCost[0] = cost;
+                best = new int[]{index, p};
+            }
+        }
+        return best;
+    }
+
+    // Stops nearest to a given vertex among those on routes with room for a
+    // demand, from one search per call rather than a distance per stop: a
+    // bounded search on a LazyDistanceOracle, a bucket query against all
+    // stops on a ContractionHierarchy, table lookups otherwise
+    private final class RoomSearch {
+        private static final int STOPS = 16;
+
+        private final int[] nodes;
+        private final int[] row;
+        private ContractionHierarchy.TargetIndex index;
+
+        RoomSearch(int[] nodes) {
+            this.nodes = nodes;
+            this.row = new int[nodes.length];
+        }
+
+        int[] nearest(int id, int demand, int[] vehicleOf) {
+            IntPredicate hasRoom = v -> v != depotLocation && vehicleOf[v] >= 0
+                    && vehicles.get(vehicleOf[v]).getCapacity() - vehicles.get(vehicleOf[v]).getCurrentLoad() >= demand;
+            if (distances instanceof LazyDistanceOracle) {
+                int[] ids = new int[STOPS];
+                int found = ((LazyDistanceOracle) distances).nearestTargets(id, hasRoom, STOPS, ids, new int[STOPS]);
+                return Arrays.copyOf(ids, found);
+            }
+            if (distances instanceof ContractionHierarchy) {
+                if (index == null) {
+                    index = ((ContractionHierarchy) distances).indexTargets(nodes);
+                }
+                index.distancesFrom(id, row);
+            } else {
+                for (int i = 0; i < nodes.length; i++) {
+                    row[i] = hasRoom.test(nodes[i]) ? distances.getDistance(id, nodes[i]) : DistanceOracle.INFINITY;
+                }
+            }
+            return IntStream.range(0, nodes.length)
+                    .filter(i -> row[i] < DistanceOracle.INFINITY && hasRoom.test(nodes[i]))
+                    .boxed()
+                    .sorted(Comparator.comparingInt(i -> row[i]))
+                    .limit(STOPS)
+                    .mapToInt(i -> nodes[i])
+                    .toArray();
+        }
+    }
+
+    // Extra distance of putting id in front of route position p
+    private long insertionCost(Vehicle vehicle, int p, int id) {
+        int a = vehicle.getRouteStop(p - 1);
+        int b = vehicle.getRouteStop(p);
+        return (long) distances.getDistance(a, id) + distances.getDistance(id, b) - distances.getDistance(a, b);
+    }
+
+    private static int[] ensureLength(int[] array, int length) {
+        return array.length >= length ? array : new int[Math.max(length, array.length * 2)];
+    }
+
+    // Changes one road; see updateEdgeWeights. On a contraction hierarchy even
+    // one road means contracting the whole graph again, before this returns
+    public void updateEdge(int u, int v, int weight) {
+        updateEdgeWeights(new int[]{u}, new int[]{v}, new int[]{weight});
+    }
+
+    // Applies a batch of road weight changes, such as live traffic: edge i
+    // becomes (u[i], v[i], w[i]). With the all-pairs table only the rows whose
+    // shortest path trees the changes touch are repaired, and only routes with
+    // a leg out of a repaired row are re-scored; those whose length changed are
+    // re-optimized; candidate lists keep their neighbours with fresh distances.
+    // Lazy and hierarchy distances are rebuilt instead, since their landmark
+    // bounds and shortcuts depend on every weight. The hierarchy rebuild is a
+    // full contraction on the calling thread, seconds to minutes on large
+    // road graphs however small the batch, so batch changes up when using one.
+    public void updateEdgeWeights(int[] u, int[] v, int[] w) {
+        if (sharedGraph) {
+            throw new IllegalStateException("The road graph is shared with a snapshot and cannot change");
+        }
+        if (u.length != v.length || u.length != w.length) {
+            throw new IllegalArgumentException("Edge arrays must have the same length");
+        }
+        for (int i = 0; i < u.length; i++) {
+            if (w[i] < 0 || w[i] >= DistanceOracle.INFINITY) {
+                throw new IllegalArgumentException(String.format("Bad weight %d for edge %d-%d", w[i], u[i], v[i]));
+            }
+        }
+        if (!(distances instanceof ShortestPathOracle || distances instanceof ContractionHierarchy
+                || distances instanceof LazyDistanceOracle || distances == cityGraph)) {
+            throw new IllegalStateException("Distances come from a precomputed table and cannot follow edge updates");
+        }
+        requireRoutes();
+        long[] before = routeDistances();
+        boolean[] changedRows = null;
+        SolverMetrics.Phase edgeUpdatesPhase = metrics.startPhase("edge-updates");
+        try {
+            if (distances instanceof ShortestPathOracle) {
+                int[] oldWeights = new int[u.length];
+                for (int i = 0; i < u.length; i++) {
+                    oldWeights[i] = cityGraph.getDistance(u[i], v[i]);
+                }
+                cityGraph.setEdgeWeights(u, v, w);
+                ShortestPathOracle table = (ShortestPathOracle) distances;
+                if (sharedDistances) {
+                    table = table.copy();
+                    distances = table;
+                    sharedDistances = false;
+                }
+                changedRows = table.updateEdges(cityGraph, u, v, oldWeights);
+                if (candidateLists != null) {
+                    candidateLists = candidateLists.rescore(table);
+                }
+            } else {
+                cityGraph.setEdgeWeights(u, v, w);
+                if (distances instanceof ContractionHierarchy) {
+                    ContractionHierarchy hierarchy = ContractionHierarchy.build(cityGraph);
+                    hierarchy.setCacheEntries(onDemandCacheEntries);
+                    distances = hierarchy;
+                    candidateLists = null;
+                } else if (distances instanceof LazyDistanceOracle) {
+                    // Same cache size and landmarks, also for one passed to setDistanceOracle
+                    LazyDistanceOracle lazy = (LazyDistanceOracle) distances;
+                    distances = new LazyDistanceOracle(cityGraph, lazy.getCache().getCapacity(),
+                            lazy.getLandmarkCount());
+                    candidateLists = null;
+                }
+            }
+        } finally {
+            edgeUpdatesPhase.close();
+        }
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            if ((changedRows == null || hasLegFrom(vehicle, changedRows)) && routeDistance(vehicle) != before[i]) {
+                dirtyVehicles.add(i);
+            }
+        }
+        repairRoutes();
+    }
+
+    private static boolean hasLegFrom(Vehicle vehicle, boolean[] rows) {
+        for (int p = 0, last = vehicle.getRouteSize() - 1; p < last; p++) {
+            if (rows[vehicle.getRouteStop(p)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Local search over the dirty vehicles only, then clears the dirty set
+    public void repairRoutes() {
+        if (dirtyVehicles.isEmpty()) {
+            return;
+        }
+        List<Vehicle> dirty = new ArrayList<>();
+        for (int index : dirtyVehicles) {
+            dirty.add(vehicles.get(index));
+        }
+        SolverMetrics.Phase repairPhase = metrics.startPhase("repair");
+        try {
+            improveWithinTimeWindows(newImprover(), dirty);
+        } finally {
+            repairPhase.close();
+        }
+        dirtyVehicles.clear();
+    }
+
+    // Runs the improver over the given routes and returns the distance saved.
+    // The improver only looks at distance, so if the routes met their time
+    // windows and its moves break one, they are put back as they were and 0
+    // is returned.
+    public long improveWithinTimeWindows(RouteImprover improver, List<Vehicle> routes) {
+        loadTimeWindows();
+        if (!meetsTimeWindows(routes)) {
+            return improver.improve(routes);
+        }
+        int[][] saved = new int[routes.size()][];
+        int[][] loads = new int[routes.size()][];
+        for (int i = 0; i < routes.size(); i++) {
+            Vehicle vehicle = routes.get(i);
+            saved[i] = vehicle.getRouteArray();
+            int[] ids = vehicle.getDeliveryIds();
+            loads[i] = new int[ids.length * 2];
+            for (int k = 0; k < ids.length; k++) {
+                loads[i][2 * k] = ids[k];
+                loads[i][2 * k + 1] = vehicle.getDeliveryLoad(ids[k]);
+            }
+        }
+        long gain = improver.improve(routes);
+        if (meetsTimeWindows(routes)) {
+            return gain;
+        }
+        LOG.fine("Local search broke a time window, keeping the routes as they were");
+        for (int i = 0; i < routes.size(); i++) {
+            Vehicle vehicle = routes.get(i);
+            vehicle.clearDeliveries();
+            for (int k = 0; k < loads[i].length; k += 2) {
+                vehicle.addDelivery(loads[i][k], loads[i][k + 1]);
+            }
+            vehicle.setRoute(saved[i], saved[i].length);
+        }
+        return 0;
+    }
 
-            Set<Integer> deliveryPoints = new HashSet<>(vehicle.getDeliveryLoads().keySet());
-            List<Integer> optimizedRoute = new ArrayList<>();
-            optimizedRoute.add(depotLocation);
+    // Fills windowStart/windowEnd from the current delivery points
+    private void loadTimeWindows() {
+        int n = distances.getVertices();
+        if (windowStart.length != n) {
+            windowStart = new long[n];
+            windowEnd = new long[n];
+        }
+        for (DeliveryPoint dp : deliveryPoints) {
+            windowStart[dp.getId()] = dp.getTimeWindowStart();
+            windowEnd[dp.getId()] = dp.getTimeWindowEnd();
+        }
+    }
 
-            // Current location starts at depot
-            int currentLocation = depotLocation;
+    private boolean meetsTimeWindows(List<Vehicle> routes) {
+        long[] begin = new long[0];
+        long[] latestStart = new long[0];
+        for (Vehicle vehicle : routes) {
+            int[] route = vehicle.getRouteArray();
+            if (route.length < 2) {
+                continue;
+            }
+            if (begin.length < route.length) {
+                begin = new long[route.length];
+                latestStart = new long[route.length];
+            }
+            TimeWindowInsertion.schedule(distances, route, route.length, windowStart, windowEnd,
+                    begin, latestStart, 0, route.length - 2);
+            if (!TimeWindowInsertion.meetsWindows(route, route.length, windowEnd, begin)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-            // Build route using nearest neighbor
-            while (!deliveryPoints.isEmpty()) {
-                int nearest = findNearestLocation(currentLocation, new ArrayList<>(deliveryPoints));
-                optimizedRoute.add(nearest);
-                deliveryPoints.remove(nearest);
-                currentLocation = nearest;
+    private void requireRoutes() {
+        for (Vehicle vehicle : vehicles) {
+            if (vehicle.getRouteSize() < 2) {
+                throw new IllegalStateException("Routes must be optimized before they can be updated incrementally");
             }
+        }
+    }
 
-            // Return to depot
-            optimizedRoute.add(depotLocation);
+    private long[] routeDistances() {
+        long[] totals = new long[vehicles.size()];
+        for (int i = 0; i < vehicles.size(); i++) {
+            totals[i] = routeDistance(vehicles.get(i));
+        }
+        return totals;
+    }
 
-            // Set the optimized route
-            vehicle.setRoute(optimizedRoute);
+    // Limits for improveRoutes; a time budget of 0 means no time limit
+    public void setImprovementBudget(long timeBudgetMillis, int maxMoves) {
+        this.improvementTimeBudgetMillis = timeBudgetMillis;
+        this.improvementMaxMoves = maxMoves;
+    }
 
-            System.out.println(String.format("Optimized route for vehicle %d: %s",
-                    vehicle.getId(), optimizedRoute));
+    public long getTotalDistance() {
+        long total = 0;
+        for (Vehicle vehicle : vehicles) {
+            total += routeDistance(vehicle);
         }
+        return total;
+    }
+
+    private long routeDistance(Vehicle vehicle) {
+        long total = 0;
+        for (int i = 1; i < vehicle.getRouteSize(); i++) {
+            total += distances.getDistance(vehicle.getRouteStop(i - 1), vehicle.getRouteStop(i));
+        }
+        return total;
     }
 
     // Add this debug method
     public void printSystemState() {
-        System.out.println("\nSystem State:");
-        System.out.println("Delivery Points: " + deliveryPoints.size());
+        StringBuilder out = new StringBuilder();
+        out.append("\nSystem State:\n");
+        out.append("Delivery Points: ").append(deliveryPoints.size()).append('\n');
         for (DeliveryPoint dp : deliveryPoints) {
-            System.out.println(String.format("  Point %d: Demand %d", dp.getId(), dp.getDemand()));
+            out.append(String.format("  Point %d: Demand %d%n", dp.getId(), dp.getDemand()));
         }
 
-        System.out.println("\nVehicles: " + vehicles.size());
+        out.append("\nVehicles: ").append(vehicles.size()).append('\n');
         for (Vehicle v : vehicles) {
-            System.out.println(String.format(
-                    "  Vehicle %d: Capacity %d, Current Load %d",
+            out.append(String.format(
+                    "  Vehicle %d: Capacity %d, Current Load %d%n",
                     v.getId(), v.getCapacity(), v.getCurrentLoad()));
-            System.out.println("    Route: " + v.getRoute());
-            System.out.println("    Delivery Loads: " + v.getDeliveryLoads());
+            out.append("    Route: ").append(v.getRoute()).append('\n');
+            out.append("    Delivery Loads: ").append(v.getDeliveryLoads()).append('\n');
         }
+        LOG.info(out.toString());
     }
 
-    // Helper method to find nearest location from current position
-    private int findNearestLocation(int currentLocation, List<Integer> remainingLocations) {
-        int nearestLocation = remainingLocations.get(0);
-        int shortestDistance = cityGraph.getDistance(currentLocation, nearestLocation);
+    // Nearest pending stop among the k nearest neighbours of currentLocation,
+    // -1 when every candidate has been visited or belongs to another vehicle
+    private int findNearestCandidate(CandidateLists candidates, int currentLocation, int[] position) {
+        int start = candidates.rowStart(currentLocation);
+        if (start < 0) {
+            return -1;
+        }
+        for (int i = start, end = start + candidates.getK(); i < end; i++) {
+            int candidate = candidates.getCandidate(i);
+            if (position[candidate] >= 0) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    // Helper method to find nearest location from current position (public for the benchmarks)
+    public int findNearestLocation(int currentLocation, int[] remainingLocations, int count) {
+        return findNearestLocation(distances, currentLocation, remainingLocations, count);
+    }
 
-        for (int location : remainingLocations) {
-            int distance = cityGraph.getDistance(currentLocation, location);
+    private static int findNearestLocation(DistanceOracle distances, int currentLocation, int[] remainingLocations,
+                                           int count) {
+        int nearestLocation = remainingLocations[0];
+        int shortestDistance = distances.getDistance(currentLocation, nearestLocation);
+
+        for (int i = 1; i < count; i++) {
+            int location = remainingLocations[i];
+            int distance = distances.getDistance(currentLocation, location);
             if (distance < shortestDistance) {
                 shortestDistance = distance;
                 nearestLocation = location;
@@ -149,8 +1079,89 @@ public class SmartRouteOptimization {
 
         return nearestLocation;
     }
+
+    // One search that stops at the first pending stop it settles, instead of a
+    // search per pending stop; -1 when none is reachable
+    private int findNearestBySearch(LazyDistanceOracle lazy, int currentLocation, int[] position) {
+        int[] nearest = new int[1];
+        int found = lazy.nearestTargets(currentLocation, v -> position[v] >= 0, 1, nearest, new int[1]);
+        return found == 0 ? -1 : nearest[0];
+    }
+
+    // k nearest neighbour lists over the delivery locations and the depot,
+    // built once and reused until distances or delivery points change
+    public CandidateLists getCandidateLists() {
+        if (candidateLists == null) {
+            solveControl.progress("Building candidate lists", -1);
+            int[] nodes = new int[deliveryPoints.size() + 1];
+            for (int i = 0; i < deliveryPoints.size(); i++) {
+                nodes[i] = deliveryPoints.get(i).getId();
+            }
+            nodes[deliveryPoints.size()] = depotLocation;
+            // Lazy oracles and hierarchies are passed as is so CandidateLists can search
+            // rows in one go instead of pair by pair
+            DistanceOracle oracle = distances instanceof LazyDistanceOracle || distances instanceof ContractionHierarchy
+                    ? distances : metrics.meter(distances);
+            SolverMetrics.Phase candidateListsPhase = metrics.startPhase("candidate-lists");
+            try {
+                candidateLists = CandidateLists.build(oracle, nodes, candidateListSize);
+            } finally {
+                candidateListsPhase.close();
+            }
+        }
+        return candidateLists;
+    }
+
+    // Token polled by the solve that runs next; pass a fresh one per solve
+    public void setSolveControl(SolveControl solveControl) {
+        this.solveControl = solveControl == null ? new SolveControl() : solveControl;
+    }
+
+    public SolveControl getSolveControl() {
+        return solveControl;
+    }
+
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Lists built elsewhere over the same distances, delivery points and depot,
+    // so scenarios of one problem build them once; dropped when points change
+    public void setCandidateLists(CandidateLists candidateLists) {
+        if (!candidateLists.contains(depotLocation)) {
+            throw new IllegalArgumentException("Candidate lists do not cover the depot");
+        }
+        for (DeliveryPoint dp : deliveryPoints) {
+            if (!candidateLists.contains(dp.getId())) {
+                throw new IllegalArgumentException("Candidate lists do not cover delivery point " + dp.getId());
+            }
+        }
+        this.candidateLists = candidateLists;
+    }
+
+    public void setCandidateListSize(int candidateListSize) {
+        if (candidateListSize < 1) {
+            throw new IllegalArgumentException("Candidate list size must be at least 1");
+        }
+        this.candidateListSize = candidateListSize;
+        candidateLists = null;
+    }
+
+    public int getCandidateListSize() {
+        return candidateListSize;
+    }
+
+    // A location takes one delivery point; give it the combined demand instead of adding it twice
     public void addDeliveryPoint(int id, int demand, int timeStart, int timeEnd) {
-        deliveryPoints.add(new DeliveryPoint(id, demand, timeStart, timeEnd));
+        addDeliveryPoint(new DeliveryPoint(id, demand, timeStart, timeEnd));
+    }
+
+    private void addDeliveryPoint(DeliveryPoint dp) {
+        if (!deliveryIds.add(dp.getId())) {
+            throw new IllegalArgumentException("Delivery point " + dp.getId() + " is already added");
+        }
+        deliveryPoints.add(dp);
+        candidateLists = null;
     }
 
     public void addVehicle(int id, int capacity) {
@@ -170,9 +1181,37 @@ public class SmartRouteOptimization {
         return Collections.unmodifiableList(vehicles);
     }
 
+    public DistanceOracle getDistanceOracle() {
+        return distances;
+    }
+
+    public void setDistanceOracle(DistanceOracle distances) {
+        this.distances = distances;
+        candidateLists = null;
+    }
+
     public int getDepotLocation() {
         return depotLocation;
     }
+
+    // Delivery point ids that no vehicle carries, each once
+    public List<Integer> findUnservedDeliveries() {
+        boolean[] served = new boolean[cityGraph.getVertices()];
+        for (Vehicle vehicle : vehicles) {
+            for (int id : vehicle.getDeliveryIds()) {
+                served[id] = true;
+            }
+        }
+        List<Integer> unserved = new ArrayList<>();
+        for (DeliveryPoint dp : deliveryPoints) {
+            if (!served[dp.getId()]) {
+                served[dp.getId()] = true;
+                unserved.add(dp.getId());
+            }
+        }
+        return unserved;
+    }
+
     // Add method to get delivery statistics
     public Map<String, Integer> getDeliveryStats() {
         Map<String, Integer> stats = new HashMap<>();
@@ -0,0 +1,274 @@
+package myproj.routeopt;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.io.InstanceReader;
+import myproj.routeopt.io.PlanSnapshot;
+import myproj.routeopt.io.PlanWriter;
+import myproj.routeopt.metrics.SolverMetrics;
+import myproj.routeopt.model.ContractionHierarchy;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.DistanceCache;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.LazyDistanceOracle;
+import myproj.routeopt.model.Vehicle;
+import myproj.routeopt.solver.ClarkeWrightStrategy;
+import myproj.routeopt.solver.ClusterFirstStrategy;
+import myproj.routeopt.solver.LnsStrategy;
+import myproj.routeopt.solver.NearestNeighbourStrategy;
+import myproj.routeopt.solver.RoutingStrategy;
+import myproj.routeopt.solver.TimeWindowInsertionStrategy;
+import myproj.routeopt.solver.WarmStartStrategy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+// Headless entry point for batch runs:
+//   java myproj.routeopt.BatchMain [--metrics=<file>] [--on-demand=<cache entries>]
+//        [--hierarchy=<file>] [--time-limit=<seconds>] [--warm-start=<file>]
+//        <instance file> <output file> [tw|nn|cw|cl|lns]
+// --metrics writes phase timings and solver counters as JSON, with distance
+// evaluations counted too (which makes the solve somewhat slower).
+// --on-demand searches distances per pair with a bounded cache instead of
+// building the all-pairs table, for road graphs too large for one.
+// --hierarchy answers distances from a contraction hierarchy, read from the
+// file when it exists (it must come from the same road graph and weights,
+// which is checked) and otherwise built and saved there for the next run.
+// With --on-demand as well, hierarchy queries go through a cache of that size.
+// --time-limit is the wall-clock budget of the lns strategy, which keeps
+// improving the plan until it runs out (10 seconds by default).
+// --warm-start rebuilds the routes from the plan snapshot in the file, when it
+// exists, instead of running the strategy; new stops are inserted and the
+// changed routes repaired. nn, cw and cl are then not run at all; with lns the
+// search starts from that plan. The warm start ignores time windows, so it is
+// refused with tw (also the default strategy). The solved plan is saved to the
+// file for the next run.
+// See InstanceReader for the input format and PlanWriter for the output.
+// Exit codes: 0 every stop is served, 1 bad arguments or input or a solver
+// failure (with its stack trace), 2 infeasible (not enough capacity, stops
+// left unserved or unreachable from the depot).
+public class BatchMain {
+    static final int EXIT_OK = 0;
+    static final int EXIT_ERROR = 1;
+    static final int EXIT_INFEASIBLE = 2;
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        Path metricsFile = null;
+        int cacheEntries = 0;
+        Path hierarchyFile = null;
+        long timeLimitMillis = LnsStrategy.DEFAULT_TIME_BUDGET_MILLIS;
+        Path warmStartFile = null;
+        int options = 0;
+        for (; options < args.length && args[options].startsWith("--"); options++) {
+            String option = args[options];
+            if (option.startsWith("--metrics=")) {
+                metricsFile = Paths.get(option.substring("--metrics=".length()));
+            } else if (option.startsWith("--on-demand=")) {
+                try {
+                    cacheEntries = Integer.parseInt(option.substring("--on-demand=".length()));
+                } catch (NumberFormatException e) {
+                    cacheEntries = -1;
+                }
+                if (cacheEntries < 8) {
+                    System.err.println("--on-demand needs a cache size of at least 8 entries");
+                    return EXIT_ERROR;
+                }
+            } else if (option.startsWith("--hierarchy=")) {
+                hierarchyFile = Paths.get(option.substring("--hierarchy=".length()));
+            } else if (option.startsWith("--time-limit=")) {
+                try {
+                    timeLimitMillis = Math.round(Double.parseDouble(option.substring("--time-limit=".length())) * 1000);
+                } catch (NumberFormatException e) {
+                    timeLimitMillis = -1;
+                }
+                if (timeLimitMillis < 0) {
+                    System.err.println("--time-limit needs a number of seconds");
+                    return EXIT_ERROR;
+                }
+            } else if (option.startsWith("--warm-start=")) {
+                warmStartFile = Paths.get(option.substring("--warm-start=".length()));
+            } else {
+                System.err.println("Unknown option " + option);
+                return EXIT_ERROR;
+            }
+        }
+        args = Arrays.copyOfRange(args, options, args.length);
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BatchMain [--metrics=<file>] [--on-demand=<cache entries>] "
+                    + "[--hierarchy=<file>] [--time-limit=<seconds>] [--warm-start=<file>] "
+                    + "<instance file> <output file> [tw|nn|cw|cl|lns]");
+            System.err.println("With --warm-start the stored plan replaces nn, cw and cl, lns starts from it, "
+                    + "and tw is refused");
+            return EXIT_ERROR;
+        }
+        RoutingStrategy strategy = strategyFor(args.length == 3 ? args[2] : "tw");
+        if (strategy == null) {
+            System.err.println("Unknown strategy '" + args[2] + "', expected tw, nn, cw, cl or lns");
+            return EXIT_ERROR;
+        }
+        if (strategy instanceof LnsStrategy) {
+            ((LnsStrategy) strategy).setTimeBudgetMillis(timeLimitMillis);
+        }
+        if (warmStartFile != null && strategy instanceof TimeWindowInsertionStrategy) {
+            System.err.println("--warm-start does not respect time windows and cannot be used with tw; "
+                    + "pick nn, cw, cl or lns");
+            return EXIT_ERROR;
+        }
+
+        SmartRouteOptimization system;
+        InstanceReader reader = new InstanceReader();
+        long start = System.nanoTime();
+        try {
+            system = reader.read(Paths.get(args[0]));
+        } catch (IOException e) {
+            System.err.println("Cannot read instance: " + e.getMessage());
+            return EXIT_ERROR;
+        }
+        System.err.println(String.format("Read %d edges, %d delivery points, %d vehicles in %d ms",
+                reader.getEdgeCount(), reader.getDeliveryCount(), reader.getVehicleCount(),
+                (System.nanoTime() - start) / 1_000_000));
+
+        if (!system.validateCapacity()) {
+            System.err.println("Infeasible: total vehicle capacity is below total demand");
+            return EXIT_INFEASIBLE;
+        }
+        int maxCapacity = system.getVehicles().stream().mapToInt(Vehicle::getCapacity).max().orElse(0);
+        for (DeliveryPoint dp : system.getDeliveryPoints()) {
+            if (dp.getDemand() > maxCapacity) {
+                System.err.println(String.format("Infeasible: delivery point %d (demand: %d) does not fit in any "
+                        + "vehicle", dp.getId(), dp.getDemand()));
+                return EXIT_INFEASIBLE;
+            }
+        }
+        SolverMetrics metrics = system.getMetrics();
+        metrics.setDistanceCounting(metricsFile != null);
+        system.setOnDemandDistances(cacheEntries);
+        try {
+            start = System.nanoTime();
+            if (hierarchyFile != null && Files.exists(hierarchyFile)) {
+                ContractionHierarchy hierarchy = ContractionHierarchy.read(hierarchyFile);
+                if (!hierarchy.matches(system.getCityGraph())) {
+                    System.err.println(String.format("Hierarchy %s was built from a different road graph "
+                            + "(or different weights); delete it to rebuild", hierarchyFile));
+                    return EXIT_ERROR;
+                }
+                hierarchy.setCacheEntries(cacheEntries);
+                system.setDistanceOracle(hierarchy);
+            } else {
+                system.setContractionHierarchy(hierarchyFile != null);
+                system.computeShortestPaths();
+                if (hierarchyFile != null) {
+                    ((ContractionHierarchy) system.getDistanceOracle()).write(hierarchyFile);
+                }
+            }
+            System.err.println(String.format("Distances ready in %d ms", (System.nanoTime() - start) / 1_000_000));
+            start = System.nanoTime();
+            String solvedWith = strategy.getName();
+            SolverMetrics.Phase solvePhase = metrics.startPhase("solve");
+            try {
+                if (warmStartFile != null && Files.exists(warmStartFile)) {
+                    WarmStartStrategy warmStart = new WarmStartStrategy(PlanSnapshot.read(warmStartFile));
+                    if (strategy instanceof LnsStrategy) {
+                        LnsStrategy lns = new LnsStrategy(() -> warmStart);
+                        lns.setTimeBudgetMillis(timeLimitMillis);
+                        lns.solve(system);
+                    } else {
+                        warmStart.solve(system);
+                    }
+                    solvedWith = String.format("a warm start (%d of %d stops new)%s", warmStart.getInserted(),
+                            system.getDeliveryPoints().size(), strategy instanceof LnsStrategy ? " and lns" : "");
+                } else {
+                    strategy.solve(system);
+                }
+            } finally {
+                solvePhase.close();
+            }
+            metrics.commitCountersEvent();
+            System.err.println(String.format("Solved with %s in %d ms", solvedWith,
+                    (System.nanoTime() - start) / 1_000_000));
+            if (warmStartFile != null) {
+                PlanSnapshot.of(system.getVehicles()).write(warmStartFile);
+            }
+            DistanceOracle oracle = system.getDistanceOracle();
+            if (oracle instanceof LazyDistanceOracle) {
+                LazyDistanceOracle lazy = (LazyDistanceOracle) oracle;
+                DistanceCache cache = lazy.getCache();
+                System.err.println(String.format("Distance cache: %d searches, %.1f%% hits, %d evictions",
+                        lazy.getSearchCount(), cache.getHitRate() * 100, cache.getEvictions()));
+            } else if (oracle instanceof ContractionHierarchy && ((ContractionHierarchy) oracle).getCache() != null) {
+                DistanceCache cache = ((ContractionHierarchy) oracle).getCache();
+                System.err.println(String.format("Distance cache: %.1f%% hits, %d evictions",
+                        cache.getHitRate() * 100, cache.getEvictions()));
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read or write hierarchy or plan snapshot: " + e.getMessage());
+            return EXIT_ERROR;
+        } catch (RuntimeException e) {
+            // Infeasibility is decided by the checks before and after the solve,
+            // so anything thrown here is a failure, not an answer
+            System.err.println("Solve failed:");
+            e.printStackTrace();
+            return EXIT_ERROR;
+        }
+
+        List<Integer> unserved = system.findUnservedDeliveries();
+        boolean unreachable = hasUnreachableLeg(system);
+        try {
+            PlanWriter.write(Paths.get(args[1]), system, unserved);
+        } catch (IOException e) {
+            System.err.println("Cannot write plan: " + e.getMessage());
+            return EXIT_ERROR;
+        }
+        if (metricsFile != null) {
+            try {
+                Files.write(metricsFile, metrics.toJson().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("Cannot write metrics: " + e.getMessage());
+                return EXIT_ERROR;
+            }
+        }
+        if (!unserved.isEmpty() || unreachable) {
+            System.err.println(String.format("Infeasible: %d delivery points unserved%s", unserved.size(),
+                    unreachable ? ", some routes use unreachable stops" : ""));
+            return EXIT_INFEASIBLE;
+        }
+        return EXIT_OK;
+    }
+
+    private static RoutingStrategy strategyFor(String name) {
+        switch (name) {
+            case "tw":
+                return new TimeWindowInsertionStrategy();
+            case "nn":
+                return new NearestNeighbourStrategy();
+            case "cw":
+                return new ClarkeWrightStrategy();
+            case "cl":
+                return new ClusterFirstStrategy();
+            case "lns":
+                return new LnsStrategy();
+            default:
+                return null;
+        }
+    }
+
+    private static boolean hasUnreachableLeg(SmartRouteOptimization system) {
+        DistanceOracle distances = system.getDistanceOracle();
+        for (Vehicle vehicle : system.getVehicles()) {
+            for (int i = 1; i < vehicle.getRouteSize(); i++) {
+                if (distances.getDistance(vehicle.getRouteStop(i - 1), vehicle.getRouteStop(i)) >= DistanceOracle.INFINITY) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
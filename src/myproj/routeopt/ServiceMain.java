@@ -0,0 +1,49 @@
+package myproj.routeopt;
+
+import myproj.routeopt.service.RoutingService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+// Runs the optimizer as a local HTTP service until the process is stopped:
+//   java myproj.routeopt.ServiceMain [--host=<address>] [--port=<port>]
+//        [--threads=<handler threads>] [--solve-threads=<solver threads>]
+// It binds to 127.0.0.1:8080 by default. See RoutingService for the endpoints.
+public class ServiceMain {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "127.0.0.1";
+        int port = 8080;
+        int solveThreads = Runtime.getRuntime().availableProcessors();
+        int handlerThreads = 4 * solveThreads + 4;
+        try {
+            for (String option : args) {
+                if (option.startsWith("--host=")) {
+                    host = option.substring("--host=".length());
+                } else if (option.startsWith("--port=")) {
+                    port = Integer.parseInt(option.substring("--port=".length()));
+                } else if (option.startsWith("--threads=")) {
+                    handlerThreads = Integer.parseInt(option.substring("--threads=".length()));
+                } else if (option.startsWith("--solve-threads=")) {
+                    solveThreads = Integer.parseInt(option.substring("--solve-threads=".length()));
+                } else {
+                    System.err.println("Unknown option " + option);
+                    System.exit(BatchMain.EXIT_ERROR);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Bad number: " + e.getMessage());
+            System.exit(BatchMain.EXIT_ERROR);
+        }
+
+        RoutingService service = new RoutingService(new InetSocketAddress(host, port), handlerThreads, solveThreads);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.close();
+            stopped.countDown();
+        }));
+        service.start();
+        System.err.println("Listening on " + host + ":" + service.getPort());
+        stopped.await();
+    }
+}
@@ -1,39 +1,101 @@
 package myproj.routeopt.controller;
 
 import myproj.SmartRouteOptimization;
+import myproj.routeopt.metrics.SolverMetrics;
 import myproj.routeopt.model.DeliveryPoint;
 import myproj.routeopt.model.Graph;
+import myproj.routeopt.model.GraphBuilder;
+import myproj.routeopt.model.MappedDistanceMatrix;
 import myproj.routeopt.model.Vehicle;
+import myproj.routeopt.solver.ClarkeWrightStrategy;
+import myproj.routeopt.solver.ClusterFirstStrategy;
+import myproj.routeopt.solver.LnsStrategy;
+import myproj.routeopt.solver.NearestNeighbourStrategy;
+import myproj.routeopt.solver.RoutingStrategy;
+import myproj.routeopt.solver.SolveControl;
+import myproj.routeopt.solver.TimeWindowInsertionStrategy;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class MainController {
+    private static final Logger LOG = Logger.getLogger(MainController.class.getName());
+    // compareStrategies total of a strategy that did not serve every stop
+    public static final long UNSERVED = -1;
+
     private SmartRouteOptimization system;
     private List<DeliveryPoint> deliveryPoints;
     private List<Vehicle> vehicles;
+    private final List<RoutingStrategy> strategies;
+    private RoutingStrategy routingStrategy;
+    // Solves run one at a time on this thread, never on the caller's (the EDT)
+    private final ExecutorService solverExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "route-solver");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public MainController() {
         deliveryPoints = new ArrayList<>();
         vehicles = new ArrayList<>();
+        strategies = List.of(new TimeWindowInsertionStrategy(), new NearestNeighbourStrategy(),
+                new ClarkeWrightStrategy(), new ClusterFirstStrategy(), new LnsStrategy());
+        routingStrategy = strategies.get(0);
     }
 
     public void initializeSystem(int locations, int depot) {
-        Graph cityGraph = new Graph(locations);
+        Graph cityGraph = new GraphBuilder(locations);
         system = new SmartRouteOptimization(cityGraph, depot);
     }
 
+    // Start from a distance table written by saveDistanceMatrix instead of entering edges
+    public void initializeSystem(Path distanceMatrixFile, int depot) throws IOException {
+        MappedDistanceMatrix distances = MappedDistanceMatrix.open(distanceMatrixFile);
+        system = new SmartRouteOptimization(new GraphBuilder(distances.getVertices()), depot);
+        system.setDistanceOracle(distances);
+    }
+
+    public void saveDistanceMatrix(Path distanceMatrixFile) throws IOException {
+        if (system == null) {
+            throw new IllegalStateException("System not initialized");
+        }
+        if (!system.hasRoadDistances()) {
+            system.computeShortestPaths();
+        }
+        MappedDistanceMatrix.write(distanceMatrixFile, system.getDistanceOracle());
+    }
+
     public void addEdge(int u, int v, int weight) {
         system.getCityGraph().addEdge(u, v, weight);
+        system.invalidateDistances();
+    }
+
+    // One batch of an imported edge list; distances are rebuilt once on the next solve
+    public void addEdges(int[] u, int[] v, int[] weights) {
+        if (system == null) {
+            throw new IllegalStateException("System not initialized");
+        }
+        system.getCityGraph().addEdges(u, v, weights);
+        system.invalidateDistances();
     }
 
     public void addDeliveryPoint(int id, int demand, int timeStart, int timeEnd) {
-        DeliveryPoint dp = new DeliveryPoint(id, demand, timeStart, timeEnd);
-        deliveryPoints.add(dp);
         system.addDeliveryPoint(id, demand, timeStart, timeEnd);
-        System.out.println("Added Delivery Point: " + id + ", Demand: " + demand);
+        deliveryPoints.add(new DeliveryPoint(id, demand, timeStart, timeEnd));
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Added Delivery Point: " + id + ", Demand: " + demand);
+        }
     }
 
     public void addVehicle(int capacity) {
@@ -41,10 +103,133 @@ public class MainController {
         Vehicle vehicle = new Vehicle(id, capacity);
         vehicles.add(vehicle);
         system.addVehicle(id, capacity);
-        System.out.println("Added Vehicle: " + id + ", Capacity: " + capacity);
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Added Vehicle: " + id + ", Capacity: " + capacity);
+        }
     }
 
     public void optimizeRoutes() throws IllegalStateException {
+        validateForOptimization();
+
+        try {
+            prepareDistances();
+            solve(routingStrategy);
+            List<Integer> unserved = system.findUnservedDeliveries();
+            if (!unserved.isEmpty()) {
+                LOG.warning(unserved.size() + " delivery points unserved: " + unserved);
+            }
+            printDetailedStatistics();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error during optimization: " + e.getMessage(), e);
+        }
+    }
+
+    // Runs the selected strategy on the solver thread. The future fails with a
+    // CancellationException when control is cancelled before routes are complete;
+    // cancelling during route improvement completes normally with the best plan so far.
+    // The future's value is the delivery points the plan leaves unserved, such as
+    // stops whose time windows cannot be met; it is empty when every stop is routed.
+    // The model must not be changed until the future is done.
+    public CompletableFuture<List<Integer>> optimizeRoutesAsync(SolveControl control) throws IllegalStateException {
+        validateForOptimization();
+        RoutingStrategy strategy = routingStrategy;
+        return CompletableFuture.supplyAsync(() -> {
+            system.setSolveControl(control);
+            try {
+                prepareDistances();
+                solve(strategy);
+                return system.findUnservedDeliveries();
+            } finally {
+                system.setSolveControl(null);
+            }
+        }, solverExecutor);
+    }
+
+    // Runs every strategy on the same instance and reports total distances side by
+    // side. The selected strategy runs last, so its plan is the one left in place.
+    // A strategy that fails or leaves stops unserved is reported with UNSERVED
+    // instead of a total, so it cannot rank ahead of a complete plan.
+    public Map<String, Long> compareStrategies() throws IllegalStateException {
+        validateForOptimization();
+        prepareDistances();
+        return compare(null);
+    }
+
+    // compareStrategies on the solver thread, so LNS and cluster-first runs do not
+    // block the caller. The future fails with a CancellationException when control
+    // is cancelled; strategies not yet run are then skipped. The model must not be
+    // changed until the future is done.
+    public CompletableFuture<Map<String, Long>> compareStrategiesAsync(SolveControl control)
+            throws IllegalStateException {
+        validateForOptimization();
+        return CompletableFuture.supplyAsync(() -> {
+            system.setSolveControl(control);
+            try {
+                prepareDistances();
+                return compare(control);
+            } finally {
+                system.setSolveControl(null);
+            }
+        }, solverExecutor);
+    }
+
+    private Map<String, Long> compare(SolveControl control) {
+        List<RoutingStrategy> order = new ArrayList<>(strategies);
+        order.remove(routingStrategy);
+        order.add(routingStrategy);
+        Map<String, Long> totals = new LinkedHashMap<>();
+        StringBuilder report = new StringBuilder(String.format("%nStrategy comparison:%n"));
+        for (RoutingStrategy strategy : order) {
+            if (control != null) {
+                control.checkCancelled();
+            }
+            long start = System.nanoTime();
+            String failure = null;
+            try {
+                solve(strategy);
+                int unserved = system.findUnservedDeliveries().size();
+                if (unserved > 0) {
+                    failure = unserved + " delivery points unserved";
+                }
+            } catch (CancellationException e) {
+                throw e;
+            } catch (IllegalStateException e) {
+                failure = e.getMessage();
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            if (failure != null) {
+                totals.put(strategy.getName(), UNSERVED);
+                report.append(String.format("  %-24s %s  (%d ms)%n", strategy.getName(), failure, elapsedMillis));
+                continue;
+            }
+            long total = system.getTotalDistance();
+            totals.put(strategy.getName(), total);
+            report.append(String.format("  %-24s total distance %10d  (%d ms)%n", strategy.getName(), total, elapsedMillis));
+        }
+        LOG.info(report.toString());
+        return totals;
+    }
+
+    // The whole strategy run is one "solve" phase; counters go to JFR once it ends
+    private void solve(RoutingStrategy strategy) {
+        SolverMetrics metrics = system.getMetrics();
+        SolverMetrics.Phase solvePhase = metrics.startPhase("solve");
+        try {
+            strategy.solve(system);
+        } finally {
+            solvePhase.close();
+            metrics.commitCountersEvent();
+        }
+    }
+
+    public SolverMetrics getMetrics() {
+        if (system == null) {
+            throw new IllegalStateException("System not initialized");
+        }
+        return system.getMetrics();
+    }
+
+    private void validateForOptimization() {
         // Validate system state
         if (system == null) {
             throw new IllegalStateException("System not initialized");
@@ -61,14 +246,11 @@ public class MainController {
             throw new IllegalStateException("Total vehicle capacity insufficient for delivery demands. " +
                     "Please add more vehicles or reduce delivery demands.");
         }
+    }
 
-        try {
-            system.assignDeliveries();
-            system.optimizeRoutes();
-            printDetailedStatistics();
-        } catch (Exception e) {
-            System.err.println("Error during optimization: " + e.getMessage());
-            e.printStackTrace();
+    private void prepareDistances() {
+        if (!system.hasRoadDistances()) {
+            system.computeShortestPaths();
         }
     }
 
@@ -109,24 +291,32 @@ public class MainController {
 
     // New method to print detailed statistics
     public void printDetailedStatistics() {
-        System.out.println("\nSystem Statistics:");
+        if (!LOG.isLoggable(Level.INFO)) {
+            return;
+        }
+        StringBuilder out = new StringBuilder("\nSystem Statistics:\n");
         Map<String, String> stats = getSystemStats();
-        System.out.println("Total Capacity: " + stats.get("Total Capacity"));
-        System.out.println("Total Demand: " + stats.get("Total Demand"));
-        System.out.println("Total Vehicles: " + stats.get("Total Vehicles"));
-        System.out.println("Total Delivery Points: " + stats.get("Total Delivery Points"));
+        out.append("Total Capacity: ").append(stats.get("Total Capacity")).append('\n');
+        out.append("Total Demand: ").append(stats.get("Total Demand")).append('\n');
+        out.append("Total Vehicles: ").append(stats.get("Total Vehicles")).append('\n');
+        out.append("Total Delivery Points: ").append(stats.get("Total Delivery Points")).append('\n');
+        List<Integer> unserved = system.findUnservedDeliveries();
+        if (!unserved.isEmpty()) {
+            out.append("Unserved Delivery Points: ").append(unserved).append('\n');
+        }
 
         // Print detailed vehicle information
         List<Vehicle> vehicles = system.getVehicles();
         for (Vehicle v : vehicles) {
-            System.out.println(String.format("\nVehicle %d (Capacity: %d, Load: %d):",
+            out.append(String.format("%nVehicle %d (Capacity: %d, Load: %d):%n",
                     v.getId(), v.getCapacity(), v.getCurrentLoad()));
-            System.out.println("Route:");
-            System.out.println("  " + formatRoute(v.getRoute()));
-            System.out.println("Delivery Points:");
+            out.append("Route:\n");
+            out.append("  ").append(formatRoute(v.getRoute())).append('\n');
+            out.append("Delivery Points:\n");
             v.getDeliveryLoads().forEach((pointId, demand) ->
-                    System.out.println(String.format("  Point %d: Demand %d", pointId, demand)));
+                    out.append(String.format("  Point %d: Demand %d%n", pointId, demand)));
         }
+        LOG.info(out.toString());
     }
 
     public DeliveryPoint getDeliveryPoint(int locationId) {
@@ -139,6 +329,18 @@ public class MainController {
     }
 
 
+    public List<RoutingStrategy> getRoutingStrategies() {
+        return strategies;
+    }
+
+    public RoutingStrategy getRoutingStrategy() {
+        return routingStrategy;
+    }
+
+    public void setRoutingStrategy(RoutingStrategy routingStrategy) {
+        this.routingStrategy = routingStrategy;
+    }
+
     public List<Vehicle> getVehicles() {
         return vehicles;
     }
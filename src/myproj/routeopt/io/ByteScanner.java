@@ -0,0 +1,156 @@
+package myproj.routeopt.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// Line oriented number scanner over a channel, shared by the text readers.
+// Bytes are read into one reused array and numbers are parsed from them
+// directly, so scanning allocates nothing per line. Spaces, tabs, commas and
+// semicolons all separate fields; '#' starts a comment.
+class ByteScanner {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private final byte[] data = new byte[BUFFER_BYTES];
+    private final ByteBuffer buffer = ByteBuffer.wrap(data);
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private long line = 1;
+    private long consumed;
+
+    ByteScanner(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    // Start of the next line with content (the line number is updated), or -1 at the end
+    int nextLine() throws IOException {
+        while (true) {
+            int b = peek();
+            if (b < 0) {
+                return -1;
+            }
+            if (b == '\n') {
+                next();
+                line++;
+            } else if (isSeparator(b)) {
+                next();
+            } else if (b == '#') {
+                skipLine();
+            } else {
+                return b;
+            }
+        }
+    }
+
+    // Reads between min and max numbers from the rest of the line into fields, returns the count
+    int readFields(long[] fields, int min, int max) throws IOException {
+        int count = 0;
+        int b;
+        while (true) {
+            b = peek();
+            while (isSeparator(b)) {
+                next();
+                b = peek();
+            }
+            if (b < 0 || b == '\n' || b == '#') {
+                break;
+            }
+            if (count == max) {
+                throw error("expected at most " + max + " numbers");
+            }
+            fields[count++] = readLong();
+        }
+        if (b == '#') {
+            skipLine();
+        }
+        if (count < min) {
+            throw error("expected at least " + min + " numbers, found " + count);
+        }
+        return count;
+    }
+
+    long readLong() throws IOException {
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            next();
+        }
+        long value = 0;
+        int digits = 0;
+        int b;
+        while ((b = peek()) >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            if (++digits > 18) {
+                throw error("number too long");
+            }
+            next();
+        }
+        if (digits == 0 || !(b < 0 || b == '\n' || b == '#' || isSeparator(b))) {
+            throw error("malformed number");
+        }
+        return negative ? -value : value;
+    }
+
+    void skipLine() throws IOException {
+        int b;
+        while ((b = peek()) >= 0 && b != '\n') {
+            next();
+        }
+    }
+
+    int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return data[position] & 0xFF;
+    }
+
+    void next() {
+        position++;
+    }
+
+    // Bytes taken from the channel so far, for progress reporting
+    long getBytesConsumed() {
+        return consumed - (limit - position);
+    }
+
+    long getLine() {
+        return line;
+    }
+
+    int toInt(long value) throws IOException {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("number out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    IOException error(String message) {
+        return new IOException("Line " + line + ": " + message);
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        consumed += read;
+        return true;
+    }
+
+    private static boolean isSeparator(int b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == ',' || b == ';';
+    }
+}
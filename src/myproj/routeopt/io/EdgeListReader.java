@@ -0,0 +1,200 @@
+package myproj.routeopt.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads an edge list in batches for Graph.addEdges. Two formats are accepted,
+// told apart by the first four bytes:
+//   text   - one "u,v,w" per line (spaces, tabs or semicolons also separate);
+//            a header line that does not start with a number is skipped
+//   binary - little endian int magic "SREL", int version, int edge count,
+//            then count (u, v, w) int triples; see writeBinary
+// Every batch gets fresh arrays, so a consumer may keep or hand them on.
+public class EdgeListReader {
+    public static final int DEFAULT_BATCH_SIZE = 1 << 16;
+
+    private static final int MAGIC = 0x5352454C;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int EDGE_BYTES = 12;
+
+    public interface BatchConsumer {
+        void accept(int[] u, int[] v, int[] w);
+    }
+
+    public interface ProgressListener {
+        void progress(long bytesRead, long totalBytes);
+    }
+
+    private final int batchSize;
+
+    public EdgeListReader() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    public EdgeListReader(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    // Returns the number of edges read
+    public long read(Path file, BatchConsumer consumer, ProgressListener progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long totalBytes = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() >= 4 && header.getInt(0) == MAGIC) {
+                return readBinary(channel, header, totalBytes, consumer, progress);
+            }
+            return readText(channel, totalBytes, consumer, progress);
+        }
+    }
+
+    // An edge list already in memory, in the binary format; returns the number of edges read
+    public long readBinary(ByteBuffer data, BatchConsumer consumer) throws IOException {
+        data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC) {
+            throw new IOException("Not a binary edge list");
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported edge list version " + version);
+        }
+        int edges = data.getInt();
+        if (edges < 0 || data.remaining() != (long) edges * EDGE_BYTES) {
+            throw new IOException(String.format("Edge list should be %d bytes for %d edges, found %d",
+                    HEADER_BYTES + (long) edges * EDGE_BYTES, edges, HEADER_BYTES + data.remaining()));
+        }
+        for (int done = 0; done < edges; ) {
+            int count = Math.min(batchSize, edges - done);
+            int[] u = new int[count];
+            int[] v = new int[count];
+            int[] w = new int[count];
+            for (int i = 0; i < count; i++) {
+                u[i] = data.getInt();
+                v[i] = data.getInt();
+                w[i] = data.getInt();
+            }
+            consumer.accept(u, v, w);
+            done += count;
+        }
+        return edges;
+    }
+
+    private long readText(FileChannel channel, long totalBytes, BatchConsumer consumer,
+                          ProgressListener progress) throws IOException {
+        ByteScanner scanner = new ByteScanner(channel);
+        long[] fields = new long[3];
+        int[] u = new int[batchSize];
+        int[] v = new int[batchSize];
+        int[] w = new int[batchSize];
+        int count = 0;
+        long edges = 0;
+        boolean firstLine = true;
+        int b;
+        while ((b = scanner.nextLine()) >= 0) {
+            if (firstLine && b != '-' && (b < '0' || b > '9')) {
+                scanner.skipLine(); // column header such as "from,to,weight"
+                firstLine = false;
+                continue;
+            }
+            firstLine = false;
+            scanner.readFields(fields, 3, 3);
+            u[count] = scanner.toInt(fields[0]);
+            v[count] = scanner.toInt(fields[1]);
+            w[count] = scanner.toInt(fields[2]);
+            if (++count == batchSize) {
+                consumer.accept(u, v, w);
+                edges += count;
+                count = 0;
+                u = new int[batchSize];
+                v = new int[batchSize];
+                w = new int[batchSize];
+                progress.progress(scanner.getBytesConsumed(), totalBytes);
+            }
+        }
+        if (count > 0) {
+            consumer.accept(Arrays.copyOf(u, count), Arrays.copyOf(v, count), Arrays.copyOf(w, count));
+            edges += count;
+        }
+        progress.progress(totalBytes, totalBytes);
+        return edges;
+    }
+
+    private long readBinary(FileChannel channel, ByteBuffer header, long totalBytes, BatchConsumer consumer,
+                            ProgressListener progress) throws IOException {
+        if (header.remaining() < HEADER_BYTES) {
+            throw new IOException("Truncated edge list header");
+        }
+        int version = header.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported edge list version " + version);
+        }
+        int edges = header.getInt(8);
+        long expectedSize = HEADER_BYTES + (long) edges * EDGE_BYTES;
+        if (edges < 0 || totalBytes != expectedSize) {
+            throw new IOException(String.format("Edge list should be %d bytes for %d edges, found %d",
+                    expectedSize, edges, totalBytes));
+        }
+
+        ByteBuffer data = ByteBuffer.allocateDirect(batchSize * EDGE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long offset = HEADER_BYTES;
+        for (int done = 0; done < edges; ) {
+            int count = Math.min(batchSize, edges - done);
+            data.clear().limit(count * EDGE_BYTES);
+            while (data.hasRemaining()) {
+                if (channel.read(data, offset + data.position()) < 0) {
+                    throw new IOException("Edge list ended early");
+                }
+            }
+            data.flip();
+            int[] u = new int[count];
+            int[] v = new int[count];
+            int[] w = new int[count];
+            for (int i = 0; i < count; i++) {
+                u[i] = data.getInt();
+                v[i] = data.getInt();
+                w[i] = data.getInt();
+            }
+            consumer.accept(u, v, w);
+            done += count;
+            offset += (long) count * EDGE_BYTES;
+            progress.progress(offset, totalBytes);
+        }
+        return edges;
+    }
+
+    public static void writeBinary(Path file, int[] u, int[] v, int[] w) throws IOException {
+        if (u.length != v.length || u.length != w.length) {
+            throw new IllegalArgumentException("Edge arrays must have the same length");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BATCH_SIZE * EDGE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(u.length);
+            for (int i = 0; i < u.length; i++) {
+                if (buffer.remaining() < EDGE_BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putInt(u[i]).putInt(v[i]).putInt(w[i]);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
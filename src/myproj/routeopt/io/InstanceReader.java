@@ -0,0 +1,124 @@
+package myproj.routeopt.io;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.model.GraphBuilder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Streams a plain text instance file straight into a GraphBuilder and a
+// SmartRouteOptimization. The file is read through one fixed size buffer and
+// numbers are parsed from the bytes, so no String or record object is created
+// per line and the heap only holds the graph and the problem itself.
+//
+// Format, one record per line, '#' starts a comment:
+//   n <vertices> <depot> [expected edges]     must come first
+//   e <u> <v> <weight>                        undirected road
+//   d <id> <demand> <window start> <window end>
+//   v <capacity>                              vehicles are numbered in file order
+public class InstanceReader {
+    private static final int MAX_FIELDS = 4;
+
+    private final long[] fields = new long[MAX_FIELDS];
+    private ByteScanner scanner;
+
+    private SmartRouteOptimization system;
+    private int edges;
+    private int deliveries;
+    private int vehicles;
+
+    public SmartRouteOptimization read(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            scanner = new ByteScanner(in);
+            system = null;
+            edges = 0;
+            deliveries = 0;
+            vehicles = 0;
+
+            int tag;
+            while ((tag = scanner.nextLine()) >= 0) {
+                scanner.next();
+                dispatch(tag);
+            }
+            if (system == null) {
+                throw new IOException("Instance file has no 'n' record: " + file);
+            }
+            system.getCityGraph().toCsr();
+            return system;
+        } finally {
+            scanner = null;
+        }
+    }
+
+    public int getEdgeCount() {
+        return edges;
+    }
+
+    public int getDeliveryCount() {
+        return deliveries;
+    }
+
+    public int getVehicleCount() {
+        return vehicles;
+    }
+
+    private void dispatch(int tag) throws IOException {
+        switch (tag) {
+            case 'n': {
+                if (system != null) {
+                    throw scanner.error("duplicate 'n' record");
+                }
+                int count = scanner.readFields(fields, 2, 3);
+                int vertices = scanner.toInt(fields[0]);
+                int depot = scanner.toInt(fields[1]);
+                int expectedEdges = count == 3 ? scanner.toInt(fields[2]) : 16;
+                if (depot < 0 || depot >= vertices) {
+                    throw scanner.error("depot " + depot + " outside 0.." + (vertices - 1));
+                }
+                system = new SmartRouteOptimization(new GraphBuilder(vertices, expectedEdges), depot);
+                break;
+            }
+            case 'e':
+                scanner.readFields(fields, 3, 3);
+                requireHeader();
+                try {
+                    system.getCityGraph().addEdge(scanner.toInt(fields[0]), scanner.toInt(fields[1]),
+                            scanner.toInt(fields[2]));
+                } catch (IllegalArgumentException e) {
+                    throw scanner.error(e.getMessage());
+                }
+                edges++;
+                break;
+            case 'd':
+                scanner.readFields(fields, 4, 4);
+                requireHeader();
+                int id = scanner.toInt(fields[0]);
+                if (id < 0 || id >= system.getCityGraph().getVertices()) {
+                    throw scanner.error("delivery point " + id + " is not a vertex");
+                }
+                try {
+                    system.addDeliveryPoint(id, scanner.toInt(fields[1]), scanner.toInt(fields[2]),
+                            scanner.toInt(fields[3]));
+                } catch (IllegalArgumentException e) {
+                    throw scanner.error(e.getMessage());
+                }
+                deliveries++;
+                break;
+            case 'v':
+                scanner.readFields(fields, 1, 1);
+                requireHeader();
+                system.addVehicle(vehicles++, scanner.toInt(fields[0]));
+                break;
+            default:
+                throw scanner.error("unknown record type '" + (char) tag + "'");
+        }
+    }
+
+    private void requireHeader() throws IOException {
+        if (system == null) {
+            throw scanner.error("'n' record must come before edges, deliveries and vehicles");
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package myproj.routeopt.io;
+
+import myproj.routeopt.model.Vehicle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// A solved plan in compact binary form, for example yesterday's routes to
+// warm-start today's solve from (SmartRouteOptimization.warmStart). Per vehicle
+// it keeps the id, the stop sequence and the load delivered at every stop.
+//
+// File layout, little endian ints throughout:
+//   magic "SRPS", version, vehicle count, then per vehicle
+//   id, route length, route stops, delivery count, (delivery id, load) pairs
+// The file is written and read as one buffer with bulk int transfers, so its
+// speed is that of the disk.
+public final class PlanSnapshot {
+    private static final int MAGIC = 0x53525053;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 3;
+
+    private final int[] vehicleIds;
+    private final int[][] routes;
+    private final int[][] deliveryIds;
+    private final int[][] deliveryLoads;
+
+    private PlanSnapshot(int[] vehicleIds, int[][] routes, int[][] deliveryIds, int[][] deliveryLoads) {
+        this.vehicleIds = vehicleIds;
+        this.routes = routes;
+        this.deliveryIds = deliveryIds;
+        this.deliveryLoads = deliveryLoads;
+    }
+
+    public static PlanSnapshot of(List<Vehicle> vehicles) {
+        int count = vehicles.size();
+        int[] ids = new int[count];
+        int[][] routes = new int[count][];
+        int[][] deliveryIds = new int[count][];
+        int[][] deliveryLoads = new int[count][];
+        for (int i = 0; i < count; i++) {
+            Vehicle vehicle = vehicles.get(i);
+            ids[i] = vehicle.getId();
+            routes[i] = vehicle.getRouteArray();
+            deliveryIds[i] = vehicle.getDeliveryIds();
+            deliveryLoads[i] = new int[deliveryIds[i].length];
+            for (int d = 0; d < deliveryIds[i].length; d++) {
+                deliveryLoads[i][d] = vehicle.getDeliveryLoad(deliveryIds[i][d]);
+            }
+        }
+        return new PlanSnapshot(ids, routes, deliveryIds, deliveryLoads);
+    }
+
+    public void write(Path file) throws IOException {
+        long ints = HEADER_INTS;
+        for (int i = 0; i < vehicleIds.length; i++) {
+            ints += 3 + routes[i].length + 2L * deliveryIds[i].length;
+        }
+        if (ints * 4 > Integer.MAX_VALUE) {
+            throw new IOException("Plan too large for one snapshot: " + ints * 4 + " bytes");
+        }
+        ByteBuffer bytes = ByteBuffer.allocateDirect((int) (ints * 4)).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer out = bytes.asIntBuffer();
+        out.put(MAGIC).put(VERSION).put(vehicleIds.length);
+        int[] pairs = new int[0];
+        for (int i = 0; i < vehicleIds.length; i++) {
+            out.put(vehicleIds[i]).put(routes[i].length).put(routes[i]).put(deliveryIds[i].length);
+            int deliveries = deliveryIds[i].length;
+            if (pairs.length < 2 * deliveries) {
+                pairs = new int[2 * deliveries];
+            }
+            for (int d = 0; d < deliveries; d++) {
+                pairs[2 * d] = deliveryIds[i][d];
+                pairs[2 * d + 1] = deliveryLoads[i][d];
+            }
+            out.put(pairs, 0, 2 * deliveries);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    public static PlanSnapshot read(Path file) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % 4 != 0 || size < HEADER_INTS * 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a plan snapshot: " + file);
+            }
+            bytes = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    throw new IOException("Plan snapshot ended early: " + file);
+                }
+            }
+            bytes.flip();
+        }
+        IntBuffer in = bytes.asIntBuffer();
+        if (in.get() != MAGIC) {
+            throw new IOException("Not a plan snapshot: " + file);
+        }
+        int version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported plan snapshot version " + version);
+        }
+        int count = length(in, 3, file);
+        int[] ids = new int[count];
+        int[][] routes = new int[count][];
+        int[][] deliveryIds = new int[count][];
+        int[][] deliveryLoads = new int[count][];
+        int[] pairs = new int[0];
+        for (int i = 0; i < count; i++) {
+            if (in.remaining() < 2) {
+                throw new IOException("Plan snapshot ended early: " + file);
+            }
+            ids[i] = in.get();
+            routes[i] = new int[length(in, 1, file)];
+            in.get(routes[i]);
+            int deliveries = length(in, 2, file);
+            if (pairs.length < 2 * deliveries) {
+                pairs = new int[2 * deliveries];
+            }
+            in.get(pairs, 0, 2 * deliveries);
+            deliveryIds[i] = new int[deliveries];
+            deliveryLoads[i] = new int[deliveries];
+            for (int d = 0; d < deliveries; d++) {
+                deliveryIds[i][d] = pairs[2 * d];
+                deliveryLoads[i][d] = pairs[2 * d + 1];
+            }
+        }
+        if (in.hasRemaining()) {
+            throw new IOException(in.remaining() * 4 + " bytes after the last vehicle in " + file);
+        }
+        return new PlanSnapshot(ids, routes, deliveryIds, deliveryLoads);
+    }
+
+    // A length field, checked against what is left so a corrupt file fails cleanly
+    private static int length(IntBuffer in, int intsPerEntry, Path file) throws IOException {
+        if (!in.hasRemaining()) {
+            throw new IOException("Plan snapshot ended early: " + file);
+        }
+        int length = in.get();
+        if (length < 0 || (long) length * intsPerEntry > in.remaining()) {
+            throw new IOException("Corrupt plan snapshot " + file + ": bad length " + length);
+        }
+        return length;
+    }
+
+    public int getVehicleCount() {
+        return vehicleIds.length;
+    }
+
+    public int getVehicleId(int index) {
+        return vehicleIds[index];
+    }
+
+    // Depot at both ends
+    public int[] getRoute(int index) {
+        return routes[index].clone();
+    }
+
+    public int getRouteSize(int index) {
+        return routes[index].length;
+    }
+
+    public int getRouteStop(int index, int position) {
+        return routes[index][position];
+    }
+
+    public int[] getDeliveryIds(int index) {
+        return deliveryIds[index].clone();
+    }
+
+    public int[] getDeliveryLoads(int index) {
+        return deliveryLoads[index].clone();
+    }
+
+    public int getDeliveryCount() {
+        int total = 0;
+        for (int[] ids : deliveryIds) {
+            total += ids.length;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,54 @@
+package myproj.routeopt.io;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.Vehicle;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Writes a solved plan as text, one line per vehicle:
+//   vehicle <id> capacity <c> load <l> distance <d> route <depot> <stop> ... <depot>
+// followed by an "unserved" line listing stops no vehicle visits (if any) and
+// a "total" line with the summed distance.
+public final class PlanWriter {
+    private PlanWriter() {
+    }
+
+    public static void write(Path file, SmartRouteOptimization system, List<Integer> unserved) throws IOException {
+        DistanceOracle distances = system.getDistanceOracle();
+        long total = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            StringBuilder row = new StringBuilder(256);
+            for (Vehicle vehicle : system.getVehicles()) {
+                long distance = 0;
+                for (int i = 1; i < vehicle.getRouteSize(); i++) {
+                    distance += distances.getDistance(vehicle.getRouteStop(i - 1), vehicle.getRouteStop(i));
+                }
+                total += distance;
+                row.setLength(0);
+                row.append("vehicle ").append(vehicle.getId())
+                        .append(" capacity ").append(vehicle.getCapacity())
+                        .append(" load ").append(vehicle.getCurrentLoad())
+                        .append(" distance ").append(distance)
+                        .append(" route");
+                for (int i = 0; i < vehicle.getRouteSize(); i++) {
+                    row.append(' ').append(vehicle.getRouteStop(i));
+                }
+                out.append(row).append('\n');
+            }
+            if (!unserved.isEmpty()) {
+                row.setLength(0);
+                row.append("unserved");
+                for (int id : unserved) {
+                    row.append(' ').append(id);
+                }
+                out.append(row).append('\n');
+            }
+            out.append("total ").append(Long.toString(total)).append('\n');
+        }
+    }
+}
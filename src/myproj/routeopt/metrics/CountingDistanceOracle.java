@@ -0,0 +1,27 @@
+package myproj.routeopt.metrics;
+
+import myproj.routeopt.model.DistanceOracle;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts every lookup; see SolverMetrics.meter
+final class CountingDistanceOracle implements DistanceOracle {
+    private final DistanceOracle distances;
+    private final LongAdder evaluations;
+
+    CountingDistanceOracle(DistanceOracle distances, LongAdder evaluations) {
+        this.distances = distances;
+        this.evaluations = evaluations;
+    }
+
+    @Override
+    public int getDistance(int u, int v) {
+        evaluations.increment();
+        return distances.getDistance(u, v);
+    }
+
+    @Override
+    public int getVertices() {
+        return distances.getVertices();
+    }
+}
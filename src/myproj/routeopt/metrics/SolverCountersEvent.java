@@ -0,0 +1,29 @@
+package myproj.routeopt.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("myproj.routeopt.SolverCounters")
+@Label("Solver Counters")
+@Category("SmartRoute")
+class SolverCountersEvent extends Event {
+    @Label("Distance Evaluations")
+    long distanceEvaluations;
+
+    @Label("Moves Tried")
+    long movesTried;
+
+    @Label("Moves Accepted")
+    long movesAccepted;
+
+    @Label("Insertions Tried")
+    long insertionsTried;
+
+    @Label("Savings Evaluated")
+    long savingsEvaluated;
+
+    @Label("LNS Iterations")
+    long lnsIterations;
+}
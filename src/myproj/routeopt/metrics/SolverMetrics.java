@@ -0,0 +1,190 @@
+package myproj.routeopt.metrics;
+
+import myproj.routeopt.model.DistanceOracle;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and phase timers for the solve pipeline. Counters are LongAdders,
+// so solver threads can add to them without contention; hot loops keep a
+// local count and add it once when they finish. Phases record wall time and
+// the bytes allocated by the thread that ran them (worker threads of parallel
+// phases are not included), and are also emitted as JFR events when a
+// recording is running. toJson gives a snapshot of everything.
+//
+// Counting distance evaluations means wrapping the oracle, which costs a
+// little on every lookup, so it is off unless setDistanceCounting is called.
+public class SolverMetrics {
+    public enum Counter {
+        DISTANCE_EVALUATIONS,
+        STOPS_ASSIGNED,
+        ROUTES_BUILT,
+        INSERTIONS_TRIED,
+        STOPS_INSERTED,
+        SAVINGS_EVALUATED,
+        ROUTES_MERGED,
+        MOVES_TRIED,
+        MOVES_ACCEPTED,
+        LNS_ITERATIONS,
+        LNS_IMPROVEMENTS
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    // Insertion ordered, so phases are reported in the order they first ran
+    private final Map<String, PhaseStats> phases = new LinkedHashMap<>();
+    private volatile boolean distanceCounting;
+
+    public SolverMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public void setDistanceCounting(boolean distanceCounting) {
+        this.distanceCounting = distanceCounting;
+    }
+
+    public boolean isDistanceCounting() {
+        return distanceCounting;
+    }
+
+    // The oracle itself, or a counting wrapper when distance counting is on
+    public DistanceOracle meter(DistanceOracle distances) {
+        if (!distanceCounting || distances instanceof CountingDistanceOracle) {
+            return distances;
+        }
+        return new CountingDistanceOracle(distances, counters[Counter.DISTANCE_EVALUATIONS.ordinal()]);
+    }
+
+    // Close the phase in a finally block once it ends
+    public Phase startPhase(String name) {
+        PhaseStats stats;
+        synchronized (phases) {
+            stats = phases.computeIfAbsent(name, key -> new PhaseStats());
+        }
+        return new Phase(name, stats);
+    }
+
+    public long getPhaseNanos(String name) {
+        synchronized (phases) {
+            PhaseStats stats = phases.get(name);
+            return stats == null ? 0 : stats.nanos.sum();
+        }
+    }
+
+    public void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        synchronized (phases) {
+            phases.clear();
+        }
+    }
+
+    // Emits the current counter values as one JFR event
+    public void commitCountersEvent() {
+        SolverCountersEvent event = new SolverCountersEvent();
+        if (event.isEnabled()) {
+            event.distanceEvaluations = get(Counter.DISTANCE_EVALUATIONS);
+            event.movesTried = get(Counter.MOVES_TRIED);
+            event.movesAccepted = get(Counter.MOVES_ACCEPTED);
+            event.insertionsTried = get(Counter.INSERTIONS_TRIED);
+            event.savingsEvaluated = get(Counter.SAVINGS_EVALUATED);
+            event.lnsIterations = get(Counter.LNS_ITERATIONS);
+            event.commit();
+        }
+    }
+
+    // {"phases": {"name": {"count", "totalMillis", "allocatedBytes"}, ...}, "counters": {...}}
+    public String toJson() {
+        List<Map.Entry<String, PhaseStats>> snapshot;
+        synchronized (phases) {
+            snapshot = new ArrayList<>(phases.entrySet());
+        }
+        StringBuilder json = new StringBuilder("{\n  \"phases\": {");
+        for (int i = 0; i < snapshot.size(); i++) {
+            PhaseStats stats = snapshot.get(i).getValue();
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    \"").append(escape(snapshot.get(i).getKey())).append("\": {")
+                    .append("\"count\": ").append(stats.count.sum())
+                    .append(", \"totalMillis\": ").append(String.format("%.3f", stats.nanos.sum() / 1_000_000.0))
+                    .append(", \"allocatedBytes\": ").append(stats.allocatedBytes.sum())
+                    .append('}');
+        }
+        json.append(snapshot.isEmpty() ? "},\n" : "\n  },\n").append("  \"counters\": {");
+        Counter[] all = Counter.values();
+        for (int i = 0; i < all.length; i++) {
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    \"").append(all[i].name().toLowerCase()).append("\": ").append(get(all[i]));
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    private static final class PhaseStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+    }
+
+    public static final class Phase implements AutoCloseable {
+        private final PhaseStats stats;
+        private final SolverPhaseEvent event;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Phase(String name, PhaseStats stats) {
+            this.stats = stats;
+            this.event = new SolverPhaseEvent();
+            this.event.phase = name;
+            this.event.begin();
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - startNanos;
+            long allocated = allocatedBytes() - startBytes;
+            stats.count.increment();
+            stats.nanos.add(elapsed);
+            stats.allocatedBytes.add(allocated);
+            if (event.shouldCommit()) {
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+        }
+    }
+}
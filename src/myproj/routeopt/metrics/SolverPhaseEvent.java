@@ -0,0 +1,19 @@
+package myproj.routeopt.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("myproj.routeopt.SolverPhase")
+@Label("Solver Phase")
+@Category("SmartRoute")
+class SolverPhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
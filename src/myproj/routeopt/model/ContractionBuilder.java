@@ -0,0 +1,308 @@
+package myproj.routeopt.model;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+// Contraction for ContractionHierarchy. Works in rounds over the remaining
+// graph: every vertex whose priority is lower than that of all its remaining
+// neighbours is contracted in the same round, so the contracted set is
+// independent. The shortcut searches of a round run in parallel against the
+// graph as it was at the start of the round and skip every vertex contracted in
+// that round, so a witness never relies on a vertex that disappears alongside;
+// the shortcuts and neighbour list updates are then applied on one thread.
+//
+// Priority is the classic edge difference (shortcuts added minus arcs removed)
+// plus the number of neighbours already contracted, which spreads contraction
+// evenly over the graph. Witness searches give up after a fixed number of
+// settled vertices and then add the shortcut, which costs space but never
+// correctness.
+final class ContractionBuilder {
+    // Settled vertices per witness search when estimating priorities and when contracting
+    private static final int SIMULATION_SETTLE_LIMIT = 50;
+    private static final int CONTRACTION_SETTLE_LIMIT = 500;
+
+    private final int vertices;
+    // Remaining graph: neighbours of v are adjTarget[v][0 .. degree[v]), at most one arc per neighbour
+    private final int[][] adjTarget;
+    private final int[][] adjWeight;
+    private final int[] degree;
+    private final boolean[] contracted;
+    private final int[] contractedNeighbours;
+    private final int[] priority;
+    private final ThreadLocal<WitnessSearch> searches;
+
+    // Arcs from each vertex to its neighbours that were contracted later (higher rank)
+    private final int[][] upTarget;
+    private final int[][] upWeight;
+
+    ContractionBuilder(CsrGraph graph) {
+        vertices = graph.getVertices();
+        adjTarget = new int[vertices][];
+        adjWeight = new int[vertices][];
+        degree = new int[vertices];
+        contracted = new boolean[vertices];
+        contractedNeighbours = new int[vertices];
+        priority = new int[vertices];
+        upTarget = new int[vertices][];
+        upWeight = new int[vertices][];
+        searches = ThreadLocal.withInitial(() -> new WitnessSearch(vertices));
+        for (int v = 0; v < vertices; v++) {
+            int arcs = graph.degree(v);
+            adjTarget[v] = new int[Math.max(2, arcs)];
+            adjWeight[v] = new int[Math.max(2, arcs)];
+            // CSR rows are sorted by target, so parallel edges are next to each other
+            for (int e = graph.firstArc(v), end = graph.endArc(v); e < end; e++) {
+                int target = graph.arcTarget(e);
+                int weight = graph.arcWeight(e);
+                if (target == v) {
+                    continue;
+                }
+                int d = degree[v];
+                if (d > 0 && adjTarget[v][d - 1] == target) {
+                    adjWeight[v][d - 1] = Math.min(adjWeight[v][d - 1], weight);
+                } else {
+                    adjTarget[v][d] = target;
+                    adjWeight[v][d] = weight;
+                    degree[v]++;
+                }
+            }
+        }
+    }
+
+    // Returns the upward graph as CSR offsets, targets and weights
+    int[][] contract(int parallelism, BooleanSupplier cancelled, DoubleConsumer progress) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            int[] remaining = IntStream.range(0, vertices).toArray();
+            int remainingCount = vertices;
+            boolean[] dirty = new boolean[vertices];
+            Arrays.fill(dirty, true);
+            while (remainingCount > 0) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("Contraction cancelled");
+                }
+                int[] pending = remaining;
+                int count = remainingCount;
+                pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+                    int v = pending[i];
+                    if (dirty[v]) {
+                        priority[v] = computePriority(v);
+                    }
+                })).join();
+                Arrays.fill(dirty, false);
+
+                int[] selected = pool.submit(() -> IntStream.range(0, count).parallel()
+                        .map(i -> pending[i]).filter(this::isLocalMinimum).toArray()).join();
+                for (int v : selected) {
+                    contracted[v] = true;
+                }
+                int[][][] shortcuts = new int[selected.length][][];
+                pool.submit(() -> IntStream.range(0, selected.length).parallel().forEach(i ->
+                        shortcuts[i] = findShortcuts(selected[i], CONTRACTION_SETTLE_LIMIT))).join();
+
+                for (int i = 0; i < selected.length; i++) {
+                    removeVertex(selected[i], dirty);
+                    int[][] added = shortcuts[i];
+                    for (int s = 0; s < added[0].length; s++) {
+                        addArc(added[0][s], added[1][s], added[2][s]);
+                        addArc(added[1][s], added[0][s], added[2][s]);
+                    }
+                }
+
+                int kept = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (!contracted[remaining[i]]) {
+                        remaining[kept++] = remaining[i];
+                    }
+                }
+                remainingCount = kept;
+                progress.accept(1 - (double) remainingCount / vertices);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return toCsr();
+    }
+
+    private int computePriority(int v) {
+        int shortcuts = findShortcuts(v, SIMULATION_SETTLE_LIMIT)[0].length;
+        return 2 * (shortcuts - degree[v]) + contractedNeighbours[v];
+    }
+
+    // Ties go to the lower id, so two neighbours are never both minimal
+    private boolean isLocalMinimum(int v) {
+        int p = priority[v];
+        int[] targets = adjTarget[v];
+        for (int i = 0; i < degree[v]; i++) {
+            int u = targets[i];
+            if (priority[u] < p || (priority[u] == p && u < v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Shortcuts {from[], to[], weight[]} needed when v is removed: one for every
+    // pair of remaining neighbours without a witness path at most as long
+    private int[][] findShortcuts(int v, int settleLimit) {
+        int d = degree[v];
+        int[] targets = adjTarget[v];
+        int[] weights = adjWeight[v];
+        int maxWeight = 0;
+        for (int i = 0; i < d; i++) {
+            maxWeight = Math.max(maxWeight, weights[i]);
+        }
+        WitnessSearch search = searches.get();
+        int[] from = new int[4];
+        int[] to = new int[4];
+        int[] via = new int[4];
+        int count = 0;
+        for (int i = 0; i < d - 1; i++) {
+            int u = targets[i];
+            if (contracted[u]) {
+                continue;
+            }
+            search.run(u, v, weights[i] + maxWeight, settleLimit);
+            for (int j = i + 1; j < d; j++) {
+                int w = targets[j];
+                if (contracted[w]) {
+                    continue;
+                }
+                int through = weights[i] + weights[j];
+                if (search.distance(w) > through) {
+                    if (count == from.length) {
+                        from = Arrays.copyOf(from, count * 2);
+                        to = Arrays.copyOf(to, count * 2);
+                        via = Arrays.copyOf(via, count * 2);
+                    }
+                    from[count] = u;
+                    to[count] = w;
+                    via[count++] = through;
+                }
+            }
+        }
+        return new int[][]{Arrays.copyOf(from, count), Arrays.copyOf(to, count), Arrays.copyOf(via, count)};
+    }
+
+    // Freezes v's remaining arcs as its upward arcs and drops v from its neighbours
+    private void removeVertex(int v, boolean[] dirty) {
+        int d = degree[v];
+        upTarget[v] = Arrays.copyOf(adjTarget[v], d);
+        upWeight[v] = Arrays.copyOf(adjWeight[v], d);
+        for (int i = 0; i < d; i++) {
+            int u = adjTarget[v][i];
+            removeArc(u, v);
+            contractedNeighbours[u]++;
+            dirty[u] = true;
+        }
+        adjTarget[v] = null;
+        adjWeight[v] = null;
+        degree[v] = 0;
+    }
+
+    private void removeArc(int u, int v) {
+        int[] targets = adjTarget[u];
+        int d = degree[u];
+        for (int i = 0; i < d; i++) {
+            if (targets[i] == v) {
+                targets[i] = targets[d - 1];
+                adjWeight[u][i] = adjWeight[u][d - 1];
+                degree[u] = d - 1;
+                return;
+            }
+        }
+    }
+
+    // Adds u->v, or lowers the weight of an existing one
+    private void addArc(int u, int v, int weight) {
+        int[] targets = adjTarget[u];
+        int d = degree[u];
+        for (int i = 0; i < d; i++) {
+            if (targets[i] == v) {
+                adjWeight[u][i] = Math.min(adjWeight[u][i], weight);
+                return;
+            }
+        }
+        if (d == targets.length) {
+            adjTarget[u] = Arrays.copyOf(targets, d * 2);
+            adjWeight[u] = Arrays.copyOf(adjWeight[u], d * 2);
+        }
+        adjTarget[u][d] = v;
+        adjWeight[u][d] = weight;
+        degree[u] = d + 1;
+    }
+
+    private int[][] toCsr() {
+        int[] offsets = new int[vertices + 1];
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] = offsets[v] + upTarget[v].length;
+        }
+        int[] targets = new int[offsets[vertices]];
+        int[] weights = new int[offsets[vertices]];
+        for (int v = 0; v < vertices; v++) {
+            System.arraycopy(upTarget[v], 0, targets, offsets[v], upTarget[v].length);
+            System.arraycopy(upWeight[v], 0, weights, offsets[v], upWeight[v].length);
+        }
+        return new int[][]{offsets, targets, weights};
+    }
+
+    // Dijkstra over the remaining graph that avoids one vertex and every
+    // contracted one, bounded by distance and by settled vertices
+    private final class WitnessSearch {
+        private final int[] dist;
+        private final int[] stamp;
+        private final LongHeap heap = new LongHeap();
+        private int version;
+
+        WitnessSearch(int vertices) {
+            dist = new int[vertices];
+            stamp = new int[vertices];
+        }
+
+        void run(int source, int avoid, int maxDistance, int settleLimit) {
+            if (++version == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                version = 1;
+            }
+            heap.clear();
+            stamp[source] = version;
+            dist[source] = 0;
+            heap.push(0, source);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < settleLimit) {
+                long top = heap.pop();
+                int u = LongHeap.vertex(top);
+                int du = LongHeap.key(top);
+                if (du != dist[u]) {
+                    continue; // stale entry
+                }
+                if (du > maxDistance) {
+                    break;
+                }
+                settled++;
+                int[] targets = adjTarget[u];
+                int[] weights = adjWeight[u];
+                for (int i = 0, d = degree[u]; i < d; i++) {
+                    int w = targets[i];
+                    if (w == avoid || contracted[w]) {
+                        continue;
+                    }
+                    int candidate = du + weights[i];
+                    if (stamp[w] != version || candidate < dist[w]) {
+                        stamp[w] = version;
+                        dist[w] = candidate;
+                        heap.push(candidate, w);
+                    }
+                }
+            }
+        }
+
+        int distance(int v) {
+            return stamp[v] == version ? dist[v] : DistanceOracle.INFINITY;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package myproj.routeopt.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+// Contraction Hierarchies distance oracle. Vertices are contracted one after
+// another (see ContractionBuilder), adding shortcut edges that keep distances
+// between the vertices still left. A query then only has to search upwards:
+// from both ends it follows arcs to vertices contracted later, and the
+// shortest path meets at its highest vertex. On road-like graphs each side
+// settles a few hundred vertices instead of a large part of the map.
+//
+// Many distances between one node set go through indexTargets instead: one
+// upward search per target fills buckets, after which a row of distances costs
+// a single upward search from the source (bucket based many-to-many).
+//
+// Only the upward arcs are kept, in CSR form. Searches use stall-on-demand: a
+// vertex that can be reached more cheaply through a higher neighbour is not
+// expanded, since its distance cannot be exact.
+//
+// A hierarchy remembers the edge count and a weight checksum of the road graph
+// it was built from, so a stored one can be checked against the graph with
+// matches before it is trusted.
+//
+// File layout (little endian):
+//   int magic ("SRCH"), int version, int vertex count, int arc count,
+//   int graph edge count, long graph checksum,
+//   then vertices + 1 int offsets, arcs int targets, arcs int weights.
+public class ContractionHierarchy implements DistanceOracle {
+    private static final int MAGIC = 0x53524348;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 28;
+
+    private final int vertices;
+    private final int graphEdges;
+    private final long graphChecksum;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    // Search arrays are O(vertices), so they are pooled rather than made per query
+    private final ConcurrentLinkedQueue<Query> queries = new ConcurrentLinkedQueue<>();
+    // Optional, for local search that asks for the same pairs over and over
+    private volatile DistanceCache cache;
+
+    private ContractionHierarchy(int vertices, int graphEdges, long graphChecksum, int[] offsets, int[] targets,
+                                 int[] weights) {
+        this.vertices = vertices;
+        this.graphEdges = graphEdges;
+        this.graphChecksum = graphChecksum;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    public static ContractionHierarchy build(Graph graph) {
+        return build(graph, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    public static ContractionHierarchy build(Graph graph, int parallelism) {
+        return build(graph, parallelism, () -> false, fraction -> { });
+    }
+
+    // cancelled is polled once per contraction round and throws CancellationException
+    // once it returns true; progress receives the fraction of vertices contracted
+    public static ContractionHierarchy build(Graph graph, int parallelism, BooleanSupplier cancelled,
+                                             DoubleConsumer progress) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        CsrGraph csr = graph.toCsr();
+        int[][] upward = new ContractionBuilder(csr).contract(parallelism, cancelled, progress);
+        return new ContractionHierarchy(csr.getVertices(), csr.getEdgeCount(), checksum(csr),
+                upward[0], upward[1], upward[2]);
+    }
+
+    // Whether this hierarchy was built from a graph with the same vertices, edges and weights
+    public boolean matches(Graph graph) {
+        CsrGraph csr = graph.toCsr();
+        return csr.getVertices() == vertices && csr.getEdgeCount() == graphEdges && checksum(csr) == graphChecksum;
+    }
+
+    // Sum of a hash per arc, so it does not depend on the order of the arcs
+    private static long checksum(CsrGraph csr) {
+        long sum = 0;
+        for (int u = 0; u < csr.getVertices(); u++) {
+            for (int arc = csr.firstArc(u); arc < csr.endArc(u); arc++) {
+                long h = ((long) u * 0x9E3779B97F4A7C15L) ^ ((long) csr.arcTarget(arc) << 32 | csr.arcWeight(arc));
+                h ^= h >>> 33;
+                h *= 0xFF51AFD7ED558CCDL;
+                h ^= h >>> 33;
+                sum += h;
+            }
+        }
+        return sum;
+    }
+
+    public static ContractionHierarchy read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Truncated hierarchy header: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a contraction hierarchy file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported contraction hierarchy version " + version);
+            }
+            int vertices = buffer.getInt();
+            int arcs = buffer.getInt();
+            int graphEdges = buffer.getInt();
+            long graphChecksum = buffer.getLong();
+            long expectedSize = HEADER_BYTES + ((long) vertices + 1 + 2L * arcs) * Integer.BYTES;
+            if (vertices < 0 || arcs < 0 || channel.size() != expectedSize) {
+                throw new IOException(String.format(
+                        "Contraction hierarchy %s should be %d bytes for %d vertices and %d arcs, found %d",
+                        file, expectedSize, vertices, arcs, channel.size()));
+            }
+            int[] offsets = new int[vertices + 1];
+            int[] targets = new int[arcs];
+            int[] weights = new int[arcs];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+            buffer.asIntBuffer().get(targets);
+            buffer.position(buffer.position() + arcs * Integer.BYTES);
+            buffer.asIntBuffer().get(weights);
+            if (offsets[0] != 0 || offsets[vertices] != arcs) {
+                throw new IOException("Corrupt contraction hierarchy offsets: " + file);
+            }
+            for (int u = 0; u < vertices; u++) {
+                if (offsets[u + 1] < offsets[u]) {
+                    throw new IOException("Corrupt contraction hierarchy offsets: " + file);
+                }
+            }
+            for (int arc = 0; arc < arcs; arc++) {
+                if (targets[arc] < 0 || targets[arc] >= vertices || weights[arc] < 0) {
+                    throw new IOException(String.format("Corrupt contraction hierarchy arc %d: %s", arc, file));
+                }
+            }
+            return new ContractionHierarchy(vertices, graphEdges, graphChecksum, offsets, targets, weights);
+        }
+    }
+
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(vertices).putInt(targets.length)
+                    .putInt(graphEdges).putLong(graphChecksum).flip();
+            writeFully(channel, header);
+            ByteBuffer block = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            for (int[] array : new int[][]{offsets, targets, weights}) {
+                for (int value : array) {
+                    if (!block.hasRemaining()) {
+                        block.flip();
+                        writeFully(channel, block);
+                        block.clear();
+                    }
+                    block.putInt(value);
+                }
+            }
+            block.flip();
+            writeFully(channel, block);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public int getDistance(int u, int v) {
+        if (u < 0 || u >= vertices || v < 0 || v >= vertices) {
+            throw new IllegalArgumentException(String.format("Vertex out of range: %d, %d", u, v));
+        }
+        if (u == v) {
+            return 0;
+        }
+        DistanceCache cache = this.cache;
+        long key = DistanceCache.key(u, v);
+        if (cache != null) {
+            int cached = cache.get(key);
+            if (cached != DistanceCache.MISSING) {
+                return cached;
+            }
+        }
+        Query query = borrow();
+        try {
+            int distance = query.run(u, v);
+            if (cache != null) {
+                cache.put(key, distance);
+            }
+            return distance;
+        } finally {
+            queries.offer(query);
+        }
+    }
+
+    // Keeps up to entries query results in a DistanceCache; 0 turns caching off
+    public void setCacheEntries(int entries) {
+        if (entries < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
+        cache = entries == 0 ? null : new DistanceCache(entries);
+    }
+
+    // Null when caching is off
+    public DistanceCache getCache() {
+        return cache;
+    }
+
+    private Query borrow() {
+        Query query = queries.poll();
+        return query != null ? query : new Query();
+    }
+
+    // Upward searches from every node, ready for TargetIndex.distancesFrom to the nodes
+    public TargetIndex indexTargets(int[] nodes) {
+        for (int t : nodes) {
+            if (t < 0 || t >= vertices) {
+                throw new IllegalArgumentException("Vertex out of range: " + t);
+            }
+        }
+        int[][] spaceVertices = new int[nodes.length][];
+        int[][] spaceDistances = new int[nodes.length][];
+        IntStream.range(0, nodes.length).parallel().forEach(i -> {
+            Query query = borrow();
+            try {
+                int settled = query.searchUp(nodes[i]);
+                spaceVertices[i] = Arrays.copyOf(query.settled, settled);
+                spaceDistances[i] = new int[settled];
+                for (int j = 0; j < settled; j++) {
+                    spaceDistances[i][j] = query.forward[query.settled[j]];
+                }
+            } finally {
+                queries.offer(query);
+            }
+        });
+        // Buckets as CSR over vertices: the (target, distance) entries of vertex x
+        // are bucketStart[x] until bucketStart[x + 1]
+        int[] bucketStart = new int[vertices + 1];
+        for (int[] space : spaceVertices) {
+            for (int x : space) {
+                bucketStart[x + 1]++;
+            }
+        }
+        for (int x = 0; x < vertices; x++) {
+            bucketStart[x + 1] += bucketStart[x];
+        }
+        int[] fill = Arrays.copyOf(bucketStart, vertices);
+        int[] entryTarget = new int[bucketStart[vertices]];
+        int[] entryDistance = new int[bucketStart[vertices]];
+        for (int i = 0; i < nodes.length; i++) {
+            for (int j = 0; j < spaceVertices[i].length; j++) {
+                int slot = fill[spaceVertices[i][j]]++;
+                entryTarget[slot] = i;
+                entryDistance[slot] = spaceDistances[i][j];
+            }
+        }
+        return new TargetIndex(nodes.length, bucketStart, entryTarget, entryDistance);
+    }
+
+    @Override
+    public int getVertices() {
+        return vertices;
+    }
+
+    // Upward arcs, original edges and shortcuts together
+    public int getArcCount() {
+        return targets.length;
+    }
+
+    // Distances from any vertex to a fixed set of targets; safe to share between threads
+    public final class TargetIndex {
+        private final int targetCount;
+        private final int[] bucketStart;
+        private final int[] entryTarget;
+        private final int[] entryDistance;
+
+        private TargetIndex(int targetCount, int[] bucketStart, int[] entryTarget, int[] entryDistance) {
+            this.targetCount = targetCount;
+            this.bucketStart = bucketStart;
+            this.entryTarget = entryTarget;
+            this.entryDistance = entryDistance;
+        }
+
+        // out[i] becomes the distance from source to the i-th target
+        public void distancesFrom(int source, int[] out) {
+            if (source < 0 || source >= vertices) {
+                throw new IllegalArgumentException("Vertex out of range: " + source);
+            }
+            if (out.length < targetCount) {
+                throw new IllegalArgumentException("Result array is shorter than the target count");
+            }
+            Arrays.fill(out, 0, targetCount, INFINITY);
+            Query query = borrow();
+            try {
+                int settled = query.searchUp(source);
+                for (int j = 0; j < settled; j++) {
+                    int x = query.settled[j];
+                    int dx = query.forward[x];
+                    for (int e = bucketStart[x], end = bucketStart[x + 1]; e < end; e++) {
+                        int candidate = dx + entryDistance[e];
+                        if (candidate < out[entryTarget[e]]) {
+                            out[entryTarget[e]] = candidate;
+                        }
+                    }
+                }
+            } finally {
+                queries.offer(query);
+            }
+        }
+    }
+
+    private final class Query {
+        private final int[] forward = new int[vertices];
+        private final int[] backward = new int[vertices];
+        private final int[] forwardStamp = new int[vertices];
+        private final int[] backwardStamp = new int[vertices];
+        private final LongHeap forwardHeap = new LongHeap();
+        private final LongHeap backwardHeap = new LongHeap();
+        // Vertices settled (and not stalled) by the last searchUp
+        private int[] settled = new int[64];
+        private int version;
+
+        // Complete upward search from source on the forward arrays; returns how
+        // many vertices it settled, listed in settled with distances in forward
+        int searchUp(int source) {
+            nextVersion();
+            forwardHeap.clear();
+            forwardStamp[source] = version;
+            forward[source] = 0;
+            forwardHeap.push(0, source);
+            int count = 0;
+            while (!forwardHeap.isEmpty()) {
+                long top = forwardHeap.pop();
+                int u = LongHeap.vertex(top);
+                int du = LongHeap.key(top);
+                if (du != forward[u] || isStalled(u, du, forward, forwardStamp)) {
+                    continue;
+                }
+                if (count == settled.length) {
+                    settled = Arrays.copyOf(settled, count * 2);
+                }
+                settled[count++] = u;
+                relax(u, du, forwardHeap, forward, forwardStamp);
+            }
+            return count;
+        }
+
+        int run(int s, int t) {
+            nextVersion();
+            forwardHeap.clear();
+            backwardHeap.clear();
+            forwardStamp[s] = version;
+            forward[s] = 0;
+            forwardHeap.push(0, s);
+            backwardStamp[t] = version;
+            backward[t] = 0;
+            backwardHeap.push(0, t);
+
+            int best = INFINITY;
+            boolean forwardDone = false;
+            boolean backwardDone = false;
+            while (!forwardDone || !backwardDone) {
+                boolean stepForward = backwardDone
+                        || (!forwardDone && forwardHeap.peek() <= backwardHeap.peek());
+                if (stepForward) {
+                    best = step(forwardHeap, forward, forwardStamp, backward, backwardStamp, best);
+                    forwardDone = forwardHeap.isEmpty() || LongHeap.key(forwardHeap.peek()) >= best;
+                } else {
+                    best = step(backwardHeap, backward, backwardStamp, forward, forwardStamp, best);
+                    backwardDone = backwardHeap.isEmpty() || LongHeap.key(backwardHeap.peek()) >= best;
+                }
+            }
+            return best;
+        }
+
+        // Settles one vertex of one side and returns the updated best meeting distance
+        private int step(LongHeap heap, int[] dist, int[] stamp, int[] otherDist, int[] otherStamp, int best) {
+            long top = heap.pop();
+            int u = LongHeap.vertex(top);
+            int du = LongHeap.key(top);
+            if (du != dist[u]) {
+                return best; // stale entry
+            }
+            if (otherStamp[u] == version && du + otherDist[u] < best) {
+                best = du + otherDist[u];
+            }
+            if (!isStalled(u, du, dist, stamp)) {
+                relax(u, du, heap, dist, stamp);
+            }
+            return best;
+        }
+
+        // Stall-on-demand: a cheaper way in from above means du is not exact
+        private boolean isStalled(int u, int du, int[] dist, int[] stamp) {
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                int w = targets[e];
+                if (stamp[w] == version && dist[w] + weights[e] < du) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void relax(int u, int du, LongHeap heap, int[] dist, int[] stamp) {
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                int w = targets[e];
+                int candidate = du + weights[e];
+                if (stamp[w] != version || candidate < dist[w]) {
+                    stamp[w] = version;
+                    dist[w] = candidate;
+                    heap.push(candidate, w);
+                }
+            }
+        }
+
+        private void nextVersion() {
+            if (++version == Integer.MAX_VALUE) {
+                Arrays.fill(forwardStamp, 0);
+                Arrays.fill(backwardStamp, 0);
+                version = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package myproj.routeopt.model;
+
+// Compressed sparse row graph: the arcs leaving u are offsets[u] until
+// offsets[u + 1] in targets/weights, sorted by target. Every undirected edge
+// is stored once in each direction, so memory is O(vertices + edges).
+public final class CsrGraph implements Graph {
+    private final int vertices;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    // Snapshot copies are shared between threads, so even weights stay fixed
+    private final boolean readOnly;
+
+    CsrGraph(int vertices, int[] offsets, int[] targets, int[] weights) {
+        this(vertices, offsets, targets, weights, false);
+    }
+
+    private CsrGraph(int vertices, int[] offsets, int[] targets, int[] weights, boolean readOnly) {
+        this.vertices = vertices;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.readOnly = readOnly;
+    }
+
+    // The structure is frozen, only the weight of an existing edge can change
+    @Override
+    public void addEdge(int u, int v, int weight) {
+        checkWritable();
+        int forward = findArc(u, v);
+        int backward = findArc(v, u);
+        if (forward < 0 || backward < 0) {
+            throw new UnsupportedOperationException(
+                    String.format("Edge %d-%d does not exist; new edges must be added through GraphBuilder", u, v));
+        }
+        weights[forward] = weight;
+        weights[backward] = weight;
+    }
+
+    // Checks every edge first, so a missing one leaves all weights unchanged
+    @Override
+    public void setEdgeWeights(int[] u, int[] v, int[] w) {
+        if (u.length != v.length || u.length != w.length) {
+            throw new IllegalArgumentException("Edge arrays must have the same length");
+        }
+        checkWritable();
+        for (int i = 0; i < u.length; i++) {
+            if (findArc(u[i], v[i]) < 0 || findArc(v[i], u[i]) < 0) {
+                throw new UnsupportedOperationException(String.format(
+                        "Edge %d-%d does not exist; new edges must be added through GraphBuilder", u[i], v[i]));
+            }
+        }
+        addEdges(u, v, w);
+    }
+
+    @Override
+    public int getDistance(int u, int v) {
+        int arc = findArc(u, v);
+        return arc < 0 ? INFINITY : weights[arc];
+    }
+
+    @Override
+    public int getVertices() { return vertices; }
+
+    @Override
+    public int getEdgeCount() { return targets.length / 2; }
+
+    @Override
+    public CsrGraph toCsr() { return this; }
+
+    // Copy whose addEdge and setEdgeWeights throw, for ProblemSnapshot. Only
+    // weights could change after construction, so the structure arrays are shared
+    CsrGraph readOnlyCopy() {
+        return new CsrGraph(vertices, offsets, targets, weights.clone(), true);
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The graph belongs to a snapshot and cannot change");
+        }
+    }
+
+    public int firstArc(int u) { return offsets[u]; }
+
+    public int endArc(int u) { return offsets[u + 1]; }
+
+    public int degree(int u) { return offsets[u + 1] - offsets[u]; }
+
+    public int arcTarget(int arc) { return targets[arc]; }
+
+    public int arcWeight(int arc) { return weights[arc]; }
+
+    // Index of the arc u->v, or -1
+    public int findArc(int u, int v) {
+        if (u < 0 || u >= vertices) {
+            throw new IllegalArgumentException("Vertex out of range: " + u);
+        }
+        int low = offsets[u];
+        int high = offsets[u + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int t = targets[mid];
+            if (t < v) {
+                low = mid + 1;
+            } else if (t > v) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,10 +1,10 @@
 package myproj.routeopt.model;
 
 public class DeliveryPoint {
-    private int id;
-    private int demand;
-    private int timeWindowStart;
-    private int timeWindowEnd;
+    private final int id;
+    private final int demand;
+    private final int timeWindowStart;
+    private final int timeWindowEnd;
 
     public DeliveryPoint(int id, int demand, int timeWindowStart, int timeWindowEnd) {
         this.id = id;
@@ -0,0 +1,142 @@
+package myproj.routeopt.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded concurrent pair -> distance cache. Keys are packed longs (see key),
+// stored in a set-associative table: a key can only live in one set of WAYS
+// slots, kept in recency order, and a full set drops its least recently used
+// slot. So memory is fixed at construction and eviction is LRU per set, which
+// approximates LRU over the whole table. Sets are guarded by a fixed array of
+// striped locks, so threads only wait on each other within the same stripe.
+public final class DistanceCache {
+    public static final int MISSING = -1;
+
+    // 8 longs, so a set's keys share one cache line
+    private static final int WAYS = 8;
+    private static final long EMPTY = -1L;
+    private static final int MAX_LOCKS = 1024;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int setMask;
+    private final Object[] locks;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+
+    // Capacity is rounded up to a power of two number of sets
+    public DistanceCache(int capacity) {
+        if (capacity < WAYS) {
+            throw new IllegalArgumentException("Cache capacity must be at least " + WAYS);
+        }
+        int wanted = (capacity + WAYS - 1) / WAYS;
+        int sets = wanted == 1 ? 1 : Integer.highestOneBit(wanted - 1) << 1;
+        if ((long) sets * WAYS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Cache capacity too large: " + capacity);
+        }
+        keys = new long[sets * WAYS];
+        values = new int[sets * WAYS];
+        Arrays.fill(keys, EMPTY);
+        setMask = sets - 1;
+        locks = new Object[Math.min(sets, MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Distances are symmetric, so (u, v) and (v, u) share a key
+    public static long key(int u, int v) {
+        return u < v ? ((long) u << 32) | v : ((long) v << 32) | u;
+    }
+
+    // The cached distance, or MISSING
+    public int get(long key) {
+        int set = setOf(key);
+        int base = set * WAYS;
+        synchronized (locks[set & (locks.length - 1)]) {
+            for (int way = 0; way < WAYS; way++) {
+                long k = keys[base + way];
+                if (k == key) {
+                    int value = values[base + way];
+                    moveToFront(base, way, key, value);
+                    hits.increment();
+                    return value;
+                }
+                if (k == EMPTY) {
+                    break;
+                }
+            }
+        }
+        misses.increment();
+        return MISSING;
+    }
+
+    public void put(long key, int value) {
+        int set = setOf(key);
+        int base = set * WAYS;
+        synchronized (locks[set & (locks.length - 1)]) {
+            int way = 0;
+            while (way < WAYS - 1 && keys[base + way] != key && keys[base + way] != EMPTY) {
+                way++;
+            }
+            long previous = keys[base + way];
+            if (previous == EMPTY) {
+                stored.increment();
+            } else if (previous != key) {
+                evictions.increment();
+            }
+            moveToFront(base, way, key, value);
+        }
+    }
+
+    public void clear() {
+        for (int set = 0; set <= setMask; set++) {
+            synchronized (locks[set & (locks.length - 1)]) {
+                Arrays.fill(keys, set * WAYS, set * WAYS + WAYS, EMPTY);
+            }
+        }
+        stored.reset();
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public long size() {
+        return stored.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    // Shifts ways [0, way) down by one and puts the entry in way 0
+    private void moveToFront(int base, int way, long key, int value) {
+        System.arraycopy(keys, base, keys, base + 1, way);
+        System.arraycopy(values, base, values, base + 1, way);
+        keys[base] = key;
+        values[base] = value;
+    }
+
+    private int setOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & setMask;
+    }
+}
@@ -0,0 +1,10 @@
+package myproj.routeopt.model;
+
+// Anything that can answer "how far is it from u to v" for the solver
+public interface DistanceOracle {
+    int INFINITY = Integer.MAX_VALUE / 2;
+
+    int getDistance(int u, int v);
+
+    int getVertices();
+}
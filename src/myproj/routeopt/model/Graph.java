@@ -1,27 +1,43 @@
 package myproj.routeopt.model;
 
-import java.util.Arrays;
+// Undirected road network. getDistance is the raw edge weight, INFINITY when
+// u and v are not directly connected; see computeShortestPaths for road distances.
+public interface Graph extends DistanceOracle {
+    void addEdge(int u, int v, int weight);
 
-public class Graph {
-    private int vertices;
-    private int[][] distanceMatrix;
-
-    public Graph(int vertices) {
-        this.vertices = vertices;
-        distanceMatrix = new int[vertices][vertices];
-        for (int i = 0; i < vertices; i++) {
-            Arrays.fill(distanceMatrix[i], Integer.MAX_VALUE / 2);
+    // Adds edge i = (u[i], v[i], w[i]) for every i; implementations may add the whole batch at once
+    default void addEdges(int[] u, int[] v, int[] w) {
+        if (u.length != v.length || u.length != w.length) {
+            throw new IllegalArgumentException("Edge arrays must have the same length");
+        }
+        for (int i = 0; i < u.length; i++) {
+            addEdge(u[i], v[i], w[i]);
         }
     }
 
-    public void addEdge(int u, int v, int weight) {
-        distanceMatrix[u][v] = weight;
-        distanceMatrix[v][u] = weight;
+    // Weight changes such as traffic updates; edge i becomes (u[i], v[i], w[i]).
+    // Unlike addEdges, implementations may patch the frozen CSR view in place
+    // instead of rebuilding it, so views taken earlier can see the new weights.
+    default void setEdgeWeights(int[] u, int[] v, int[] w) {
+        addEdges(u, v, w);
     }
 
-    public int getDistance(int u, int v) {
-        return distanceMatrix[u][v];
+    int getEdgeCount();
+
+    // Frozen compressed-sparse-row view used by the shortest path engines
+    CsrGraph toCsr();
+
+    default ShortestPathOracle computeShortestPaths() {
+        return ShortestPathOracle.compute(this);
     }
 
-    public int getVertices() { return vertices; }
+    default ShortestPathOracle computeShortestPaths(int parallelism) {
+        return ShortestPathOracle.compute(this, parallelism);
+    }
+
+    // Distances searched per pair when asked for, keeping at most cacheEntries of them;
+    // for graphs too large for the full table of computeShortestPaths
+    default LazyDistanceOracle computeDistancesOnDemand(int cacheEntries) {
+        return new LazyDistanceOracle(this, cacheEntries);
+    }
 }
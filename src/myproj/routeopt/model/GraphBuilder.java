@@ -0,0 +1,191 @@
+package myproj.routeopt.model;
+
+import java.util.Arrays;
+
+// Mutable graph that appends edges to primitive arrays and freezes them into
+// a CsrGraph on demand. Adding an edge twice keeps the last weight, like the
+// old matrix did. Reads go through the frozen graph, which is rebuilt after
+// further edges are added; setEdgeWeights on edges it already has overwrites
+// them instead.
+public class GraphBuilder implements Graph {
+    private final int vertices;
+    private int[] from;
+    private int[] to;
+    private int[] weight;
+    private int size;
+    private CsrGraph frozen;
+    // Index into from/to/weight of the entry behind each arc of frozen
+    private int[] arcEdge;
+
+    public GraphBuilder(int vertices) {
+        this(vertices, 16);
+    }
+
+    public GraphBuilder(int vertices, int expectedEdges) {
+        if (vertices < 0) {
+            throw new IllegalArgumentException("Vertex count cannot be negative");
+        }
+        this.vertices = vertices;
+        int initial = Math.max(expectedEdges, 16);
+        this.from = new int[initial];
+        this.to = new int[initial];
+        this.weight = new int[initial];
+    }
+
+    @Override
+    public void addEdge(int u, int v, int w) {
+        checkVertex(u);
+        checkVertex(v);
+        ensureCapacity(size + 1);
+        from[size] = u;
+        to[size] = v;
+        weight[size] = w;
+        size++;
+        frozen = null;
+    }
+
+    // Validates the whole batch first, so a bad edge leaves the graph unchanged
+    @Override
+    public void addEdges(int[] u, int[] v, int[] w) {
+        if (u.length != v.length || u.length != w.length) {
+            throw new IllegalArgumentException("Edge arrays must have the same length");
+        }
+        for (int i = 0; i < u.length; i++) {
+            checkVertex(u[i]);
+            checkVertex(v[i]);
+        }
+        ensureCapacity(size + u.length);
+        System.arraycopy(u, 0, from, size, u.length);
+        System.arraycopy(v, 0, to, size, u.length);
+        System.arraycopy(w, 0, weight, size, u.length);
+        size += u.length;
+        frozen = null;
+    }
+
+    // Edges already in the frozen graph get their weight patched there, and
+    // overwritten in place at the entry that graph was built from, so updates
+    // do not grow the edge arrays and a later rebuild gives the same weights.
+    // A batch with a new edge (or no frozen graph yet) is added like addEdges.
+    @Override
+    public void setEdgeWeights(int[] u, int[] v, int[] w) {
+        if (frozen == null) {
+            addEdges(u, v, w);
+            return;
+        }
+        if (u.length != v.length || u.length != w.length) {
+            throw new IllegalArgumentException("Edge arrays must have the same length");
+        }
+        int[] arcs = new int[u.length];
+        for (int i = 0; i < u.length; i++) {
+            checkVertex(u[i]);
+            checkVertex(v[i]);
+            arcs[i] = u[i] == v[i] ? -1 : frozen.findArc(u[i], v[i]);
+            if (arcs[i] < 0 && u[i] != v[i]) {
+                addEdges(u, v, w);
+                return;
+            }
+        }
+        for (int i = 0; i < u.length; i++) {
+            if (arcs[i] >= 0) {
+                weight[arcEdge[arcs[i]]] = w[i];
+                frozen.addEdge(u[i], v[i], w[i]);
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > from.length) {
+            int capacity = Math.max(required, from.length + (from.length >> 1));
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+            weight = Arrays.copyOf(weight, capacity);
+        }
+    }
+
+    @Override
+    public int getDistance(int u, int v) {
+        return toCsr().getDistance(u, v);
+    }
+
+    @Override
+    public int getVertices() { return vertices; }
+
+    // Distinct undirected edges
+    @Override
+    public int getEdgeCount() { return toCsr().getEdgeCount(); }
+
+    @Override
+    public CsrGraph toCsr() {
+        if (frozen == null) {
+            int[] edges = new int[2 * size];
+            frozen = build(edges);
+            arcEdge = edges;
+        }
+        return frozen;
+    }
+
+    public CsrGraph build() {
+        return build(null);
+    }
+
+    // arcEdge, when given, receives the entry each arc was taken from
+    private CsrGraph build(int[] arcEdge) {
+        // Bucket both directions of every edge by source vertex (counting sort)
+        int[] rowStart = new int[vertices + 1];
+        for (int i = 0; i < size; i++) {
+            if (from[i] != to[i]) {
+                rowStart[from[i] + 1]++;
+                rowStart[to[i] + 1]++;
+            }
+        }
+        for (int u = 0; u < vertices; u++) {
+            rowStart[u + 1] += rowStart[u];
+        }
+        // Each arc is (target << 32 | edge index), so sorting a row orders it
+        // by target and then by insertion order
+        long[] arcs = new long[rowStart[vertices]];
+        int[] fill = Arrays.copyOf(rowStart, vertices);
+        for (int i = 0; i < size; i++) {
+            int u = from[i];
+            int v = to[i];
+            if (u != v) {
+                arcs[fill[u]++] = ((long) v << 32) | i;
+                arcs[fill[v]++] = ((long) u << 32) | i;
+            }
+        }
+
+        int[] offsets = new int[vertices + 1];
+        int[] targets = new int[arcs.length];
+        int[] weights = new int[arcs.length];
+        int out = 0;
+        for (int u = 0; u < vertices; u++) {
+            offsets[u] = out;
+            int start = rowStart[u];
+            int end = rowStart[u + 1];
+            Arrays.sort(arcs, start, end);
+            for (int a = start; a < end; a++) {
+                int target = (int) (arcs[a] >>> 32);
+                // Keep only the last insertion of a duplicated edge
+                if (a + 1 < end && (int) (arcs[a + 1] >>> 32) == target) {
+                    continue;
+                }
+                targets[out] = target;
+                weights[out] = weight[(int) arcs[a]];
+                if (arcEdge != null) {
+                    arcEdge[out] = (int) arcs[a];
+                }
+                out++;
+            }
+        }
+        offsets[vertices] = out;
+        return new CsrGraph(vertices, offsets,
+                Arrays.copyOf(targets, out), Arrays.copyOf(weights, out));
+    }
+
+    private void checkVertex(int v) {
+        if (v < 0 || v >= vertices) {
+            throw new IllegalArgumentException(
+                    String.format("Location %d is outside the graph (0-%d)", v, vertices - 1));
+        }
+    }
+}
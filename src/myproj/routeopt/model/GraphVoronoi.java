@@ -0,0 +1,135 @@
+package myproj.routeopt.model;
+
+import java.util.Arrays;
+
+// Splits a road graph into cells around a set of source vertices: every vertex
+// gets the label of its nearest source by road distance, from one multi-source
+// Dijkstra. Sources can also be added one at a time, in which case the search
+// from the new source only visits the vertices it is now nearest to.
+public final class GraphVoronoi {
+    private final CsrGraph graph;
+    private final int[] label;
+    private final int[] dist;
+    private final LongHeap heap = new LongHeap();
+
+    public GraphVoronoi(Graph graph) {
+        this.graph = graph.toCsr();
+        int n = this.graph.getVertices();
+        label = new int[n];
+        dist = new int[n];
+        clear();
+    }
+
+    public void clear() {
+        Arrays.fill(label, -1);
+        Arrays.fill(dist, DistanceOracle.INFINITY);
+    }
+
+    // Relabels every vertex from scratch; sources[i] gets label i
+    public void assign(int[] sources) {
+        clear();
+        heap.clear();
+        for (int i = 0; i < sources.length; i++) {
+            checkVertex(sources[i]);
+            if (dist[sources[i]] != 0) {
+                dist[sources[i]] = 0;
+                label[sources[i]] = i;
+                heap.push(0, sources[i]);
+            }
+        }
+        run();
+    }
+
+    // Adds one source to the current cells
+    public void addSource(int source, int sourceLabel) {
+        checkVertex(source);
+        heap.clear();
+        dist[source] = 0;
+        label[source] = sourceLabel;
+        heap.push(0, source);
+        run();
+    }
+
+    // -1 for vertices no source reaches
+    public int getLabel(int v) {
+        return label[v];
+    }
+
+    // Road distance from v to the source of its cell, INFINITY when unreached
+    public int getDistance(int v) {
+        return dist[v];
+    }
+
+    public int getVertices() {
+        return label.length;
+    }
+
+    // Road distance from every vertex to the nearest vertex that has a
+    // neighbour in another group, where group[label] groups cells together.
+    // Unreached vertices belong to no group.
+    public int[] distancesToBorder(int[] group) {
+        int n = label.length;
+        int[] border = new int[n];
+        Arrays.fill(border, DistanceOracle.INFINITY);
+        heap.clear();
+        for (int u = 0; u < n; u++) {
+            if (label[u] < 0) {
+                continue;
+            }
+            int gu = group[label[u]];
+            for (int e = graph.firstArc(u), end = graph.endArc(u); e < end; e++) {
+                int w = graph.arcTarget(e);
+                if (label[w] >= 0 && group[label[w]] != gu) {
+                    border[u] = 0;
+                    heap.push(0, u);
+                    break;
+                }
+            }
+        }
+        while (!heap.isEmpty()) {
+            long top = heap.pop();
+            int u = LongHeap.vertex(top);
+            int du = LongHeap.key(top);
+            if (du != border[u]) {
+                continue; // stale entry
+            }
+            for (int e = graph.firstArc(u), end = graph.endArc(u); e < end; e++) {
+                int w = graph.arcTarget(e);
+                int candidate = du + graph.arcWeight(e);
+                if (candidate < border[w]) {
+                    border[w] = candidate;
+                    heap.push(candidate, w);
+                }
+            }
+        }
+        return border;
+    }
+
+    // Dijkstra that only follows improvements, so it stays inside the cells that change
+    private void run() {
+        while (!heap.isEmpty()) {
+            long top = heap.pop();
+            int u = LongHeap.vertex(top);
+            int du = LongHeap.key(top);
+            if (du != dist[u]) {
+                continue; // stale entry
+            }
+            int lu = label[u];
+            for (int e = graph.firstArc(u), end = graph.endArc(u); e < end; e++) {
+                int w = graph.arcTarget(e);
+                int candidate = du + graph.arcWeight(e);
+                if (candidate < dist[w]) {
+                    dist[w] = candidate;
+                    label[w] = lu;
+                    heap.push(candidate, w);
+                }
+            }
+        }
+    }
+
+    private void checkVertex(int v) {
+        if (v < 0 || v >= label.length) {
+            throw new IllegalArgumentException("Vertex out of range: " + v);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package myproj.routeopt.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+// Road distances computed only when asked for, for graphs where an n x n
+// table does not fit. A miss runs a bidirectional A* between the two vertices
+// and stores the result in a DistanceCache, so memory stays at the cache size,
+// the landmark table and one set of search arrays per thread that is searching
+// at the same time.
+//
+// The graph has no coordinates, so the A* lower bounds come from landmarks
+// (ALT): a few far apart vertices whose distances to every vertex are computed
+// up front. For any landmark L, |d(L, t) - d(L, v)| <= d(v, t). Both directions
+// use the average potential (bound to t - bound from s) / 2 with opposite
+// signs, which keeps reduced edge costs non-negative and lets the search stop,
+// as plain bidirectional Dijkstra does, once the two top keys add up to the
+// best meeting found. Keys are kept doubled so the halving stays exact.
+public class LazyDistanceOracle implements DistanceOracle {
+    public static final int DEFAULT_LANDMARKS = 8;
+
+    private final CsrGraph graph;
+    private final DistanceCache cache;
+    // Distance from landmark l to v at v * landmarks + l, so one vertex's bounds share a cache line
+    private final int landmarks;
+    private final int[] landmarkDistances;
+    // Search arrays are O(vertices), so they are pooled rather than made per query
+    private final ConcurrentLinkedQueue<Search> searches = new ConcurrentLinkedQueue<>();
+    private final LongAdder searchCount = new LongAdder();
+    private final LongAdder settledCount = new LongAdder();
+
+    public LazyDistanceOracle(Graph graph, int cacheEntries) {
+        this(graph, cacheEntries, DEFAULT_LANDMARKS);
+    }
+
+    // landmarks = 0 turns the A* into plain bidirectional Dijkstra and skips the preprocessing
+    public LazyDistanceOracle(Graph graph, int cacheEntries, int landmarks) {
+        if (landmarks < 0) {
+            throw new IllegalArgumentException("Landmark count cannot be negative");
+        }
+        // Own copy of the weights: GraphBuilder patches its frozen graph in place
+        // on weight updates, which would leave the cache and landmark bounds stale
+        CsrGraph csr = graph.toCsr();
+        this.graph = csr.isReadOnly() ? csr : csr.readOnlyCopy();
+        this.cache = new DistanceCache(cacheEntries);
+        int n = this.graph.getVertices();
+        if ((long) n * landmarks > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many landmarks for " + n + " vertices");
+        }
+        this.landmarks = Math.min(landmarks, n);
+        this.landmarkDistances = new int[n * this.landmarks];
+        selectLandmarks();
+    }
+
+    @Override
+    public int getDistance(int u, int v) {
+        checkVertex(u);
+        checkVertex(v);
+        if (u == v) {
+            return 0;
+        }
+        long key = DistanceCache.key(u, v);
+        int cached = cache.get(key);
+        if (cached != DistanceCache.MISSING) {
+            return cached;
+        }
+        Search search = borrow();
+        try {
+            int distance = search.pointToPoint(u, v);
+            cache.put(key, distance);
+            return distance;
+        } finally {
+            searches.offer(search);
+        }
+    }
+
+    // The (up to) k targets nearest to source, nearest first, from one Dijkstra
+    // that stops once k targets are settled. Every distance found is cached.
+    // Returns how many were found; fewer than k means the rest are unreachable.
+    public int nearestTargets(int source, IntPredicate isTarget, int k, int[] ids, int[] dists) {
+        checkVertex(source);
+        if (ids.length < k || dists.length < k) {
+            throw new IllegalArgumentException("Result arrays are shorter than k");
+        }
+        Search search = borrow();
+        try {
+            int found = search.nearest(source, isTarget, k, ids, dists);
+            for (int i = 0; i < found; i++) {
+                cache.put(DistanceCache.key(source, ids[i]), dists[i]);
+            }
+            return found;
+        } finally {
+            searches.offer(search);
+        }
+    }
+
+    @Override
+    public int getVertices() {
+        return graph.getVertices();
+    }
+
+    public DistanceCache getCache() {
+        return cache;
+    }
+
+    public int getLandmarkCount() {
+        return landmarks;
+    }
+
+    // Graph searches run on cache misses and by nearestTargets
+    public long getSearchCount() {
+        return searchCount.sum();
+    }
+
+    public long getSettledCount() {
+        return settledCount.sum();
+    }
+
+    // Farthest point selection: each landmark is the vertex farthest from the
+    // ones already chosen, the first one farthest from vertex 0. Landmarks only
+    // land in one connected component; other components get zero bounds, which
+    // are still valid, just weaker.
+    private void selectLandmarks() {
+        int n = graph.getVertices();
+        if (landmarks == 0) {
+            return;
+        }
+        Search search = new Search(n);
+        int[] row = new int[n];
+        int[] nearestLandmark = new int[n];
+        search.distancesFrom(0, row);
+        int next = farthest(row);
+        Arrays.fill(nearestLandmark, INFINITY);
+        for (int l = 0; l < landmarks; l++) {
+            search.distancesFrom(next, row);
+            for (int v = 0; v < n; v++) {
+                landmarkDistances[v * landmarks + l] = row[v];
+                if (row[v] < nearestLandmark[v]) {
+                    nearestLandmark[v] = row[v];
+                }
+            }
+            next = farthest(nearestLandmark);
+        }
+        searches.offer(search);
+    }
+
+    private static int farthest(int[] dist) {
+        int best = 0;
+        for (int v = 1; v < dist.length; v++) {
+            if (dist[v] < INFINITY && (dist[best] >= INFINITY || dist[v] > dist[best])) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    // Landmark lower bound on d(v, t), given t's row of landmark distances
+    private int lowerBound(int v, int[] targetRow) {
+        int base = v * landmarks;
+        int bound = 0;
+        for (int l = 0; l < landmarks; l++) {
+            int dv = landmarkDistances[base + l];
+            int dt = targetRow[l];
+            if (dv < INFINITY && dt < INFINITY) {
+                int diff = Math.abs(dt - dv);
+                if (diff > bound) {
+                    bound = diff;
+                }
+            }
+        }
+        return bound;
+    }
+
+    private void checkVertex(int v) {
+        if (v < 0 || v >= graph.getVertices()) {
+            throw new IllegalArgumentException("Vertex out of range: " + v);
+        }
+    }
+
+    private Search borrow() {
+        Search search = searches.poll();
+        return search != null ? search : new Search(graph.getVertices());
+    }
+
+    private final class Search {
+        private final Side forward;
+        private final Side backward;
+        private final int[] sourceRow = new int[landmarks];
+        private final int[] targetRow = new int[landmarks];
+        private int version;
+
+        Search(int vertices) {
+            forward = new Side(vertices);
+            backward = new Side(vertices);
+        }
+
+        int pointToPoint(int s, int t) {
+            nextVersion();
+            System.arraycopy(landmarkDistances, s * landmarks, sourceRow, 0, landmarks);
+            System.arraycopy(landmarkDistances, t * landmarks, targetRow, 0, landmarks);
+            forward.start(s, potential(s), version);
+            backward.start(t, -potential(t), version);
+            long best = INFINITY;
+            int settled = 0;
+            while (forward.size > 0 && backward.size > 0) {
+                if (forward.topKey() + backward.topKey() >= 2 * best) {
+                    break;
+                }
+                Side side = forward.size <= backward.size ? forward : backward;
+                Side other = side == forward ? backward : forward;
+                int u = side.pop();
+                settled++;
+                int du = side.dist[u];
+                for (int e = graph.firstArc(u), end = graph.endArc(u); e < end; e++) {
+                    int v = graph.arcTarget(e);
+                    int candidate = du + graph.arcWeight(e);
+                    boolean improved;
+                    if (side.stamp[v] != version) {
+                        int p = potential(v);
+                        side.touch(v, candidate, side == forward ? p : -p, version);
+                        improved = true;
+                    } else {
+                        improved = side.improve(v, candidate);
+                    }
+                    if (improved) {
+                        int dv = other.distance(v, version);
+                        if (dv < INFINITY && (long) candidate + dv < best) {
+                            best = (long) candidate + dv;
+                        }
+                    }
+                }
+            }
+            searchCount.increment();
+            settledCount.add(settled);
+            return (int) Math.min(best, INFINITY);
+        }
+
+        // Doubled forward potential of v: bound to t minus bound from s
+        private int potential(int v) {
+            if (landmarks == 0) {
+                return 0;
+            }
+            return lowerBound(v, targetRow) - lowerBound(v, sourceRow);
+        }
+
+        int nearest(int source, IntPredicate isTarget, int k, int[] ids, int[] dists) {
+            nextVersion();
+            forward.start(source, 0, version);
+            int found = 0;
+            int settled = 0;
+            while (forward.size > 0 && found < k) {
+                int u = forward.pop();
+                settled++;
+                int du = forward.dist[u];
+                if (u != source && isTarget.test(u)) {
+                    ids[found] = u;
+                    dists[found++] = du;
+                }
+                relaxAll(u, du);
+            }
+            searchCount.increment();
+            settledCount.add(settled);
+            return found;
+        }
+
+        // Full single source Dijkstra, unreachable vertices at INFINITY
+        void distancesFrom(int source, int[] out) {
+            nextVersion();
+            forward.start(source, 0, version);
+            while (forward.size > 0) {
+                int u = forward.pop();
+                relaxAll(u, forward.dist[u]);
+            }
+            for (int v = 0; v < out.length; v++) {
+                out[v] = forward.distance(v, version);
+            }
+        }
+
+        private void relaxAll(int u, int du) {
+            for (int e = graph.firstArc(u), end = graph.endArc(u); e < end; e++) {
+                int v = graph.arcTarget(e);
+                int candidate = du + graph.arcWeight(e);
+                if (forward.stamp[v] != version) {
+                    forward.touch(v, candidate, 0, version);
+                } else {
+                    forward.improve(v, candidate);
+                }
+            }
+        }
+
+        // Stamps mark which entries belong to the current search, so nothing is cleared between searches
+        private void nextVersion() {
+            if (++version == Integer.MAX_VALUE) {
+                forward.resetStamps();
+                backward.resetStamps();
+                version = 1;
+            }
+        }
+    }
+
+    // One direction of a search: tentative distances and an indexed binary heap
+    // ordered by key = 2 * distance + doubled potential
+    private static final class Side {
+        private static final int SETTLED = -2;
+
+        final int[] dist;
+        final int[] stamp;
+        final int[] heapIndex;
+        final long[] key;
+        int[] heap = new int[64];
+        int size;
+
+        Side(int vertices) {
+            dist = new int[vertices];
+            stamp = new int[vertices];
+            heapIndex = new int[vertices];
+            key = new long[vertices];
+        }
+
+        void start(int source, int potential, int version) {
+            size = 0;
+            touch(source, 0, potential, version);
+        }
+
+        int distance(int v, int version) {
+            return stamp[v] == version ? dist[v] : INFINITY;
+        }
+
+        long topKey() {
+            return key[heap[0]];
+        }
+
+        // First time v is reached in this search
+        void touch(int v, int distance, int potential, int version) {
+            stamp[v] = version;
+            dist[v] = distance;
+            key[v] = 2L * distance + potential;
+            push(v);
+        }
+
+        // True when candidate improved v; the potential part of the key does not change
+        boolean improve(int v, int candidate) {
+            if (candidate >= dist[v] || heapIndex[v] == SETTLED) {
+                return false;
+            }
+            key[v] -= 2L * (dist[v] - candidate);
+            dist[v] = candidate;
+            siftUp(heapIndex[v]);
+            return true;
+        }
+
+        int pop() {
+            int top = heap[0];
+            heapIndex[top] = SETTLED;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                heapIndex[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        void resetStamps() {
+            Arrays.fill(stamp, 0);
+        }
+
+        private void push(int v) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = v;
+            heapIndex[v] = size;
+            siftUp(size++);
+        }
+
+        private void siftUp(int i) {
+            int v = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                int p = heap[parent];
+                if (key[p] <= key[v]) {
+                    break;
+                }
+                heap[i] = p;
+                heapIndex[p] = i;
+                i = parent;
+            }
+            heap[i] = v;
+            heapIndex[v] = i;
+        }
+
+        private void siftDown(int i) {
+            int v = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) {
+                    child++;
+                }
+                int c = heap[child];
+                if (key[v] <= key[c]) {
+                    break;
+                }
+                heap[i] = c;
+                heapIndex[c] = i;
+                i = child;
+            }
+            heap[i] = v;
+            heapIndex[v] = i;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package myproj.routeopt.model;
+
+import java.util.Arrays;
+
+// Binary min-heap of (key, vertex) packed into longs, key in the high half.
+// There is no decrease-key: searches push a vertex again when its distance
+// improves and skip entries whose key no longer matches when they pop.
+final class LongHeap {
+    private long[] heap = new long[64];
+    private int size;
+
+    static int key(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    static int vertex(long entry) {
+        return (int) entry;
+    }
+
+    // key must be non-negative
+    void push(int key, int vertex) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        long entry = ((long) key << 32) | vertex;
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    long peek() {
+        return heap[0];
+    }
+
+    long pop() {
+        long top = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
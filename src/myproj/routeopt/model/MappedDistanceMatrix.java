@@ -0,0 +1,114 @@
+package myproj.routeopt.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Distance table stored on disk and read through memory mapped pages, so it
+// is never copied onto the heap and processes opening the same file share
+// the page cache.
+//
+// File layout (little endian):
+//   int magic ("SRDM"), int version, int vertex count,
+//   then vertices * vertices int distances, row by row.
+public class MappedDistanceMatrix implements DistanceOracle {
+    private static final int MAGIC = 0x5352444D;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+
+    private final int vertices;
+    private final long rowBytes;
+    // A single mapping is limited to 2 GB, so large tables are mapped in row chunks
+    private final MappedByteBuffer[] chunks;
+    private final int rowsPerChunk;
+
+    private MappedDistanceMatrix(int vertices, MappedByteBuffer[] chunks, int rowsPerChunk) {
+        this.vertices = vertices;
+        this.rowBytes = (long) vertices * Integer.BYTES;
+        this.chunks = chunks;
+        this.rowsPerChunk = rowsPerChunk;
+    }
+
+    public static MappedDistanceMatrix open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated distance matrix header: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a distance matrix file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported distance matrix version " + version);
+            }
+            int vertices = header.getInt();
+            long rowBytes = (long) vertices * Integer.BYTES;
+            long expectedSize = HEADER_BYTES + rowBytes * vertices;
+            if (vertices < 0 || channel.size() != expectedSize) {
+                throw new IOException(String.format("Distance matrix %s should be %d bytes for %d vertices, found %d",
+                        file, expectedSize, vertices, channel.size()));
+            }
+
+            int rowsPerChunk = vertices == 0 ? 1 : (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+            int chunkCount = (vertices + rowsPerChunk - 1) / rowsPerChunk;
+            MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                int firstRow = c * rowsPerChunk;
+                int rows = Math.min(rowsPerChunk, vertices - firstRow);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + firstRow * rowBytes, rows * rowBytes);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+                chunks[c] = chunk;
+            }
+            // The mappings stay valid after the channel is closed
+            return new MappedDistanceMatrix(vertices, chunks, rowsPerChunk);
+        }
+    }
+
+    // Writes the full distance table of an oracle, typically a ShortestPathOracle
+    public static void write(Path file, DistanceOracle distances) throws IOException {
+        int n = distances.getVertices();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).flip();
+            writeFully(channel, header);
+
+            ByteBuffer row = ByteBuffer.allocateDirect(n * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int u = 0; u < n; u++) {
+                row.clear();
+                for (int v = 0; v < n; v++) {
+                    row.putInt(distances.getDistance(u, v));
+                }
+                row.flip();
+                writeFully(channel, row);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public int getDistance(int u, int v) {
+        int chunk = u / rowsPerChunk;
+        int row = u - chunk * rowsPerChunk;
+        return chunks[chunk].getInt((int) (row * rowBytes) + v * Integer.BYTES);
+    }
+
+    @Override
+    public int getVertices() {
+        return vertices;
+    }
+}
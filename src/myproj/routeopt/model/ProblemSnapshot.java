@@ -0,0 +1,150 @@
+package myproj.routeopt.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Immutable copy of one routing problem: road graph, distance oracle, depot,
+// delivery points and fleet. Snapshots made with withFleet share the graph,
+// oracle and delivery points of the one they come from, so a hundred fleet
+// scenarios cost little more than their fleets. The graph is a read-only copy
+// taken when the first snapshot is made. The oracle is shared as it is; the
+// ones SmartRouteOptimization builds either search their own copy of the
+// weights or are replaced rather than changed when the graph changes, so a
+// snapshot keeps the distances it was taken with.
+public final class ProblemSnapshot {
+    private final CsrGraph graph;
+    private final DistanceOracle distances;
+    private final int depot;
+    private final List<DeliveryPoint> deliveryPoints;
+    private final int[] vehicleIds;
+    private final int[] capacities;
+    private final int candidateListSize;
+
+    // Pass the graph itself as distances when no road distances have been computed
+    public ProblemSnapshot(Graph graph, DistanceOracle distances, int depot, List<DeliveryPoint> deliveryPoints,
+                           int[] vehicleIds, int[] capacities, int candidateListSize) {
+        this(copyOf(graph), distances, graph, depot, distinct(deliveryPoints), vehicleIds.clone(),
+                capacities.clone(), candidateListSize);
+    }
+
+    private ProblemSnapshot(CsrGraph graph, DistanceOracle distances, Graph source, int depot,
+                            List<DeliveryPoint> deliveryPoints, int[] vehicleIds, int[] capacities,
+                            int candidateListSize) {
+        if (vehicleIds.length != capacities.length) {
+            throw new IllegalArgumentException("Every vehicle needs one id and one capacity");
+        }
+        if (depot < 0 || depot >= graph.getVertices()) {
+            throw new IllegalArgumentException("Depot out of range: " + depot);
+        }
+        if (distances.getVertices() != graph.getVertices()) {
+            throw new IllegalArgumentException(String.format("Distances cover %d vertices, the graph has %d",
+                    distances.getVertices(), graph.getVertices()));
+        }
+        this.graph = graph;
+        // Edge weights of the graph as distances then come from the frozen copy too
+        this.distances = distances == source ? graph : distances;
+        this.depot = depot;
+        this.deliveryPoints = deliveryPoints;
+        this.vehicleIds = vehicleIds;
+        this.capacities = capacities;
+        this.candidateListSize = candidateListSize;
+    }
+
+    private static CsrGraph copyOf(Graph graph) {
+        return graph.toCsr().readOnlyCopy();
+    }
+
+    // Same problem with another fleet; vehicle i gets id vehicleIds[i]
+    public ProblemSnapshot withFleet(int[] vehicleIds, int[] capacities) {
+        return new ProblemSnapshot(graph, distances, graph, depot, deliveryPoints, vehicleIds.clone(),
+                capacities.clone(), candidateListSize);
+    }
+
+    // Another day on the same road graph and distances: new depot, stops and fleet
+    public ProblemSnapshot withDeliveries(int depot, List<DeliveryPoint> deliveryPoints, int[] vehicleIds,
+                                          int[] capacities) {
+        return new ProblemSnapshot(graph, distances, graph, depot, distinct(deliveryPoints), vehicleIds.clone(),
+                capacities.clone(), candidateListSize);
+    }
+
+    // Unmodifiable copy; the solvers index stops by location, so an id may occur only once
+    private static List<DeliveryPoint> distinct(List<DeliveryPoint> deliveryPoints) {
+        Set<Integer> ids = new HashSet<>();
+        for (DeliveryPoint dp : deliveryPoints) {
+            if (!ids.add(dp.getId())) {
+                throw new IllegalArgumentException("Delivery point " + dp.getId() + " occurs twice");
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(deliveryPoints));
+    }
+
+    // Same problem with count vehicles of one capacity, ids 1 to count
+    public ProblemSnapshot withFleetSize(int count, int capacity) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Vehicle count cannot be negative");
+        }
+        int[] ids = new int[count];
+        int[] capacities = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+            capacities[i] = capacity;
+        }
+        return new ProblemSnapshot(graph, distances, graph, depot, deliveryPoints, ids, capacities,
+                candidateListSize);
+    }
+
+    // Read-only: addEdge and setEdgeWeights throw UnsupportedOperationException
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    public DistanceOracle getDistanceOracle() {
+        return distances;
+    }
+
+    // True when distances are road distances rather than the edge weights of the graph
+    public boolean hasRoadDistances() {
+        return distances != graph;
+    }
+
+    public int getDepot() {
+        return depot;
+    }
+
+    // Unmodifiable
+    public List<DeliveryPoint> getDeliveryPoints() {
+        return deliveryPoints;
+    }
+
+    public int getVehicleCount() {
+        return vehicleIds.length;
+    }
+
+    public int getVehicleId(int index) {
+        return vehicleIds[index];
+    }
+
+    public int getCapacity(int index) {
+        return capacities[index];
+    }
+
+    public int getCandidateListSize() {
+        return candidateListSize;
+    }
+
+    public long getTotalDemand() {
+        long total = 0;
+        for (DeliveryPoint dp : deliveryPoints) {
+            total += dp.getDemand();
+        }
+        return total;
+    }
+
+    public long getTotalCapacity() {
+        return Arrays.stream(capacities).asLongStream().sum();
+    }
+}
@@ -0,0 +1,509 @@
+package myproj.routeopt.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+// All-pairs shortest path closure of a Graph. One Dijkstra run per source,
+// sources are spread over a ForkJoin pool. Predecessors are kept so the
+// actual road path between two stops can be rebuilt, and so that weight
+// changes can be repaired row by row (updateEdges) instead of recomputed.
+public class ShortestPathOracle implements DistanceOracle {
+    // Below this many sources a task runs its Dijkstras directly instead of splitting
+    private static final int SOURCES_PER_TASK = 16;
+
+    private final int vertices;
+    private final int[][] distances;
+    private final int[][] predecessors;
+
+    private ShortestPathOracle(int vertices, int[][] distances, int[][] predecessors) {
+        this.vertices = vertices;
+        this.distances = distances;
+        this.predecessors = predecessors;
+    }
+
+    public static ShortestPathOracle compute(Graph graph) {
+        return compute(graph, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    public static ShortestPathOracle compute(Graph graph, int parallelism) {
+        return compute(graph, parallelism, () -> false, fraction -> { });
+    }
+
+    // cancelled is polled before every source and throws CancellationException once it
+    // returns true; progress receives the fraction of sources done, from worker threads
+    public static ShortestPathOracle compute(Graph graph, int parallelism, BooleanSupplier cancelled,
+                                             DoubleConsumer progress) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        int n = graph.getVertices();
+        CsrGraph adjacency = graph.toCsr();
+        int[][] distances = new int[n][];
+        int[][] predecessors = new int[n][];
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Monitor monitor = new Monitor(cancelled, progress, n);
+            pool.invoke(new SourceRangeTask(adjacency, distances, predecessors, 0, n, monitor));
+        } finally {
+            pool.shutdown();
+        }
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Shortest path computation cancelled");
+        }
+        return new ShortestPathOracle(n, distances, predecessors);
+    }
+
+    // Independent copy, for updating distances that someone else still reads
+    public ShortestPathOracle copy() {
+        int[][] distanceRows = new int[vertices][];
+        int[][] predecessorRows = new int[vertices][];
+        for (int source = 0; source < vertices; source++) {
+            distanceRows[source] = distances[source].clone();
+            predecessorRows[source] = predecessors[source].clone();
+        }
+        return new ShortestPathOracle(vertices, distanceRows, predecessorRows);
+    }
+
+    // Brings the table in line with graph after edge i = (u[i], v[i]) changed
+    // from oldWeights[i] (INFINITY for an edge that did not exist) to its
+    // current weight in graph. Works in place, so it must not race with readers.
+    //
+    // A row only needs work if the change touches its shortest path tree: a
+    // heavier edge that is a tree edge cuts off the subtree below it, and a
+    // lighter edge that now shortens a path to one of its ends. Cut subtrees
+    // are reset and re-entered from their border, and both kinds are then
+    // settled with a Dijkstra that only visits vertices whose distance
+    // changes (the dynamic SSSP repair of Ramalingam and Reps, for a batch).
+    // Rows are independent and repaired in parallel. Returns which rows were
+    // repaired; all others are unchanged.
+    public boolean[] updateEdges(Graph graph, int[] u, int[] v, int[] oldWeights) {
+        if (u.length != v.length || u.length != oldWeights.length) {
+            throw new IllegalArgumentException("Edge arrays must have the same length");
+        }
+        CsrGraph adjacency = graph.toCsr();
+        if (adjacency.getVertices() != vertices) {
+            throw new IllegalArgumentException("The graph has " + adjacency.getVertices()
+                    + " vertices, the table " + vertices);
+        }
+        int[] newWeights = new int[u.length];
+        for (int i = 0; i < u.length; i++) {
+            newWeights[i] = u[i] == v[i] ? oldWeights[i] : adjacency.getDistance(u[i], v[i]);
+        }
+        boolean[] repaired = new boolean[vertices];
+        new RepairTask(adjacency, u, v, oldWeights, newWeights, repaired, 0, vertices).invoke();
+        return repaired;
+    }
+
+    @Override
+    public int getDistance(int u, int v) {
+        return distances[u][v];
+    }
+
+    @Override
+    public int getVertices() {
+        return vertices;
+    }
+
+    // Vertex visited just before v on the shortest path from source, -1 if none
+    public int getPredecessor(int source, int v) {
+        return predecessors[source][v];
+    }
+
+    // Full road path from u to v (both included), empty if v is unreachable
+    public List<Integer> getPath(int u, int v) {
+        if (distances[u][v] >= INFINITY) {
+            return Collections.emptyList();
+        }
+        List<Integer> path = new ArrayList<>();
+        int[] pred = predecessors[u];
+        for (int at = v; at != -1; at = pred[at]) {
+            path.add(at);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    // Single-threaded Floyd-Warshall over the same graph, kept as the reference
+    // the parallel Dijkstra closure is checked and timed against
+    public static int[][] floydWarshall(Graph graph) {
+        CsrGraph csr = graph.toCsr();
+        int n = csr.getVertices();
+        int[][] dist = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(dist[i], INFINITY);
+            for (int e = csr.firstArc(i); e < csr.endArc(i); e++) {
+                dist[i][csr.arcTarget(e)] = csr.arcWeight(e);
+            }
+            dist[i][i] = 0;
+        }
+        for (int k = 0; k < n; k++) {
+            int[] rowK = dist[k];
+            for (int i = 0; i < n; i++) {
+                int[] rowI = dist[i];
+                int ik = rowI[k];
+                if (ik >= INFINITY) {
+                    continue;
+                }
+                for (int j = 0; j < n; j++) {
+                    int candidate = ik + rowK[j];
+                    if (candidate < rowI[j]) {
+                        rowI[j] = candidate;
+                    }
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static final class SourceRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CsrGraph adjacency;
+        private final int[][] distances;
+        private final int[][] predecessors;
+        private final int from;
+        private final int to;
+        private final Monitor monitor;
+
+        SourceRangeTask(CsrGraph adjacency, int[][] distances, int[][] predecessors, int from, int to,
+                        Monitor monitor) {
+            this.adjacency = adjacency;
+            this.distances = distances;
+            this.predecessors = predecessors;
+            this.from = from;
+            this.to = to;
+            this.monitor = monitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SOURCES_PER_TASK) {
+                Dijkstra dijkstra = new Dijkstra(adjacency, distances.length);
+                for (int source = from; source < to; source++) {
+                    if (monitor.cancelled.getAsBoolean()) {
+                        return;
+                    }
+                    int[] dist = new int[distances.length];
+                    int[] pred = new int[distances.length];
+                    dijkstra.run(source, dist, pred);
+                    distances[source] = dist;
+                    predecessors[source] = pred;
+                }
+                monitor.sourcesDone(to - from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SourceRangeTask(adjacency, distances, predecessors, from, mid, monitor),
+                    new SourceRangeTask(adjacency, distances, predecessors, mid, to, monitor));
+        }
+    }
+
+    private final class RepairTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CsrGraph adjacency;
+        private final int[] u;
+        private final int[] v;
+        private final int[] oldWeights;
+        private final int[] newWeights;
+        private final boolean[] repaired;
+        private final int from;
+        private final int to;
+
+        RepairTask(CsrGraph adjacency, int[] u, int[] v, int[] oldWeights, int[] newWeights, boolean[] repaired,
+                   int from, int to) {
+            this.adjacency = adjacency;
+            this.u = u;
+            this.v = v;
+            this.oldWeights = oldWeights;
+            this.newWeights = newWeights;
+            this.repaired = repaired;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SOURCES_PER_TASK * 16) {
+                RowRepair repair = null;
+                for (int source = from; source < to; source++) {
+                    if (!touchesTree(source)) {
+                        continue;
+                    }
+                    if (repair == null) {
+                        repair = new RowRepair(adjacency, vertices);
+                    }
+                    repair.run(source, distances[source], predecessors[source], u, v, oldWeights, newWeights);
+                    repaired[source] = true;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RepairTask(adjacency, u, v, oldWeights, newWeights, repaired, from, mid),
+                    new RepairTask(adjacency, u, v, oldWeights, newWeights, repaired, mid, to));
+        }
+
+        // O(1) per changed edge: a heavier tree edge, or a lighter edge that shortens a path
+        private boolean touchesTree(int source) {
+            int[] dist = distances[source];
+            int[] pred = predecessors[source];
+            for (int i = 0; i < u.length; i++) {
+                int a = u[i];
+                int b = v[i];
+                if (newWeights[i] > oldWeights[i]) {
+                    if (pred[b] == a || pred[a] == b) {
+                        return true;
+                    }
+                } else if (newWeights[i] < oldWeights[i]) {
+                    if (dist[a] < INFINITY && dist[a] + newWeights[i] < dist[b]
+                            || dist[b] < INFINITY && dist[b] + newWeights[i] < dist[a]) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    // Repairs one row after a batch of weight changes. Scratch arrays are reused
+    // across rows; a stamp per row marks the cut-off vertices without clearing.
+    // Once half the tree is cut off, rerunning the whole row is as cheap.
+    private static final class RowRepair {
+        private final CsrGraph adjacency;
+        private final int[] cutStamp;
+        private final int maxCut;
+        private int stamp;
+        private int[] cut = new int[64];
+        private int cutSize;
+        private final LongHeap heap = new LongHeap();
+        private Dijkstra dijkstra;
+
+        RowRepair(CsrGraph adjacency, int vertices) {
+            this.adjacency = adjacency;
+            this.cutStamp = new int[vertices];
+            this.maxCut = vertices / 2;
+        }
+
+        void run(int source, int[] dist, int[] pred, int[] u, int[] v, int[] oldWeights, int[] newWeights) {
+            stamp++;
+            cutSize = 0;
+            heap.clear();
+            // Heavier tree edges cut off the subtree below them
+            for (int i = 0; i < u.length && cutSize <= maxCut; i++) {
+                if (newWeights[i] > oldWeights[i]) {
+                    if (pred[v[i]] == u[i]) {
+                        cutSubtree(v[i], pred);
+                    } else if (pred[u[i]] == v[i]) {
+                        cutSubtree(u[i], pred);
+                    }
+                }
+            }
+            if (cutSize > maxCut) {
+                if (dijkstra == null) {
+                    dijkstra = new Dijkstra(adjacency, dist.length);
+                }
+                dijkstra.run(source, dist, pred);
+                return;
+            }
+            for (int c = 0; c < cutSize; c++) {
+                dist[cut[c]] = INFINITY;
+                pred[cut[c]] = -1;
+            }
+            // Re-enter the cut-off vertices from their best neighbour outside the cut
+            for (int c = 0; c < cutSize; c++) {
+                int x = cut[c];
+                for (int e = adjacency.firstArc(x), end = adjacency.endArc(x); e < end; e++) {
+                    int y = adjacency.arcTarget(e);
+                    if (cutStamp[y] != stamp && dist[y] < INFINITY) {
+                        int candidate = dist[y] + adjacency.arcWeight(e);
+                        if (candidate < dist[x]) {
+                            dist[x] = candidate;
+                            pred[x] = y;
+                        }
+                    }
+                }
+                if (dist[x] < INFINITY) {
+                    heap.push(dist[x], x);
+                }
+            }
+            // Lighter edges improve one end
+            for (int i = 0; i < u.length; i++) {
+                if (newWeights[i] < oldWeights[i]) {
+                    relax(u[i], v[i], newWeights[i], dist, pred);
+                    relax(v[i], u[i], newWeights[i], dist, pred);
+                }
+            }
+            while (!heap.isEmpty()) {
+                long entry = heap.pop();
+                int x = LongHeap.vertex(entry);
+                if (LongHeap.key(entry) != dist[x]) {
+                    continue;
+                }
+                for (int e = adjacency.firstArc(x), end = adjacency.endArc(x); e < end; e++) {
+                    relax(x, adjacency.arcTarget(e), adjacency.arcWeight(e), dist, pred);
+                }
+            }
+        }
+
+        private void relax(int from, int to, int weight, int[] dist, int[] pred) {
+            if (dist[from] >= INFINITY) {
+                return;
+            }
+            int candidate = dist[from] + weight;
+            if (candidate < dist[to]) {
+                dist[to] = candidate;
+                pred[to] = from;
+                heap.push(candidate, to);
+            }
+        }
+
+        // The children of x are the neighbours whose predecessor is x
+        private void cutSubtree(int root, int[] pred) {
+            if (cutStamp[root] == stamp) {
+                return;
+            }
+            int first = cutSize;
+            add(root);
+            for (int c = first; c < cutSize && cutSize <= maxCut; c++) {
+                int x = cut[c];
+                for (int e = adjacency.firstArc(x), end = adjacency.endArc(x); e < end; e++) {
+                    int y = adjacency.arcTarget(e);
+                    if (pred[y] == x && cutStamp[y] != stamp) {
+                        add(y);
+                    }
+                }
+            }
+        }
+
+        private void add(int x) {
+            if (cutSize == cut.length) {
+                cut = Arrays.copyOf(cut, cutSize * 2);
+            }
+            cutStamp[x] = stamp;
+            cut[cutSize++] = x;
+        }
+    }
+
+    private static final class Monitor {
+        final BooleanSupplier cancelled;
+        final DoubleConsumer progress;
+        final AtomicInteger done = new AtomicInteger();
+        final int total;
+
+        Monitor(BooleanSupplier cancelled, DoubleConsumer progress, int total) {
+            this.cancelled = cancelled;
+            this.progress = progress;
+            this.total = total;
+        }
+
+        void sourcesDone(int count) {
+            progress.accept((double) done.addAndGet(count) / total);
+        }
+    }
+
+    // Dijkstra with an indexed binary heap over the CSR arcs; the heap arrays are reused across sources
+    private static final class Dijkstra {
+        private final CsrGraph adjacency;
+        private final int[] heap;
+        private final int[] heapIndex;
+        private int size;
+
+        Dijkstra(CsrGraph adjacency, int vertices) {
+            this.adjacency = adjacency;
+            this.heap = new int[vertices];
+            this.heapIndex = new int[vertices];
+        }
+
+        void run(int source, int[] dist, int[] pred) {
+            Arrays.fill(dist, INFINITY);
+            Arrays.fill(pred, -1);
+            Arrays.fill(heapIndex, -1);
+            size = 0;
+            dist[source] = 0;
+            push(source, dist);
+
+            while (size > 0) {
+                int u = pop(dist);
+                int du = dist[u];
+                for (int e = adjacency.firstArc(u), end = adjacency.endArc(u); e < end; e++) {
+                    int v = adjacency.arcTarget(e);
+                    int candidate = du + adjacency.arcWeight(e);
+                    if (candidate < dist[v]) {
+                        dist[v] = candidate;
+                        pred[v] = u;
+                        if (heapIndex[v] < 0) {
+                            push(v, dist);
+                        } else {
+                            siftUp(heapIndex[v], dist);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void push(int v, int[] dist) {
+            heap[size] = v;
+            heapIndex[v] = size;
+            siftUp(size++, dist);
+        }
+
+        private int pop(int[] dist) {
+            int top = heap[0];
+            heapIndex[top] = -2; // settled
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                heapIndex[heap[0]] = 0;
+                siftDown(0, dist);
+            }
+            return top;
+        }
+
+        private void siftUp(int i, int[] dist) {
+            int v = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                int p = heap[parent];
+                if (dist[p] <= dist[v]) {
+                    break;
+                }
+                heap[i] = p;
+                heapIndex[p] = i;
+                i = parent;
+            }
+            heap[i] = v;
+            heapIndex[v] = i;
+        }
+
+        private void siftDown(int i, int[] dist) {
+            int v = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && dist[heap[child + 1]] < dist[heap[child]]) {
+                    child++;
+                }
+                int c = heap[child];
+                if (dist[v] <= dist[c]) {
+                    break;
+                }
+                heap[i] = c;
+                heapIndex[c] = i;
+                i = child;
+            }
+            heap[i] = v;
+            heapIndex[v] = i;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package myproj.routeopt.model;
+
+import java.util.Arrays;
+
+// The result of solving one ProblemSnapshot, as a value: per vehicle its id,
+// stop sequence (depot at both ends) and load, plus the total distance and how
+// long the solve took. Arrays are copied in and out, so a Solution can be
+// handed between threads freely. An infeasible solve has no routes and
+// says why.
+public final class Solution {
+    private final String strategy;
+    private final int[] vehicleIds;
+    private final int[][] routes;
+    private final int[] loads;
+    private final long totalDistance;
+    private final long solveNanos;
+    private final String failure;
+
+    public Solution(String strategy, int[] vehicleIds, int[][] routes, int[] loads, long totalDistance,
+                    long solveNanos) {
+        if (vehicleIds.length != routes.length || vehicleIds.length != loads.length) {
+            throw new IllegalArgumentException("Every vehicle needs one id, one route and one load");
+        }
+        this.strategy = strategy;
+        this.vehicleIds = vehicleIds.clone();
+        this.routes = new int[routes.length][];
+        for (int i = 0; i < routes.length; i++) {
+            this.routes[i] = routes[i].clone();
+        }
+        this.loads = loads.clone();
+        this.totalDistance = totalDistance;
+        this.solveNanos = solveNanos;
+        this.failure = null;
+    }
+
+    private Solution(String strategy, int[] vehicleIds, String failure, long solveNanos) {
+        this.strategy = strategy;
+        this.vehicleIds = vehicleIds.clone();
+        this.routes = new int[0][];
+        this.loads = new int[0];
+        this.totalDistance = -1;
+        this.solveNanos = solveNanos;
+        this.failure = failure;
+    }
+
+    public static Solution infeasible(String strategy, int[] vehicleIds, String failure, long solveNanos) {
+        return new Solution(strategy, vehicleIds, failure, solveNanos);
+    }
+
+    public boolean isFeasible() {
+        return failure == null;
+    }
+
+    // Why the solve failed; null for a feasible solution
+    public String getFailure() {
+        return failure;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public int getVehicleCount() {
+        return vehicleIds.length;
+    }
+
+    public int getVehicleId(int index) {
+        return vehicleIds[index];
+    }
+
+    public int[] getRoute(int index) {
+        requireFeasible();
+        return routes[index].clone();
+    }
+
+    public int getLoad(int index) {
+        requireFeasible();
+        return loads[index];
+    }
+
+    // Vehicles that leave the depot at all
+    public int getUsedVehicles() {
+        int used = 0;
+        for (int[] route : routes) {
+            if (route.length > 2) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    // -1 for an infeasible solve
+    public long getTotalDistance() {
+        return totalDistance;
+    }
+
+    public long getSolveNanos() {
+        return solveNanos;
+    }
+
+    private void requireFeasible() {
+        if (failure != null) {
+            throw new IllegalStateException("Infeasible solution has no routes: " + failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (failure != null) {
+            return String.format("%s, %d vehicles: infeasible (%s)", strategy, vehicleIds.length, failure);
+        }
+        return String.format("%s, %d vehicles (%d used): distance %d in %.1f ms", strategy, vehicleIds.length,
+                getUsedVehicles(), totalDistance, solveNanos / 1_000_000.0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Solution)) {
+            return false;
+        }
+        Solution other = (Solution) o;
+        return totalDistance == other.totalDistance && strategy.equals(other.strategy)
+                && Arrays.equals(vehicleIds, other.vehicleIds) && Arrays.deepEquals(routes, other.routes)
+                && Arrays.equals(loads, other.loads) && (failure == null ? other.failure == null
+                : failure.equals(other.failure));
+    }
+
+    // Solve time is not part of the value
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.deepHashCode(routes) + Long.hashCode(totalDistance);
+    }
+}
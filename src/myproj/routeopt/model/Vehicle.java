@@ -6,46 +6,223 @@ public class Vehicle {
     private int id;
     private int capacity;
     private int currentLoad;
-    private List<Integer> route;
-    private Map<Integer, Integer> deliveryLoads;
+    // Route as a growable int array; routePositions maps a location to its index in it
+    private int[] route;
+    private int routeSize;
+    private IntIntHashMap routePositions;
+    private IntIntHashMap deliveryLoads;
 
     public Vehicle(int id, int capacity) {
         this.id = id;
         this.capacity = capacity;
         this.currentLoad = 0;
-        this.route = new ArrayList<>();
-        this.deliveryLoads = new HashMap<>();
+        this.route = new int[8];
+        this.routePositions = new IntIntHashMap();
+        this.deliveryLoads = new IntIntHashMap();
     }
 
     public void addDelivery(int deliveryPointId, int demand) {
         if (currentLoad + demand > capacity) {
             throw new IllegalStateException("Adding this delivery would exceed vehicle capacity");
         }
-        if (!route.contains(deliveryPointId)) {  // Only add if not already in route
-            route.add(deliveryPointId);
+        if (!routePositions.containsKey(deliveryPointId)) {  // Only add if not already in route
+            appendStop(deliveryPointId);
         }
-        deliveryLoads.put(deliveryPointId, demand);
+        deliveryLoads.put(deliveryPointId, demand, 0);
         currentLoad += demand;
     }
 
+    public void removeDelivery(int deliveryPointId) {
+        if (!deliveryLoads.containsKey(deliveryPointId)) {
+            throw new IllegalArgumentException("Delivery point " + deliveryPointId + " is not assigned to this vehicle");
+        }
+        int demand = deliveryLoads.remove(deliveryPointId, 0);
+        int position = routePositions.get(deliveryPointId, -1);
+        if (position >= 0) {
+            System.arraycopy(route, position + 1, route, position, routeSize - position - 1);
+            routeSize--;
+            reindexRoute();
+        }
+        currentLoad -= demand;
+    }
+
+    // Drops the route and every assigned delivery
+    public void clearDeliveries() {
+        routeSize = 0;
+        routePositions.clear();
+        deliveryLoads.clear();
+        currentLoad = 0;
+    }
+
     public void resetRoute() {
-        route.clear();
+        routeSize = 0;
+        routePositions.clear();
         // Don't clear loads - we want to preserve them
     }
 
     public void setRoute(List<Integer> newRoute) {
+        int[] stops = new int[newRoute.size()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = newRoute.get(i);
+        }
+        setRoute(stops, stops.length);
+    }
+
+    // Primitive variant used by the solver; copies the first length entries
+    public void setRoute(int[] newRoute, int length) {
+        IntIntHashMap positions = new IntIntHashMap(length);
+        for (int i = length - 1; i >= 0; i--) {
+            positions.put(newRoute[i], i, -1);
+        }
         // Validate that new route contains all delivery points
-        for (Integer deliveryPoint : deliveryLoads.keySet()) {
-            if (!newRoute.contains(deliveryPoint)) {
+        for (int slot = 0; slot < deliveryLoads.capacity(); slot++) {
+            if (deliveryLoads.isUsed(slot) && !positions.containsKey(deliveryLoads.keyAt(slot))) {
                 throw new IllegalArgumentException("New route must contain all assigned delivery points");
             }
         }
-        route = new ArrayList<>(newRoute);
+        if (route.length < length) {
+            route = new int[length];
+        }
+        System.arraycopy(newRoute, 0, route, 0, length);
+        routeSize = length;
+        routePositions = positions;
     }
 
     public int getId() { return id; }
     public int getCapacity() { return capacity; }
     public int getCurrentLoad() { return currentLoad; }
-    public List<Integer> getRoute() { return route; }
-    public Map<Integer, Integer> getDeliveryLoads() { return deliveryLoads; }
-}
\ No newline at end of file
+
+    // Read-only views for display code; the solver uses the primitive accessors below
+    public List<Integer> getRoute() { return routeView; }
+    public Map<Integer, Integer> getDeliveryLoads() { return deliveryLoadsView; }
+
+    public int getRouteSize() { return routeSize; }
+
+    public int getRouteStop(int index) {
+        if (index < 0 || index >= routeSize) {
+            throw new IndexOutOfBoundsException("Route index " + index + " out of range for size " + routeSize);
+        }
+        return route[index];
+    }
+
+    public int[] getRouteArray() { return Arrays.copyOf(route, routeSize); }
+
+    // Index of the first visit to a location, -1 if it is not on the route
+    public int getRoutePosition(int location) { return routePositions.get(location, -1); }
+
+    public boolean hasDelivery(int deliveryPointId) { return deliveryLoads.containsKey(deliveryPointId); }
+
+    public int getDeliveryLoad(int deliveryPointId) { return deliveryLoads.get(deliveryPointId, 0); }
+
+    public int getDeliveryCount() { return deliveryLoads.size(); }
+
+    public int[] getDeliveryIds() {
+        int[] ids = new int[deliveryLoads.size()];
+        int count = 0;
+        for (int slot = 0; slot < deliveryLoads.capacity(); slot++) {
+            if (deliveryLoads.isUsed(slot)) {
+                ids[count++] = deliveryLoads.keyAt(slot);
+            }
+        }
+        return ids;
+    }
+
+    private void appendStop(int location) {
+        if (routeSize == route.length) {
+            route = Arrays.copyOf(route, routeSize * 2);
+        }
+        if (!routePositions.containsKey(location)) {
+            routePositions.put(location, routeSize, -1);
+        }
+        route[routeSize++] = location;
+    }
+
+    private void reindexRoute() {
+        routePositions.clear();
+        for (int i = routeSize - 1; i >= 0; i--) {
+            routePositions.put(route[i], i, -1);
+        }
+    }
+
+    private final List<Integer> routeView = new AbstractList<Integer>() {
+        @Override
+        public Integer get(int index) {
+            return getRouteStop(index);
+        }
+
+        @Override
+        public int size() {
+            return routeSize;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer && routePositions.containsKey((Integer) o);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof Integer ? routePositions.get((Integer) o, -1) : -1;
+        }
+    };
+
+    private final Map<Integer, Integer> deliveryLoadsView = new AbstractMap<Integer, Integer>() {
+        @Override
+        public int size() {
+            return deliveryLoads.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && deliveryLoads.containsKey((Integer) key);
+        }
+
+        @Override
+        public Integer get(Object key) {
+            if (!containsKey(key)) {
+                return null;
+            }
+            return deliveryLoads.get((Integer) key, 0);
+        }
+
+        @Override
+        public Set<Entry<Integer, Integer>> entrySet() {
+            return new AbstractSet<Entry<Integer, Integer>>() {
+                @Override
+                public int size() {
+                    return deliveryLoads.size();
+                }
+
+                @Override
+                public Iterator<Entry<Integer, Integer>> iterator() {
+                    return new Iterator<Entry<Integer, Integer>>() {
+                        private int slot = advance(0);
+
+                        private int advance(int from) {
+                            while (from < deliveryLoads.capacity() && !deliveryLoads.isUsed(from)) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < deliveryLoads.capacity();
+                        }
+
+                        @Override
+                        public Entry<Integer, Integer> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<Integer, Integer> entry = new AbstractMap.SimpleImmutableEntry<>(
+                                    deliveryLoads.keyAt(slot), deliveryLoads.valueAt(slot));
+                            slot = advance(slot + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    };
+}
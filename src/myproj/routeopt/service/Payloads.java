@@ -0,0 +1,262 @@
+package myproj.routeopt.service;
+
+import myproj.routeopt.io.EdgeListReader;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.Solution;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Request and response bodies of RoutingService, as JSON or little endian binary.
+//
+// Graph, JSON:   {"vertices": n, "edges": [[u, v, w], ...]}   (vertices optional)
+// Graph, binary: an EdgeListReader binary edge list
+//
+// Solve, JSON:   {"depot": d, "points": [[id, demand, window start, window end], ...],
+//                 "vehicles": [[id, capacity], ...]}   (windows optional)
+// Solve, binary: int magic "SRSQ", int version, int depot, int point count,
+//                (id, demand, start, end) per point, int vehicle count,
+//                (id, capacity) per vehicle
+//
+// Plan, JSON:    {"strategy": s, "totalDistance": t, "solveMillis": m,
+//                 "vehicles": [{"id": i, "load": l, "route": [...]}, ...]}
+// Plan, binary:  int magic "SRSP", int version, long total distance, int
+//                vehicle count, then per vehicle id, load, stop count, stops
+final class Payloads {
+    static final String BINARY = "application/octet-stream";
+    static final String JSON = "application/json";
+
+    private static final int REQUEST_MAGIC = 0x53525351;
+    private static final int PLAN_MAGIC = 0x53525350;
+    private static final int VERSION = 1;
+    // Window end for points sent without one; leaves room for arrival time arithmetic
+    private static final int OPEN_WINDOW_END = Integer.MAX_VALUE / 2;
+
+    private Payloads() {
+    }
+
+    static final class Edges {
+        int vertices = -1;
+        int count;
+        int[] u = new int[16];
+        int[] v = new int[16];
+        int[] w = new int[16];
+
+        void add(int from, int to, int weight) {
+            if (count == u.length) {
+                u = Arrays.copyOf(u, count * 2);
+                v = Arrays.copyOf(v, count * 2);
+                w = Arrays.copyOf(w, count * 2);
+            }
+            u[count] = from;
+            v[count] = to;
+            w[count] = weight;
+            count++;
+        }
+
+        // Explicit vertex count, or one past the largest endpoint
+        int vertexCount() {
+            if (vertices >= 0) {
+                return vertices;
+            }
+            int max = -1;
+            for (int i = 0; i < count; i++) {
+                max = Math.max(max, Math.max(u[i], v[i]));
+            }
+            return max + 1;
+        }
+    }
+
+    static final class SolveRequest {
+        int depot;
+        final List<DeliveryPoint> points = new ArrayList<>();
+        int[] vehicleIds;
+        int[] capacities;
+    }
+
+    static Edges readGraph(byte[] body, boolean binary) throws IOException {
+        Edges edges = new Edges();
+        if (binary) {
+            new EdgeListReader().readBinary(ByteBuffer.wrap(body), (u, v, w) -> {
+                for (int i = 0; i < u.length; i++) {
+                    edges.add(u[i], v[i], w[i]);
+                }
+            });
+            return edges;
+        }
+        Map<String, Object> json = object(JsonReader.parse(new String(body, StandardCharsets.UTF_8)), "graph");
+        if (json.containsKey("vertices")) {
+            edges.vertices = toInt(json.get("vertices"), "vertices");
+        }
+        for (Object edge : list(json.get("edges"), "edges")) {
+            List<Object> fields = list(edge, "edge");
+            if (fields.size() != 3) {
+                throw new IllegalArgumentException("An edge is [u, v, weight]");
+            }
+            edges.add(toInt(fields.get(0), "u"), toInt(fields.get(1), "v"), toInt(fields.get(2), "weight"));
+        }
+        return edges;
+    }
+
+    static SolveRequest readSolve(byte[] body, boolean binary) {
+        return binary ? readSolveBinary(body) : readSolveJson(body);
+    }
+
+    private static SolveRequest readSolveJson(byte[] body) {
+        Map<String, Object> json = object(JsonReader.parse(new String(body, StandardCharsets.UTF_8)), "request");
+        SolveRequest request = new SolveRequest();
+        request.depot = toInt(json.get("depot"), "depot");
+        for (Object point : list(json.get("points"), "points")) {
+            List<Object> fields = list(point, "point");
+            if (fields.size() != 2 && fields.size() != 4) {
+                throw new IllegalArgumentException("A point is [id, demand] or [id, demand, start, end]");
+            }
+            request.points.add(new DeliveryPoint(toInt(fields.get(0), "id"), toInt(fields.get(1), "demand"),
+                    fields.size() == 4 ? toInt(fields.get(2), "start") : 0,
+                    fields.size() == 4 ? toInt(fields.get(3), "end") : OPEN_WINDOW_END));
+        }
+        List<Object> vehicles = list(json.get("vehicles"), "vehicles");
+        request.vehicleIds = new int[vehicles.size()];
+        request.capacities = new int[vehicles.size()];
+        for (int i = 0; i < vehicles.size(); i++) {
+            List<Object> fields = list(vehicles.get(i), "vehicle");
+            if (fields.size() != 2) {
+                throw new IllegalArgumentException("A vehicle is [id, capacity]");
+            }
+            request.vehicleIds[i] = toInt(fields.get(0), "vehicle id");
+            request.capacities[i] = toInt(fields.get(1), "capacity");
+        }
+        return request;
+    }
+
+    private static SolveRequest readSolveBinary(byte[] body) {
+        ByteBuffer in = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != REQUEST_MAGIC) {
+                throw new IllegalArgumentException("Not a binary solve request");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported solve request version " + version);
+            }
+            SolveRequest request = new SolveRequest();
+            request.depot = in.getInt();
+            int points = count(in, 16);
+            for (int i = 0; i < points; i++) {
+                request.points.add(new DeliveryPoint(in.getInt(), in.getInt(), in.getInt(), in.getInt()));
+            }
+            int vehicles = count(in, 8);
+            request.vehicleIds = new int[vehicles];
+            request.capacities = new int[vehicles];
+            for (int i = 0; i < vehicles; i++) {
+                request.vehicleIds[i] = in.getInt();
+                request.capacities[i] = in.getInt();
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException(in.remaining() + " bytes after the last vehicle");
+            }
+            return request;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated solve request");
+        }
+    }
+
+    // A record count, checked against the bytes left so a bad count cannot allocate much
+    private static int count(ByteBuffer in, int recordBytes) {
+        int count = in.getInt();
+        if (count < 0 || (long) count * recordBytes > in.remaining()) {
+            throw new IllegalArgumentException("Bad record count " + count);
+        }
+        return count;
+    }
+
+    static byte[] writePlanJson(Solution solution) {
+        StringBuilder json = new StringBuilder(64 + 16 * solution.getVehicleCount());
+        json.append("{\"strategy\": \"").append(escape(solution.getStrategy()))
+                .append("\", \"totalDistance\": ").append(solution.getTotalDistance())
+                .append(", \"solveMillis\": ").append(String.format("%.3f", solution.getSolveNanos() / 1_000_000.0))
+                .append(", \"vehicles\": [");
+        for (int i = 0; i < solution.getVehicleCount(); i++) {
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("  {\"id\": ").append(solution.getVehicleId(i))
+                    .append(", \"load\": ").append(solution.getLoad(i))
+                    .append(", \"route\": [");
+            int[] route = solution.getRoute(i);
+            for (int j = 0; j < route.length; j++) {
+                if (j > 0) {
+                    json.append(", ");
+                }
+                json.append(route[j]);
+            }
+            json.append("]}");
+        }
+        json.append(solution.getVehicleCount() == 0 ? "]}\n" : "\n]}\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] writePlanBinary(Solution solution) {
+        int size = 20;
+        for (int i = 0; i < solution.getVehicleCount(); i++) {
+            size += 12 + 4 * solution.getRoute(i).length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(PLAN_MAGIC).putInt(VERSION).putLong(solution.getTotalDistance()).putInt(solution.getVehicleCount());
+        for (int i = 0; i < solution.getVehicleCount(); i++) {
+            int[] route = solution.getRoute(i);
+            out.putInt(solution.getVehicleId(i)).putInt(solution.getLoad(i)).putInt(route.length);
+            for (int stop : route) {
+                out.putInt(stop);
+            }
+        }
+        return out.array();
+    }
+
+    static byte[] error(String message) {
+        return ("{\"error\": \"" + escape(message) + "\"}\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String escape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Object value, String what) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected " + what + " to be an object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object value, String what) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Expected " + what + " to be an array");
+        }
+        return (List<Object>) value;
+    }
+
+    private static int toInt(Object value, String what) {
+        if (!(value instanceof Long) || (Long) value != ((Long) value).intValue()) {
+            throw new IllegalArgumentException("Expected " + what + " to be an int, got " + value);
+        }
+        return ((Long) value).intValue();
+    }
+}
@@ -0,0 +1,519 @@
+package myproj.routeopt.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.GraphBuilder;
+import myproj.routeopt.model.ProblemSnapshot;
+import myproj.routeopt.model.Solution;
+import myproj.routeopt.solver.ClarkeWrightStrategy;
+import myproj.routeopt.solver.ClusterFirstStrategy;
+import myproj.routeopt.solver.LnsStrategy;
+import myproj.routeopt.solver.NearestNeighbourStrategy;
+import myproj.routeopt.solver.RoutingStrategy;
+import myproj.routeopt.solver.TimeWindowInsertionStrategy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Embedded HTTP front end for the optimizer, on the JDK HttpServer:
+//   PUT    /graphs/{name}[?distances=table|on-demand|hierarchy]   load a road graph
+//   GET    /graphs                                               list loaded graphs
+//   DELETE /graphs/{name}
+//   POST   /graphs/{name}/solve[?strategy=cw&time-limit=<seconds>]  solve one day
+//   GET    /stats                                                latency percentiles and batching
+// Bodies are JSON, or binary with Content-Type application/octet-stream (see
+// Payloads); a solve answers in binary when the request was binary or asks
+// for it with Accept. A loaded graph is kept as a ProblemSnapshot, so its
+// frozen graph and distances are shared read-only by every request. Solves
+// of at most smallRequestStops stops are micro-batched per graph and
+// strategy (SolveBatcher); larger ones are solved one by one. Either way the
+// solve runs on the solver pool, so solveThreads bounds the solving CPU while
+// handler threads only wait. The lns time limit is capped at
+// MAX_LNS_MILLIS, and graphs at MAX_VERTICES vertices (MAX_TABLE_VERTICES
+// with the all-pairs table), so one request cannot hold the solvers or the
+// heap.
+//
+// Status codes: 400 bad request, 404 unknown graph or path, 405 wrong
+// method, 422 infeasible (with the reason), 500 anything else.
+public class RoutingService implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(RoutingService.class.getName());
+
+    public static final int DEFAULT_SMALL_REQUEST_STOPS = 200;
+    public static final int DEFAULT_MAX_BATCH = 32;
+    public static final long DEFAULT_BATCH_WINDOW_MICROS = 2_000;
+    // Graphs up to this size get the all-pairs table by default, larger ones a hierarchy
+    private static final int TABLE_VERTEX_LIMIT = 4096;
+    private static final int CACHE_ENTRIES = 1 << 20;
+    private static final long DEFAULT_LNS_MILLIS = 1_000;
+    private static final long MAX_LNS_MILLIS = 60_000;
+    private static final int MAX_VERTICES = 1 << 22;
+    private static final int MAX_TABLE_VERTICES = 2 * TABLE_VERTEX_LIMIT;
+    // Pending connections; bursts of clients are refused beyond the system default of 50
+    private static final int BACKLOG = 1024;
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ExecutorService solvers;
+    private final ScheduledExecutorService timer;
+    private final int solveThreads;
+    private final Map<String, LoadedGraph> graphs = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRequests = new LongAdder();
+    private volatile int smallRequestStops = DEFAULT_SMALL_REQUEST_STOPS;
+    private volatile int maxBatch = DEFAULT_MAX_BATCH;
+    private volatile long batchWindowMicros = DEFAULT_BATCH_WINDOW_MICROS;
+
+    // Port 0 picks a free port, see getPort. Handler threads block while their
+    // request is solved, so there should be more of them than solve threads.
+    public RoutingService(InetSocketAddress address, int handlerThreads, int solveThreads) throws IOException {
+        if (handlerThreads < 1 || solveThreads < 1) {
+            throw new IllegalArgumentException("Thread counts must be at least 1");
+        }
+        this.solveThreads = solveThreads;
+        handlers = Executors.newFixedThreadPool(handlerThreads, named("routing-http"));
+        solvers = Executors.newFixedThreadPool(solveThreads, named("routing-solve"));
+        timer = Executors.newSingleThreadScheduledExecutor(named("routing-batch"));
+        server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(handlers);
+        server.createContext("/graphs", exchange -> handle(exchange, this::graphs));
+        server.createContext("/stats", exchange -> handle(exchange, this::stats));
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("Routing service listening on " + server.getAddress());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Solves with more stops than this skip batching; 0 turns batching off
+    public void setBatching(int smallRequestStops, int maxBatch, long windowMicros) {
+        if (smallRequestStops < 0 || maxBatch < 1 || windowMicros < 0) {
+            throw new IllegalArgumentException("Bad batching settings");
+        }
+        this.smallRequestStops = smallRequestStops;
+        this.maxBatch = maxBatch;
+        this.batchWindowMicros = windowMicros;
+    }
+
+    // Loads a road graph under name, replacing any graph loaded under it before.
+    // distances is "table", "on-demand", "hierarchy" or null for the default by size.
+    public void loadGraph(String name, GraphBuilder graph, String distances) {
+        if (distances == null) {
+            distances = graph.getVertices() <= TABLE_VERTEX_LIMIT ? "table" : "hierarchy";
+        }
+        if (graph.getVertices() == 0) {
+            throw new IllegalArgumentException("Graph has no vertices");
+        }
+        if (graph.getVertices() > MAX_VERTICES) {
+            throw new IllegalArgumentException(String.format("Graph has %d vertices, at most %d are served",
+                    graph.getVertices(), MAX_VERTICES));
+        }
+        if (distances.equals("table") && graph.getVertices() > MAX_TABLE_VERTICES) {
+            throw new IllegalArgumentException(String.format(
+                    "The all-pairs table is limited to %d vertices, use on-demand or hierarchy",
+                    MAX_TABLE_VERTICES));
+        }
+        SmartRouteOptimization system = new SmartRouteOptimization(graph, 0);
+        switch (distances) {
+            case "table":
+                break;
+            case "on-demand":
+                system.setOnDemandDistances(CACHE_ENTRIES);
+                break;
+            case "hierarchy":
+                system.setContractionHierarchy(true);
+                system.setOnDemandDistances(CACHE_ENTRIES);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distances '" + distances
+                        + "', expected table, on-demand or hierarchy");
+        }
+        long start = System.nanoTime();
+        system.computeShortestPaths();
+        graphs.put(name, new LoadedGraph(system.snapshot(), distances, graph.getEdgeCount()));
+        LOG.info(String.format("Loaded graph %s: %d vertices, %d edges, %s distances in %d ms", name,
+                graph.getVertices(), graph.getEdgeCount(), distances, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    public boolean unloadGraph(String name) {
+        return graphs.remove(name) != null;
+    }
+
+    // Solves one day on a loaded graph, batched with others when it is small.
+    // timeLimitMillis is capped at MAX_LNS_MILLIS.
+    public Solution solve(String graphName, String strategyName, long timeLimitMillis, int depot,
+                          List<DeliveryPoint> points, int[] vehicleIds, int[] capacities) {
+        timeLimitMillis = Math.min(timeLimitMillis, MAX_LNS_MILLIS);
+        LoadedGraph graph = graphs.get(graphName);
+        if (graph == null) {
+            throw new IllegalArgumentException("No graph named '" + graphName + "'");
+        }
+        int vertices = graph.base.getGraph().getVertices();
+        for (DeliveryPoint dp : points) {
+            if (dp.getId() < 0 || dp.getId() >= vertices) {
+                throw new IllegalArgumentException("Delivery point " + dp.getId() + " is not a vertex");
+            }
+            if (dp.getDemand() < 0) {
+                throw new IllegalArgumentException("Delivery point " + dp.getId() + " has negative demand");
+            }
+        }
+        ProblemSnapshot problem = graph.base.withDeliveries(depot, points, vehicleIds, capacities);
+        String key = strategyName.equals("lns") ? "lns:" + timeLimitMillis : strategyName;
+        Supplier<RoutingStrategy> strategy = strategyFor(strategyName, timeLimitMillis);
+        CompletableFuture<Solution> result;
+        if (points.size() <= smallRequestStops) {
+            SolveBatcher batcher = graph.batchers.computeIfAbsent(key, k -> new SolveBatcher(strategy, maxBatch,
+                    batchWindowMicros, solveThreads, timer, solvers, batches, batchedRequests));
+            result = batcher.submit(problem);
+        } else {
+            result = CompletableFuture.supplyAsync(() -> solveAlone(problem, strategy.get()), solvers);
+        }
+        Solution solution;
+        try {
+            solution = result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        if (solution.isFeasible() && hasUnreachableLeg(solution, problem.getDistanceOracle())) {
+            return Solution.infeasible(solution.getStrategy(), vehicleIds,
+                    "some stops are unreachable from the depot", solution.getSolveNanos());
+        }
+        return solution;
+    }
+
+    public LatencyHistogram getLatency(String endpoint) {
+        return latencies.computeIfAbsent(endpoint, e -> new LatencyHistogram());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+        timer.shutdownNow();
+        solvers.shutdownNow();
+        try {
+            solvers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Solution solveAlone(ProblemSnapshot problem, RoutingStrategy strategy) {
+        long start = System.nanoTime();
+        SmartRouteOptimization system = SmartRouteOptimization.fromSnapshot(problem);
+        int[] ids = new int[problem.getVehicleCount()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = problem.getVehicleId(i);
+        }
+        try {
+            if (ids.length == 0) {
+                throw new IllegalStateException("No vehicles added");
+            }
+            strategy.solve(system);
+        } catch (IllegalStateException e) {
+            return Solution.infeasible(strategy.getName(), ids, e.getMessage(), System.nanoTime() - start);
+        }
+        return system.toSolution(strategy.getName(), System.nanoTime() - start);
+    }
+
+    private static boolean hasUnreachableLeg(Solution solution, DistanceOracle distances) {
+        for (int v = 0; v < solution.getVehicleCount(); v++) {
+            int[] route = solution.getRoute(v);
+            for (int i = 1; i < route.length; i++) {
+                if (distances.getDistance(route[i - 1], route[i]) >= DistanceOracle.INFINITY) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Supplier<RoutingStrategy> strategyFor(String name, long timeLimitMillis) {
+        switch (name) {
+            case "tw":
+                return TimeWindowInsertionStrategy::new;
+            case "nn":
+                return NearestNeighbourStrategy::new;
+            case "cw":
+                return ClarkeWrightStrategy::new;
+            case "cl":
+                return ClusterFirstStrategy::new;
+            case "lns":
+                return () -> {
+                    LnsStrategy lns = new LnsStrategy();
+                    lns.setTimeBudgetMillis(timeLimitMillis);
+                    lns.setWorkers(1);
+                    return lns;
+                };
+            default:
+                throw new IllegalArgumentException("Unknown strategy '" + name + "', expected tw, nn, cw, cl or lns");
+        }
+    }
+
+    private interface Endpoint {
+        // Returns the latency bucket the request counts towards
+        String serve(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) {
+        long start = System.nanoTime();
+        String bucket = "errors";
+        try {
+            bucket = endpoint.serve(exchange);
+        } catch (HttpError e) {
+            send(exchange, e.status, Payloads.JSON, Payloads.error(e.getMessage()));
+        } catch (IllegalArgumentException | IOException e) {
+            send(exchange, 400, Payloads.JSON, Payloads.error(e.getMessage()));
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Request " + exchange.getRequestURI() + " failed", e);
+            send(exchange, 500, Payloads.JSON, Payloads.error(String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+            getLatency(bucket).record(System.nanoTime() - start);
+        }
+    }
+
+    private String graphs(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/graphs".length()).split("/");
+        // path[0] is empty: the part before the leading slash
+        if (path.length <= 1) {
+            requireMethod(method, "GET");
+            send(exchange, 200, Payloads.JSON, listGraphs());
+            return "graphs";
+        }
+        String name = URLDecoder.decode(path[1], StandardCharsets.UTF_8);
+        if (path.length == 3 && path[2].equals("solve")) {
+            requireMethod(method, "POST");
+            solve(exchange, name);
+            return "solve";
+        }
+        if (path.length != 2) {
+            throw new HttpError(404, "No such resource " + exchange.getRequestURI().getPath());
+        }
+        if (method.equals("PUT")) {
+            Map<String, String> query = query(exchange);
+            Payloads.Edges edges = Payloads.readGraph(exchange.getRequestBody().readAllBytes(), isBinary(exchange));
+            if (query.containsKey("vertices")) {
+                edges.vertices = parseInt(query.get("vertices"), "vertices");
+                if (edges.vertices < 0) {
+                    throw new IllegalArgumentException("vertices cannot be negative");
+                }
+            }
+            if (edges.vertexCount() > MAX_VERTICES) {
+                throw new IllegalArgumentException(String.format("Graph has %d vertices, at most %d are served",
+                        edges.vertexCount(), MAX_VERTICES));
+            }
+            for (int i = 0; i < edges.count; i++) {
+                if (edges.w[i] < 0 || edges.w[i] >= DistanceOracle.INFINITY) {
+                    throw new IllegalArgumentException(String.format("Bad weight %d for edge %d-%d",
+                            edges.w[i], edges.u[i], edges.v[i]));
+                }
+            }
+            GraphBuilder graph = new GraphBuilder(edges.vertexCount(), edges.count);
+            graph.addEdges(Arrays.copyOf(edges.u, edges.count), Arrays.copyOf(edges.v, edges.count),
+                    Arrays.copyOf(edges.w, edges.count));
+            loadGraph(name, graph, query.get("distances"));
+            LoadedGraph loaded = graphs.get(name);
+            send(exchange, 201, Payloads.JSON, describe(name, loaded).getBytes(StandardCharsets.UTF_8));
+        } else if (method.equals("DELETE")) {
+            if (!unloadGraph(name)) {
+                throw new HttpError(404, "No graph named '" + name + "'");
+            }
+            exchange.sendResponseHeaders(204, -1);
+        } else {
+            requireMethod(method, "GET");
+            LoadedGraph loaded = graphs.get(name);
+            if (loaded == null) {
+                throw new HttpError(404, "No graph named '" + name + "'");
+            }
+            send(exchange, 200, Payloads.JSON, describe(name, loaded).getBytes(StandardCharsets.UTF_8));
+        }
+        return "graphs";
+    }
+
+    private void solve(HttpExchange exchange, String graphName) throws IOException {
+        if (!graphs.containsKey(graphName)) {
+            throw new HttpError(404, "No graph named '" + graphName + "'");
+        }
+        Map<String, String> query = query(exchange);
+        String strategy = query.getOrDefault("strategy", "cw");
+        long timeLimitMillis = DEFAULT_LNS_MILLIS;
+        if (query.containsKey("time-limit")) {
+            try {
+                timeLimitMillis = Math.round(Double.parseDouble(query.get("time-limit")) * 1000);
+            } catch (NumberFormatException e) {
+                timeLimitMillis = -1;
+            }
+            if (timeLimitMillis < 0) {
+                throw new IllegalArgumentException("time-limit needs a number of seconds");
+            }
+        }
+        boolean binary = isBinary(exchange);
+        Payloads.SolveRequest request = Payloads.readSolve(exchange.getRequestBody().readAllBytes(), binary);
+        Solution solution = solve(graphName, strategy, timeLimitMillis, request.depot, request.points,
+                request.vehicleIds, request.capacities);
+        if (!solution.isFeasible()) {
+            send(exchange, 422, Payloads.JSON, Payloads.error("Infeasible: " + solution.getFailure()));
+            return;
+        }
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (binary || (accept != null && accept.startsWith(Payloads.BINARY))) {
+            send(exchange, 200, Payloads.BINARY, Payloads.writePlanBinary(solution));
+        } else {
+            send(exchange, 200, Payloads.JSON, Payloads.writePlanJson(solution));
+        }
+    }
+
+    // {"graphs": n, "batches": b, "batchedRequests": r, "latency": {"solve": {...}, ...}}
+    private String stats(HttpExchange exchange) throws IOException {
+        requireMethod(exchange.getRequestMethod(), "GET");
+        StringBuilder json = new StringBuilder("{\n  \"graphs\": ").append(graphs.size())
+                .append(",\n  \"batches\": ").append(batches.sum())
+                .append(",\n  \"batchedRequests\": ").append(batchedRequests.sum())
+                .append(",\n  \"latency\": {");
+        List<Map.Entry<String, LatencyHistogram>> entries = new ArrayList<>(new TreeMap<>(latencies).entrySet());
+        for (int i = 0; i < entries.size(); i++) {
+            LatencyHistogram latency = entries.get(i).getValue();
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    \"").append(Payloads.escape(entries.get(i).getKey())).append("\": {")
+                    .append("\"count\": ").append(latency.getCount())
+                    .append(", \"meanMillis\": ").append(String.format("%.3f", latency.getMeanMillis()))
+                    .append(", \"p50Millis\": ").append(String.format("%.3f", latency.getPercentileMillis(0.50)))
+                    .append(", \"p99Millis\": ").append(String.format("%.3f", latency.getPercentileMillis(0.99)))
+                    .append(", \"maxMillis\": ").append(String.format("%.3f", latency.getMaxMillis()))
+                    .append('}');
+        }
+        json.append(entries.isEmpty() ? "}\n}\n" : "\n  }\n}\n");
+        send(exchange, 200, Payloads.JSON, json.toString().getBytes(StandardCharsets.UTF_8));
+        return "stats";
+    }
+
+    private byte[] listGraphs() {
+        List<String> names = new ArrayList<>(new TreeMap<>(graphs).keySet());
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < names.size(); i++) {
+            json.append(i == 0 ? "\n  " : ",\n  ").append(describe(names.get(i), graphs.get(names.get(i))));
+        }
+        return json.append(names.isEmpty() ? "]\n" : "\n]\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String describe(String name, LoadedGraph graph) {
+        if (graph == null) {
+            return "null"; // unloaded meanwhile
+        }
+        return String.format("{\"name\": \"%s\", \"vertices\": %d, \"edges\": %d, \"distances\": \"%s\"}",
+                Payloads.escape(name), graph.base.getGraph().getVertices(), graph.edges, graph.distances);
+    }
+
+    private static boolean isBinary(HttpExchange exchange) {
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        return type != null && type.startsWith(Payloads.BINARY);
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new HttpError(405, "Method " + method + " not allowed here");
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static int parseInt(String value, String what) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(what + " needs an integer, got '" + value + "'");
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            LOG.fine("Client went away: " + e.getMessage());
+        }
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class LoadedGraph {
+        final ProblemSnapshot base;
+        final String distances;
+        final int edges;
+        // One batcher per strategy (and time limit for lns)
+        final Map<String, SolveBatcher> batchers = new ConcurrentHashMap<>();
+
+        LoadedGraph(ProblemSnapshot base, String distances, int edges) {
+            this.base = base;
+            this.distances = distances;
+            this.edges = edges;
+        }
+    }
+
+    // A failure with its own status code
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
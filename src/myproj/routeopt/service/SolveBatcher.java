@@ -0,0 +1,211 @@
+package myproj.routeopt.service;
+
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.ProblemSnapshot;
+import myproj.routeopt.model.Solution;
+import myproj.routeopt.solver.RoutingStrategy;
+import myproj.routeopt.solver.ScenarioRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Micro-batches small solves against one graph with one strategy. The first
+// request of a batch opens a window; everything that arrives within it, up
+// to maxBatch requests, is split into at most parallelism parts, and each part
+// is solved by one ScenarioRunner call on a thread of the solver pool itself
+// (no pool of its own). Batched requests share the graph's distance oracle
+// (and its cache), and requests with the same depot and stops are kept in one
+// part where they fit and share candidate lists there, so a burst of what-if
+// fleets for one day costs one neighbour search per part.
+final class SolveBatcher {
+    private final Supplier<RoutingStrategy> strategy;
+    private final int maxBatch;
+    private final long windowMicros;
+    private final int parallelism;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService solvers;
+    private final LongAdder batches;
+    private final LongAdder batchedRequests;
+
+    private List<Pending> pending = new ArrayList<>();
+
+    SolveBatcher(Supplier<RoutingStrategy> strategy, int maxBatch, long windowMicros, int parallelism,
+                 ScheduledExecutorService timer, ExecutorService solvers, LongAdder batches,
+                 LongAdder batchedRequests) {
+        this.strategy = strategy;
+        this.maxBatch = maxBatch;
+        this.windowMicros = windowMicros;
+        this.parallelism = parallelism;
+        this.timer = timer;
+        this.solvers = solvers;
+        this.batches = batches;
+        this.batchedRequests = batchedRequests;
+    }
+
+    CompletableFuture<Solution> submit(ProblemSnapshot problem) {
+        Pending request = new Pending(problem);
+        List<Pending> full = null;
+        boolean opened;
+        synchronized (this) {
+            opened = pending.isEmpty();
+            pending.add(request);
+            if (pending.size() >= maxBatch) {
+                full = take();
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        } else if (opened) {
+            timer.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+        }
+        return request.result;
+    }
+
+    // Called when the window closes; a batch that already filled up has been sent
+    private void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = take();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private List<Pending> take() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void dispatch(List<Pending> batch) {
+        batches.increment();
+        batchedRequests.add(batch.size());
+        for (List<Pending> part : split(batch)) {
+            solvers.execute(() -> solve(part));
+        }
+    }
+
+    // Runs on a solver thread
+    private void solve(List<Pending> part) {
+        try {
+            ScenarioRunner runner = new ScenarioRunner(strategy);
+            runner.setParallelism(1);
+            List<Solution> solutions = runner.solveAll(shareDeliveries(part));
+            for (int i = 0; i < part.size(); i++) {
+                part.get(i).result.complete(solutions.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (Pending request : part) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // At most parallelism parts of similar size. Requests with the same stops
+    // are cut into pieces of at most one part's share, and the pieces go,
+    // largest first, to the part with the fewest requests so far.
+    private List<List<Pending>> split(List<Pending> batch) {
+        int parts = Math.min(parallelism, batch.size());
+        int share = (batch.size() + parts - 1) / parts;
+        Map<StopsKey, List<Pending>> groups = new LinkedHashMap<>();
+        for (Pending request : batch) {
+            groups.computeIfAbsent(new StopsKey(request.problem), key -> new ArrayList<>()).add(request);
+        }
+        List<List<Pending>> pieces = new ArrayList<>();
+        for (List<Pending> group : groups.values()) {
+            for (int from = 0; from < group.size(); from += share) {
+                pieces.add(group.subList(from, Math.min(from + share, group.size())));
+            }
+        }
+        pieces.sort(Comparator.comparingInt((List<Pending> piece) -> piece.size()).reversed());
+        List<List<Pending>> result = new ArrayList<>();
+        for (int i = 0; i < parts; i++) {
+            result.add(new ArrayList<>());
+        }
+        for (List<Pending> piece : pieces) {
+            List<Pending> smallest = result.get(0);
+            for (List<Pending> part : result) {
+                if (part.size() < smallest.size()) {
+                    smallest = part;
+                }
+            }
+            smallest.addAll(piece);
+        }
+        result.removeIf(List::isEmpty);
+        return result;
+    }
+
+    // Requests with the same depot and stops in the same order are rebased on
+    // the first of them, so ScenarioRunner sees one stop list and builds its
+    // candidate lists once
+    private static List<ProblemSnapshot> shareDeliveries(List<Pending> batch) {
+        Map<StopsKey, ProblemSnapshot> first = new HashMap<>();
+        List<ProblemSnapshot> problems = new ArrayList<>(batch.size());
+        for (Pending request : batch) {
+            ProblemSnapshot problem = request.problem;
+            ProblemSnapshot base = first.putIfAbsent(new StopsKey(problem), problem);
+            if (base != null) {
+                int[] ids = new int[problem.getVehicleCount()];
+                int[] capacities = new int[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = problem.getVehicleId(i);
+                    capacities[i] = problem.getCapacity(i);
+                }
+                problem = base.withFleet(ids, capacities);
+            }
+            problems.add(problem);
+        }
+        return problems;
+    }
+
+    private static final class Pending {
+        final ProblemSnapshot problem;
+        final CompletableFuture<Solution> result = new CompletableFuture<>();
+
+        Pending(ProblemSnapshot problem) {
+            this.problem = problem;
+        }
+    }
+
+    // Depot, then id, demand and time window of every stop
+    private static final class StopsKey {
+        final int[] values;
+        final int hash;
+
+        StopsKey(ProblemSnapshot problem) {
+            List<DeliveryPoint> points = problem.getDeliveryPoints();
+            values = new int[1 + 4 * points.size()];
+            values[0] = problem.getDepot();
+            for (int i = 0; i < points.size(); i++) {
+                DeliveryPoint dp = points.get(i);
+                values[1 + 4 * i] = dp.getId();
+                values[2 + 4 * i] = dp.getDemand();
+                values[3 + 4 * i] = dp.getTimeWindowStart();
+                values[4 + 4 * i] = dp.getTimeWindowEnd();
+            }
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StopsKey && Arrays.equals(values, ((StopsKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
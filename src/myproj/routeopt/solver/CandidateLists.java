@@ -0,0 +1,212 @@
+package myproj.routeopt.solver;
+
+import myproj.routeopt.model.ContractionHierarchy;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.LazyDistanceOracle;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// For every node of interest (delivery locations and the depot) the k nearest
+// other nodes, sorted by distance. Rows are stored back to back in primitive
+// arrays: the candidates of node u are at slot(u) * k until slot(u) * k + k.
+public class CandidateLists {
+    private final int k;
+    private final int[] slotOf;
+    private final int[] nodes;
+    private final int[] candidates;
+    private final int[] candidateDistances;
+
+    private CandidateLists(int k, int[] slotOf, int[] nodes, int[] candidates, int[] candidateDistances) {
+        this.k = k;
+        this.slotOf = slotOf;
+        this.nodes = nodes;
+        this.candidates = candidates;
+        this.candidateDistances = candidateDistances;
+    }
+
+    // Rows are independent, so they are built in parallel. With a LazyDistanceOracle
+    // each row is one graph search that stops at the k-th nearest node, instead of
+    // a search per pair of nodes. With a ContractionHierarchy each row is one
+    // upward search against buckets filled once for all nodes.
+    public static CandidateLists build(DistanceOracle distances, int[] nodes, int k) {
+        int[] unique = Arrays.stream(nodes).distinct().toArray();
+        int rowLength = Math.max(0, Math.min(k, unique.length - 1));
+        int[] slotOf = new int[distances.getVertices()];
+        Arrays.fill(slotOf, -1);
+        for (int i = 0; i < unique.length; i++) {
+            slotOf[unique[i]] = i;
+        }
+        int[] candidates = new int[unique.length * rowLength];
+        int[] candidateDistances = new int[unique.length * rowLength];
+        if (rowLength > 0 && distances instanceof LazyDistanceOracle) {
+            LazyDistanceOracle lazy = (LazyDistanceOracle) distances;
+            boolean[] isNode = new boolean[distances.getVertices()];
+            for (int node : unique) {
+                isNode[node] = true;
+            }
+            IntStream.range(0, unique.length).parallel().forEach(slot ->
+                    searchRow(lazy, isNode, unique, slot, rowLength, candidates, candidateDistances));
+        } else if (rowLength > 0 && distances instanceof ContractionHierarchy) {
+            ContractionHierarchy.TargetIndex index = ((ContractionHierarchy) distances).indexTargets(unique);
+            IntStream.range(0, unique.length).parallel().forEach(slot -> {
+                int[] row = new int[unique.length];
+                index.distancesFrom(unique[slot], row);
+                selectRow(row, unique, slot, rowLength, candidates, candidateDistances);
+            });
+        } else if (rowLength > 0) {
+            IntStream.range(0, unique.length).parallel().forEach(slot ->
+                    fillRow(distances, unique, slot, rowLength, candidates, candidateDistances));
+        }
+        return new CandidateLists(rowLength, slotOf, unique, candidates, candidateDistances);
+    }
+
+    // The same neighbours with their distances read again from distances and
+    // each row re-sorted, for after edge weights change. The improver trusts
+    // these distances, so they must be exact, while the neighbour sets only
+    // steer the search and can stay a little off until the next full build.
+    public CandidateLists rescore(DistanceOracle distances) {
+        int[] ids = candidates.clone();
+        int[] dists = new int[candidateDistances.length];
+        IntStream.range(0, nodes.length).parallel().forEach(slot -> {
+            int u = nodes[slot];
+            int base = slot * k;
+            for (int i = base; i < base + k; i++) {
+                int v = ids[i];
+                int d = distances.getDistance(u, v);
+                int j = i;
+                for (; j > base && dists[j - 1] > d; j--) {
+                    ids[j] = ids[j - 1];
+                    dists[j] = dists[j - 1];
+                }
+                ids[j] = v;
+                dists[j] = d;
+            }
+        });
+        return new CandidateLists(k, slotOf, nodes, ids, dists);
+    }
+
+    // Row from a truncated search; nodes it could not reach fill the rest at INFINITY
+    private static void searchRow(LazyDistanceOracle distances, boolean[] isNode, int[] nodes, int slot, int k,
+                                  int[] candidates, int[] candidateDistances) {
+        int u = nodes[slot];
+        int base = slot * k;
+        int[] ids = new int[k];
+        int[] dists = new int[k];
+        int found = distances.nearestTargets(u, v -> isNode[v], k, ids, dists);
+        System.arraycopy(ids, 0, candidates, base, found);
+        System.arraycopy(dists, 0, candidateDistances, base, found);
+        for (int i = 0; found < k && i < nodes.length; i++) {
+            int v = nodes[i];
+            if (v != u && !contains(candidates, base, found, v)) {
+                candidates[base + found] = v;
+                candidateDistances[base + found++] = DistanceOracle.INFINITY;
+            }
+        }
+    }
+
+    private static boolean contains(int[] ids, int from, int length, int v) {
+        for (int i = from; i < from + length; i++) {
+            if (ids[i] == v) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void fillRow(DistanceOracle distances, int[] nodes, int slot, int k,
+                                int[] candidates, int[] candidateDistances) {
+        int u = nodes[slot];
+        int[] row = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            row[i] = distances.getDistance(u, nodes[i]);
+        }
+        selectRow(row, nodes, slot, k, candidates, candidateDistances);
+    }
+
+    // Keeps the k best of row (distances to nodes) in a bounded max-heap, then sorts them ascending
+    private static void selectRow(int[] row, int[] nodes, int slot, int k,
+                                  int[] candidates, int[] candidateDistances) {
+        int u = nodes[slot];
+        int base = slot * k;
+        int size = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            int v = nodes[i];
+            if (v == u) {
+                continue;
+            }
+            int d = row[i];
+            if (size < k) {
+                candidates[base + size] = v;
+                candidateDistances[base + size] = d;
+                siftUp(candidates, candidateDistances, base, size++);
+            } else if (d < candidateDistances[base]) {
+                candidates[base] = v;
+                candidateDistances[base] = d;
+                siftDown(candidates, candidateDistances, base, k);
+            }
+        }
+        // Heap sort in place: repeatedly move the farthest to the end
+        for (int end = k - 1; end > 0; end--) {
+            swap(candidates, candidateDistances, base, base + end);
+            siftDown(candidates, candidateDistances, base, end);
+        }
+    }
+
+    private static void siftUp(int[] ids, int[] dist, int base, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (dist[base + parent] >= dist[base + i]) {
+                break;
+            }
+            swap(ids, dist, base + parent, base + i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] ids, int[] dist, int base, int size) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && dist[base + child + 1] > dist[base + child]) {
+                child++;
+            }
+            if (dist[base + i] >= dist[base + child]) {
+                break;
+            }
+            swap(ids, dist, base + i, base + child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] ids, int[] dist, int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        int d = dist[a];
+        dist[a] = dist[b];
+        dist[b] = d;
+    }
+
+    // Candidates per node; shorter than requested when there are few nodes
+    public int getK() { return k; }
+
+    public boolean contains(int node) {
+        return node >= 0 && node < slotOf.length && slotOf[node] >= 0;
+    }
+
+    // First index into getCandidate for node, -1 if node has no row
+    public int rowStart(int node) {
+        int slot = slotOf[node];
+        return slot < 0 ? -1 : slot * k;
+    }
+
+    public int getCandidate(int index) { return candidates[index]; }
+
+    public int getCandidateDistance(int index) { return candidateDistances[index]; }
+
+    public int[] getNodes() { return nodes.clone(); }
+}
@@ -0,0 +1,52 @@
+package myproj.routeopt.solver;
+
+import java.util.TreeSet;
+
+// Vehicles ordered by remaining capacity, so both packing rules are O(log m):
+// worst fit takes the vehicle with the most room left, best fit the one with
+// the least room that still fits. Ties go to the lower vehicle index, which
+// matches the order the old linear scan picked. Each entry is packed as
+// remaining << 32 | index.
+public class CapacityIndex {
+    private final TreeSet<Long> entries = new TreeSet<>();
+    private final int[] remaining;
+
+    public CapacityIndex(int[] capacities) {
+        remaining = capacities.clone();
+        for (int i = 0; i < remaining.length; i++) {
+            entries.add(key(remaining[i], i));
+        }
+    }
+
+    // Vehicle index with the largest remaining capacity of at least demand, or -1
+    public int worstFit(int demand) {
+        if (entries.isEmpty()) {
+            return -1;
+        }
+        int most = (int) (entries.last() >>> 32);
+        if (most < demand) {
+            return -1;
+        }
+        return (int) (long) entries.ceiling(key(most, 0));
+    }
+
+    // Vehicle index with the smallest remaining capacity of at least demand, or -1
+    public int bestFit(int demand) {
+        Long entry = entries.ceiling(key(demand, 0));
+        return entry == null ? -1 : (int) (long) entry;
+    }
+
+    public void consume(int index, int demand) {
+        entries.remove(key(remaining[index], index));
+        remaining[index] -= demand;
+        entries.add(key(remaining[index], index));
+    }
+
+    public int getRemaining(int index) {
+        return remaining[index];
+    }
+
+    private static long key(int remaining, int index) {
+        return ((long) remaining << 32) | index;
+    }
+}
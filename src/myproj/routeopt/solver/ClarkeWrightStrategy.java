@@ -0,0 +1,465 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.metrics.SolverMetrics;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Clarke-Wright parallel savings: every stop starts on its own depot-stop-depot
+// route and routes are joined end to end in order of the saving
+//   s(i, j) = d(depot, i) + d(depot, j) - d(i, j)
+// as long as the joined load fits the largest vehicle. Assignment and routing
+// are decided together, so nearby stops end up on the same truck.
+//
+// Savings are only generated for candidate-list neighbours (k per stop rather
+// than n^2 pairs), computed and sorted in parallel as packed longs. If that
+// leaves more routes than vehicles, a second round looks at every pair of
+// route ends. A merge must also leave the routes packable into the fleet: for
+// every vehicle size, no more routes may need at least that size than there
+// are such vehicles. Routes are then matched to vehicles largest load first;
+// stops of routes left without a vehicle are inserted where there is room.
+// The result goes through the usual local search.
+public class ClarkeWrightStrategy implements RoutingStrategy {
+    private static final int DEPOT_SIDE = -1;
+
+    private DistanceOracle distances;
+    private int depot;
+    private int[] demand;
+    private boolean[] isStop;
+    // Each stop is a path node with two neighbour slots; DEPOT_SIDE marks a route end
+    private int[] left;
+    private int[] right;
+    // Union-find over stops, with the route load kept at the root
+    private int[] parent;
+    private int[] routeLoad;
+    private int maxCapacity;
+    private int routeCount;
+    // Distinct vehicle capacities, largest first, and how many vehicles have at least each
+    private int[] levels;
+    private int[] vehiclesAtLeast;
+    // routesAbove[t]: routes heavier than levels[t + 1], which need a vehicle of levels[t] or more
+    private int[] routesAbove;
+    private SolveControl control;
+    private SolverMetrics metrics;
+
+    @Override
+    public String getName() {
+        return "Clarke-Wright savings";
+    }
+
+    @Override
+    public void solve(SmartRouteOptimization system) {
+        List<DeliveryPoint> deliveryPoints = system.getDeliveryPoints();
+        List<Vehicle> vehicles = system.getVehicles();
+        if (deliveryPoints.isEmpty()) {
+            throw new IllegalStateException("No delivery points added");
+        }
+        if (vehicles.isEmpty()) {
+            throw new IllegalStateException("No vehicles added");
+        }
+        if (!system.validateCapacity()) {
+            throw new IllegalStateException("Total vehicle capacity insufficient for total demand");
+        }
+        control = system.getSolveControl();
+        metrics = system.getMetrics();
+        distances = metrics.meter(system.getDistanceOracle());
+        depot = system.getDepotLocation();
+        maxCapacity = vehicles.stream().mapToInt(Vehicle::getCapacity).max().orElse(0);
+
+        int n = distances.getVertices();
+        demand = new int[n];
+        for (DeliveryPoint dp : deliveryPoints) {
+            demand[dp.getId()] += dp.getDemand();
+        }
+        int[] stops = deliveryPoints.stream().mapToInt(DeliveryPoint::getId).distinct().toArray();
+        for (int stop : stops) {
+            if (demand[stop] > maxCapacity) {
+                throw new IllegalStateException(String.format(
+                        "Delivery point %d (demand: %d) does not fit in any vehicle", stop, demand[stop]));
+            }
+        }
+
+        left = new int[n];
+        right = new int[n];
+        parent = new int[n];
+        routeLoad = new int[n];
+        isStop = new boolean[n];
+        for (int stop : stops) {
+            isStop[stop] = true;
+            left[stop] = DEPOT_SIDE;
+            right[stop] = DEPOT_SIDE;
+            parent[stop] = stop;
+            routeLoad[stop] = demand[stop];
+        }
+        routeCount = stops.length;
+        buildFleetProfile(vehicles, stops);
+
+        CandidateLists candidates = system.getCandidateLists();
+        SolverMetrics.Phase savingsPhase = metrics.startPhase("savings");
+        try {
+            mergeInOrder(buildCandidateSavings(stops, candidates), "Merging savings");
+            if (routeCount > vehicles.size()) {
+                control.checkCancelled();
+                mergeInOrder(buildEndpointSavings(stops), "Merging route ends");
+            }
+
+            control.checkCancelled();
+            List<int[]> routes = extractRoutes(stops);
+            assignToVehicles(routes, vehicles);
+        } finally {
+            savingsPhase.close();
+        }
+        control.offerRoutes(() -> {
+            List<int[]> snapshot = new ArrayList<>();
+            for (Vehicle vehicle : vehicles) {
+                snapshot.add(vehicle.getRouteArray());
+            }
+            return snapshot;
+        });
+        system.improveRoutes();
+    }
+
+    // Savings to the k nearest neighbours of each stop, one row per stop in parallel.
+    // A pair can appear twice (i near j and j near i); the second one is skipped
+    // when merging because both ends are then on the same route.
+    private Savings buildCandidateSavings(int[] stops, CandidateLists candidates) {
+        int k = candidates.getK();
+        Savings savings = new Savings(stops.length * k);
+        IntStream.range(0, stops.length).parallel().forEach(row -> {
+            int i = stops[row];
+            int start = candidates.rowStart(i);
+            if (start < 0) {
+                return;
+            }
+            for (int c = 0; c < k; c++) {
+                int j = candidates.getCandidate(start + c);
+                if (j != depot && isStop[j]) {
+                    savings.set(row * k + c, i, j, saving(i, j));
+                }
+            }
+        });
+        metrics.add(SolverMetrics.Counter.SAVINGS_EVALUATED, savings.keys.length);
+        savings.sort();
+        return savings;
+    }
+
+    // Savings between every pair of route ends left after the candidate round
+    private Savings buildEndpointSavings(int[] stops) {
+        int[] ends = Arrays.stream(stops)
+                .filter(s -> left[s] == DEPOT_SIDE || right[s] == DEPOT_SIDE)
+                .toArray();
+        int m = ends.length;
+        long pairs = (long) m * (m - 1) / 2;
+        if (pairs > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many unmerged routes for a full savings pass: " + m);
+        }
+        Savings savings = new Savings((int) pairs);
+        IntStream.range(0, m).parallel().forEach(a -> {
+            // The pairs (a, b > a) occupy one contiguous block
+            int slot = (int) ((long) a * (2L * m - a - 1) / 2);
+            for (int b = a + 1; b < m; b++, slot++) {
+                savings.set(slot, ends[a], ends[b], saving(ends[a], ends[b]));
+            }
+        });
+        metrics.add(SolverMetrics.Counter.SAVINGS_EVALUATED, savings.keys.length);
+        savings.sort();
+        return savings;
+    }
+
+    // Walks the sorted savings from the largest down and joins route ends
+    private void mergeInOrder(Savings savings, String phase) {
+        long[] keys = savings.keys;
+        int routesBefore = routeCount;
+        for (int s = keys.length - 1; s >= 0 && keys[s] != Long.MIN_VALUE; s--) {
+            if ((s & 4095) == 0) {
+                control.checkCancelled();
+                control.progress(phase, 1 - (double) s / keys.length);
+            }
+            int slot = (int) keys[s];
+            int i = savings.from[slot];
+            int j = savings.to[slot];
+            if (!isRouteEnd(i) || !isRouteEnd(j)) {
+                continue;
+            }
+            int ri = find(i);
+            int rj = find(j);
+            if (ri == rj || !fitsFleet(routeLoad[ri], routeLoad[rj])) {
+                continue;
+            }
+            addToProfile(routeLoad[ri], -1);
+            addToProfile(routeLoad[rj], -1);
+            addToProfile(routeLoad[ri] + routeLoad[rj], 1);
+            attach(i, j);
+            attach(j, i);
+            parent[rj] = ri;
+            routeLoad[ri] += routeLoad[rj];
+            routeCount--;
+        }
+        metrics.add(SolverMetrics.Counter.ROUTES_MERGED, routesBefore - routeCount);
+    }
+
+    private void buildFleetProfile(List<Vehicle> vehicles, int[] stops) {
+        levels = vehicles.stream().mapToInt(Vehicle::getCapacity).distinct()
+                .boxed().sorted(Comparator.reverseOrder()).mapToInt(Integer::intValue).toArray();
+        vehiclesAtLeast = new int[levels.length];
+        for (Vehicle vehicle : vehicles) {
+            for (int t = 0; t < levels.length && levels[t] <= vehicle.getCapacity(); t++) {
+                vehiclesAtLeast[t]++;
+            }
+        }
+        routesAbove = new int[levels.length];
+        for (int stop : stops) {
+            addToProfile(demand[stop], 1);
+        }
+    }
+
+    private void addToProfile(int load, int count) {
+        for (int t = 0; t + 1 < levels.length; t++) {
+            if (load > levels[t + 1]) {
+                routesAbove[t] += count;
+            }
+        }
+    }
+
+    // Whether routes with loads a and b can be joined without needing more
+    // vehicles of some size than the fleet has
+    private boolean fitsFleet(int a, int b) {
+        int joined = a + b;
+        if (joined > maxCapacity) {
+            return false;
+        }
+        for (int t = 0; t + 1 < levels.length; t++) {
+            int threshold = levels[t + 1];
+            int change = (joined > threshold ? 1 : 0) - (a > threshold ? 1 : 0) - (b > threshold ? 1 : 0);
+            if (routesAbove[t] + change > vehiclesAtLeast[t]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<int[]> extractRoutes(int[] stops) {
+        List<int[]> routes = new ArrayList<>();
+        boolean[] seen = new boolean[distances.getVertices()];
+        int[] path = new int[stops.length];
+        for (int stop : stops) {
+            if (seen[stop] || !isRouteEnd(stop)) {
+                continue;
+            }
+            int length = 0;
+            int previous = DEPOT_SIDE;
+            int at = stop;
+            while (at != DEPOT_SIDE) {
+                seen[at] = true;
+                path[length++] = at;
+                int next = left[at] == previous ? right[at] : left[at];
+                previous = at;
+                at = next;
+            }
+            routes.add(Arrays.copyOf(path, length));
+        }
+        return routes;
+    }
+
+    // Largest route first into the smallest free vehicle that can carry it. Routes
+    // left over (more routes than vehicles) give up their stops, which are then
+    // inserted, largest demand first, at the cheapest place in a vehicle with room.
+    // If even that fails, all stops are repacked first fit decreasing.
+    private void assignToVehicles(List<int[]> routes, List<Vehicle> vehicles) {
+        routes.sort(Comparator.comparingInt((int[] r) -> loadOf(r)).reversed());
+        List<Vehicle> free = new ArrayList<>(vehicles);
+        free.sort(Comparator.comparingInt(Vehicle::getCapacity));
+        for (Vehicle vehicle : vehicles) {
+            vehicle.clearDeliveries();
+        }
+        List<Integer> leftover = new ArrayList<>();
+        for (int[] route : routes) {
+            int load = loadOf(route);
+            Vehicle chosen = null;
+            for (Vehicle vehicle : free) {
+                if (vehicle.getCapacity() >= load) {
+                    chosen = vehicle;
+                    break;
+                }
+            }
+            if (chosen == null) {
+                for (int stop : route) {
+                    leftover.add(stop);
+                }
+                continue;
+            }
+            free.remove(chosen);
+            int[] stops = new int[route.length + 2];
+            stops[0] = depot;
+            for (int i = 0; i < route.length; i++) {
+                chosen.addDelivery(route[i], demand[route[i]]);
+                stops[i + 1] = route[i];
+            }
+            stops[stops.length - 1] = depot;
+            chosen.setRoute(stops, stops.length);
+        }
+        for (Vehicle vehicle : free) {
+            vehicle.setRoute(new int[]{depot, depot}, 2);
+        }
+        if (!leftover.isEmpty()) {
+            metrics.add(SolverMetrics.Counter.STOPS_INSERTED, leftover.size());
+            leftover.sort(Comparator.comparingInt((Integer stop) -> demand[stop]).reversed());
+            for (int stop : leftover) {
+                if (!insertCheapest(stop, vehicles)) {
+                    repack(routes, vehicles);
+                    return;
+                }
+            }
+        }
+    }
+
+    // First fit decreasing over all stops, largest vehicles first; each vehicle
+    // keeps its stops in savings route order, which the local search then improves
+    private void repack(List<int[]> routes, List<Vehicle> vehicles) {
+        int[] order = new int[distances.getVertices()];
+        List<Integer> stops = new ArrayList<>();
+        for (int[] route : routes) {
+            for (int stop : route) {
+                order[stop] = stops.size();
+                stops.add(stop);
+            }
+        }
+        stops.sort(Comparator.comparingInt((Integer stop) -> demand[stop]).reversed());
+        List<Vehicle> largestFirst = new ArrayList<>(vehicles);
+        largestFirst.sort(Comparator.comparingInt(Vehicle::getCapacity).reversed());
+        for (Vehicle vehicle : vehicles) {
+            vehicle.clearDeliveries();
+        }
+        for (int stop : stops) {
+            Vehicle chosen = null;
+            for (Vehicle vehicle : largestFirst) {
+                if (vehicle.getCapacity() - vehicle.getCurrentLoad() >= demand[stop]) {
+                    chosen = vehicle;
+                    break;
+                }
+            }
+            if (chosen == null) {
+                throw new IllegalStateException(String.format(
+                        "Could not pack delivery point %d (demand: %d) into the fleet", stop, demand[stop]));
+            }
+            chosen.addDelivery(stop, demand[stop]);
+        }
+        for (Vehicle vehicle : vehicles) {
+            int[] ids = vehicle.getDeliveryIds();
+            int[] route = new int[ids.length + 2];
+            route[0] = depot;
+            int[] sorted = Arrays.stream(ids).boxed().sorted(Comparator.comparingInt(stop -> order[stop]))
+                    .mapToInt(Integer::intValue).toArray();
+            System.arraycopy(sorted, 0, route, 1, sorted.length);
+            route[route.length - 1] = depot;
+            vehicle.setRoute(route, route.length);
+        }
+    }
+
+    // Cheapest position in a vehicle with room; false if no vehicle has room
+    private boolean insertCheapest(int stop, List<Vehicle> vehicles) {
+        Vehicle best = null;
+        int bestPosition = -1;
+        long bestCost = Long.MAX_VALUE;
+        for (Vehicle vehicle : vehicles) {
+            if (vehicle.getCapacity() - vehicle.getCurrentLoad() < demand[stop]) {
+                continue;
+            }
+            for (int p = 1; p < vehicle.getRouteSize(); p++) {
+                int a = vehicle.getRouteStop(p - 1);
+                int b = vehicle.getRouteStop(p);
+                long cost = (long) distances.getDistance(a, stop) + distances.getDistance(stop, b)
+                        - distances.getDistance(a, b);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = vehicle;
+                    bestPosition = p;
+                }
+            }
+        }
+        if (best == null) {
+            return false;
+        }
+        int[] current = best.getRouteArray();
+        int[] route = new int[current.length + 1];
+        System.arraycopy(current, 0, route, 0, bestPosition);
+        route[bestPosition] = stop;
+        System.arraycopy(current, bestPosition, route, bestPosition + 1, current.length - bestPosition);
+        best.addDelivery(stop, demand[stop]);
+        best.setRoute(route, route.length);
+        return true;
+    }
+
+    private int loadOf(int[] route) {
+        int load = 0;
+        for (int stop : route) {
+            load += demand[stop];
+        }
+        return load;
+    }
+
+    private long saving(int i, int j) {
+        long dij = distances.getDistance(i, j);
+        long di = distances.getDistance(depot, i);
+        long dj = distances.getDistance(depot, j);
+        if (dij >= DistanceOracle.INFINITY || di >= DistanceOracle.INFINITY || dj >= DistanceOracle.INFINITY) {
+            return 0;
+        }
+        return di + dj - dij;
+    }
+
+    private boolean isRouteEnd(int v) {
+        return left[v] == DEPOT_SIDE || right[v] == DEPOT_SIDE;
+    }
+
+    private void attach(int v, int neighbour) {
+        if (left[v] == DEPOT_SIDE) {
+            left[v] = neighbour;
+        } else {
+            right[v] = neighbour;
+        }
+    }
+
+    private int find(int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    // Pairs with a positive saving, sorted through packed keys: the saving in the
+    // high half so keys order by saving, the pair's slot in the low half.
+    // Slots without a positive saving stay at Long.MIN_VALUE and sort first.
+    private static final class Savings {
+        final long[] keys;
+        final int[] from;
+        final int[] to;
+
+        Savings(int size) {
+            keys = new long[size];
+            from = new int[size];
+            to = new int[size];
+            Arrays.fill(keys, Long.MIN_VALUE);
+        }
+
+        void set(int slot, int i, int j, long saving) {
+            if (saving > 0) {
+                keys[slot] = (Math.min(saving, Integer.MAX_VALUE) << 32) | slot;
+                from[slot] = i;
+                to[slot] = j;
+            }
+        }
+
+        void sort() {
+            Arrays.parallelSort(keys);
+        }
+    }
+}
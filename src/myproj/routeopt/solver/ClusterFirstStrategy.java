@@ -0,0 +1,525 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.metrics.SolverMetrics;
+import myproj.routeopt.model.ContractionHierarchy;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.GraphVoronoi;
+import myproj.routeopt.model.LazyDistanceOracle;
+import myproj.routeopt.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+// Cluster first, route second, for days too large to solve as one problem.
+// Stops are grouped by road distance with k-medoids: the clusters are the graph
+// Voronoi cells of the medoids (GraphVoronoi), and each medoid then moves to
+// the member with the smallest summed distance to a sample of its cell, all
+// cells in parallel, until the medoids settle. Vehicles are handed out largest
+// first to the cluster with the most demand still uncovered, so clusters get
+// capacity in proportion to their demand.
+//
+// Every cluster is solved as its own SmartRouteOptimization with the partition
+// strategy, several at a time, all sharing the read-only graph and distance
+// oracle. A partition whose stops do not fit its vehicles is merged into the
+// partition with the nearest medoid and solved again. A stitching pass then
+// runs the local search over the whole fleet with neighbour lists only for the
+// stops closest to a partition border, so border stops can move to the route
+// on the other side. That search ignores time windows, so when the partition
+// plans meet every window and stitching would break one, it is undone.
+public class ClusterFirstStrategy implements RoutingStrategy {
+    private static final Logger LOG = Logger.getLogger(ClusterFirstStrategy.class.getName());
+
+    // Stops and fewest vehicles per partition when the partition count is automatic;
+    // partitions with only a vehicle or two pack their vehicles badly
+    private static final int DEFAULT_PARTITION_STOPS = 1000;
+    private static final int MIN_PARTITION_VEHICLES = 4;
+    private static final int MAX_ITERATIONS = 8;
+    // Members tried as the new medoid, and members their distances are summed over
+    private static final int MEDOID_CANDIDATES = 16;
+    private static final int MEDOID_SAMPLE = 64;
+
+    private final Supplier<RoutingStrategy> partitionStrategy;
+    private final String name;
+    private int partitionCount;
+    private double boundaryShare = 0.4;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+
+    private SolveControl control;
+    private SolverMetrics metrics;
+    private DistanceOracle distances;
+    private ForkJoinPool pool;
+
+    // Clarke-Wright inside each partition
+    public ClusterFirstStrategy() {
+        this(ClarkeWrightStrategy::new);
+    }
+
+    // Strategies keep state while they solve, so each partition gets a fresh one
+    public ClusterFirstStrategy(Supplier<RoutingStrategy> partitionStrategy) {
+        this.partitionStrategy = partitionStrategy;
+        this.name = "Cluster-first " + partitionStrategy.get().getName();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    // 0 picks one partition per DEFAULT_PARTITION_STOPS stops, with at least
+    // MIN_PARTITION_VEHICLES vehicles each; never more than there are vehicles
+    public void setPartitionCount(int partitionCount) {
+        if (partitionCount < 0) {
+            throw new IllegalArgumentException("Partition count cannot be negative");
+        }
+        this.partitionCount = partitionCount;
+    }
+
+    // Share of stops, closest to a border first, that the stitching pass may move
+    public void setBoundaryShare(double boundaryShare) {
+        if (boundaryShare < 0 || boundaryShare > 1) {
+            throw new IllegalArgumentException("Boundary share must be between 0 and 1");
+        }
+        this.boundaryShare = boundaryShare;
+    }
+
+    // Partitions solved at the same time
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    // Seed for the medoid choices, so a run can be repeated
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void solve(SmartRouteOptimization system) {
+        List<DeliveryPoint> deliveryPoints = system.getDeliveryPoints();
+        List<Vehicle> vehicles = system.getVehicles();
+        if (deliveryPoints.isEmpty()) {
+            throw new IllegalStateException("No delivery points added");
+        }
+        if (vehicles.isEmpty()) {
+            throw new IllegalStateException("No vehicles added");
+        }
+        if (!system.validateCapacity()) {
+            throw new IllegalStateException("Total vehicle capacity insufficient for total demand");
+        }
+        int[] stops = deliveryPoints.stream().mapToInt(DeliveryPoint::getId).distinct().toArray();
+        int k = partitionCount > 0 ? partitionCount
+                : Math.min((stops.length + DEFAULT_PARTITION_STOPS - 1) / DEFAULT_PARTITION_STOPS,
+                        vehicles.size() / MIN_PARTITION_VEHICLES);
+        k = Math.min(k, Math.min(vehicles.size(), stops.length));
+        if (k <= 1) {
+            partitionStrategy.get().solve(system);
+            return;
+        }
+
+        control = system.getSolveControl();
+        metrics = system.getMetrics();
+        distances = system.getDistanceOracle();
+        pool = new ForkJoinPool(parallelism);
+        try {
+            GraphVoronoi cells = new GraphVoronoi(system.getCityGraph());
+            int[] medoids;
+            int iterations;
+            SolverMetrics.Phase clusteringPhase = metrics.startPhase("clustering");
+            try {
+                medoids = seedMedoids(cells, stops, k);
+                iterations = refineMedoids(cells, stops, medoids);
+            } finally {
+                clusteringPhase.close();
+            }
+            List<Partition> partitions = partition(system, cells, medoids);
+            int clusters = partitions.size();
+            SolverMetrics.Phase partitionsPhase = metrics.startPhase("partitions");
+            try {
+                solvePartitions(system, partitions);
+            } finally {
+                partitionsPhase.close();
+            }
+            long saved;
+            SolverMetrics.Phase stitchPhase = metrics.startPhase("stitch");
+            try {
+                saved = stitch(system, cells, stops, partitions, k);
+            } finally {
+                stitchPhase.close();
+            }
+            LOG.info(String.format("Solved %d stops in %d partitions (%d clusters, %d k-medoids iterations), "
+                    + "stitching saved distance %d", stops.length, partitions.size(), clusters, iterations, saved));
+        } finally {
+            pool.shutdown();
+            pool = null;
+        }
+        control.offerRoutes(() -> {
+            List<int[]> snapshot = new ArrayList<>();
+            for (Vehicle vehicle : vehicles) {
+                snapshot.add(vehicle.getRouteArray());
+            }
+            return snapshot;
+        });
+    }
+
+    // k-medoids++: the first medoid at random, then each next one drawn with
+    // probability proportional to its squared distance from the nearest medoid so far
+    private int[] seedMedoids(GraphVoronoi cells, int[] stops, int k) {
+        Random random = new Random(seed);
+        int[] medoids = new int[k];
+        medoids[0] = stops[random.nextInt(stops.length)];
+        cells.clear();
+        cells.addSource(medoids[0], 0);
+        for (int c = 1; c < k; c++) {
+            control.checkCancelled();
+            control.progress("Clustering stops", -1);
+            medoids[c] = drawSeed(cells, stops, random);
+            cells.addSource(medoids[c], c);
+        }
+        return medoids;
+    }
+
+    private static int drawSeed(GraphVoronoi cells, int[] stops, Random random) {
+        double total = 0;
+        for (int stop : stops) {
+            int d = cells.getDistance(stop);
+            if (d >= DistanceOracle.INFINITY) {
+                return stop; // a component no medoid reaches yet
+            }
+            total += (double) d * d;
+        }
+        double target = random.nextDouble() * total;
+        for (int stop : stops) {
+            double d = cells.getDistance(stop);
+            target -= d * d;
+            if (target < 0) {
+                return stop;
+            }
+        }
+        return stops[random.nextInt(stops.length)];
+    }
+
+    // Returns the number of iterations run
+    private int refineMedoids(GraphVoronoi cells, int[] stops, int[] medoids) {
+        int k = medoids.length;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            control.checkCancelled();
+            control.progress("Clustering stops", (double) iteration / MAX_ITERATIONS);
+            int[][] members = members(cells, stops, k);
+            long iterationSeed = seed * 31 + iteration;
+            int[] next = pool.submit(() -> IntStream.range(0, k).parallel()
+                    .map(c -> bestMedoid(members[c], medoids[c], new Random(iterationSeed * k + c)))
+                    .toArray()).join();
+            if (Arrays.equals(next, medoids)) {
+                return iteration + 1;
+            }
+            System.arraycopy(next, 0, medoids, 0, k);
+            cells.assign(medoids);
+        }
+        return MAX_ITERATIONS;
+    }
+
+    private static int[][] members(GraphVoronoi cells, int[] stops, int k) {
+        int[] counts = new int[k];
+        for (int stop : stops) {
+            if (cells.getLabel(stop) >= 0) {
+                counts[cells.getLabel(stop)]++;
+            }
+        }
+        int[][] members = new int[k][];
+        for (int c = 0; c < k; c++) {
+            members[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int stop : stops) {
+            int c = cells.getLabel(stop);
+            if (c >= 0) {
+                members[c][counts[c]++] = stop;
+            }
+        }
+        return members;
+    }
+
+    // The current medoid unless a sampled member is closer to the sampled rest of the cell
+    private int bestMedoid(int[] members, int current, Random random) {
+        if (members.length <= 2) {
+            return current;
+        }
+        int[] sample = sample(members, MEDOID_SAMPLE, random);
+        int best = current;
+        long bestCost = cost(current, sample);
+        for (int candidate : sample(members, MEDOID_CANDIDATES, random)) {
+            long cost = candidate == current ? bestCost : cost(candidate, sample);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private long cost(int medoid, int[] sample) {
+        long total = 0;
+        for (int member : sample) {
+            total += Math.min(distances.getDistance(medoid, member), DistanceOracle.INFINITY);
+        }
+        return total;
+    }
+
+    private static int[] sample(int[] members, int size, Random random) {
+        if (members.length <= size) {
+            return members;
+        }
+        int[] copy = members.clone();
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(copy.length - i);
+            int swap = copy[i];
+            copy[i] = copy[j];
+            copy[j] = swap;
+        }
+        return Arrays.copyOf(copy, size);
+    }
+
+    // One partition per non-empty cell, then vehicles largest first to the
+    // partition with the most demand not yet covered by capacity
+    private List<Partition> partition(SmartRouteOptimization system, GraphVoronoi cells, int[] medoids) {
+        Partition[] byLabel = new Partition[medoids.length];
+        for (int c = 0; c < medoids.length; c++) {
+            byLabel[c] = new Partition(c, medoids[c]);
+        }
+        // Stops no medoid reaches go with the depot, where the routes start anyway
+        int depotLabel = Math.max(0, cells.getLabel(system.getDepotLocation()));
+        for (DeliveryPoint dp : system.getDeliveryPoints()) {
+            int c = cells.getLabel(dp.getId());
+            Partition partition = byLabel[c >= 0 ? c : depotLabel];
+            partition.points.add(dp);
+            partition.demand += dp.getDemand();
+        }
+        List<Partition> partitions = new ArrayList<>();
+        for (Partition partition : byLabel) {
+            if (!partition.points.isEmpty()) {
+                partitions.add(partition);
+            }
+        }
+
+        List<Vehicle> fleet = new ArrayList<>(system.getVehicles());
+        fleet.sort(Comparator.comparingInt(Vehicle::getCapacity).reversed());
+        for (Vehicle vehicle : fleet) {
+            Partition neediest = partitions.get(0);
+            for (Partition partition : partitions) {
+                if (partition.uncovered() > neediest.uncovered()) {
+                    neediest = partition;
+                }
+            }
+            neediest.vehicles.add(vehicle);
+            neediest.capacity += vehicle.getCapacity();
+        }
+        return partitions;
+    }
+
+    // Solves every partition, merging the ones that fail into a neighbour until all succeed
+    private void solvePartitions(SmartRouteOptimization system, List<Partition> partitions) {
+        List<Partition> pending = new ArrayList<>(partitions);
+        while (!pending.isEmpty()) {
+            // Largest first, so the big ones do not start last
+            pending.sort(Comparator.comparingInt((Partition p) -> p.points.size()).reversed());
+            List<Partition> failed = new ArrayList<>();
+            List<IllegalStateException> failures = new ArrayList<>();
+            List<IllegalStateException> results = runAll(system, pending);
+            for (int i = 0; i < pending.size(); i++) {
+                if (results.get(i) != null) {
+                    failed.add(pending.get(i));
+                    failures.add(results.get(i));
+                }
+            }
+
+            pending = new ArrayList<>();
+            for (int i = 0; i < failed.size(); i++) {
+                Partition partition = failed.get(i);
+                if (partitions.size() == 1) {
+                    throw failures.get(i);
+                }
+                partitions.remove(partition);
+                Partition nearest = null;
+                long nearestDistance = Long.MAX_VALUE;
+                for (Partition other : partitions) {
+                    long d = distances.getDistance(partition.medoid, other.medoid);
+                    if (d < nearestDistance) {
+                        nearestDistance = d;
+                        nearest = other;
+                    }
+                }
+                LOG.fine(String.format("Partition of cluster %d failed (%s), merged into cluster %d",
+                        partition.label, failures.get(i).getMessage(), nearest.label));
+                nearest.absorb(partition);
+                if (!pending.contains(nearest)) {
+                    pending.add(nearest);
+                }
+            }
+            pending.removeIf(p -> !partitions.contains(p));
+        }
+
+        for (Partition partition : partitions) {
+            List<Vehicle> solved = partition.solved.getVehicles();
+            for (int i = 0; i < partition.vehicles.size(); i++) {
+                Vehicle vehicle = partition.vehicles.get(i);
+                Vehicle source = solved.get(i);
+                vehicle.clearDeliveries();
+                for (int id : source.getDeliveryIds()) {
+                    vehicle.addDelivery(id, source.getDeliveryLoad(id));
+                }
+                vehicle.setRoute(source.getRouteArray(), source.getRouteSize());
+            }
+        }
+    }
+
+    // Solves the partitions on the pool; the result for a partition is null, or
+    // why it could not be solved with its vehicles
+    private List<IllegalStateException> runAll(SmartRouteOptimization system, List<Partition> pending) {
+        AtomicInteger done = new AtomicInteger();
+        List<Callable<IllegalStateException>> tasks = new ArrayList<>();
+        for (Partition partition : pending) {
+            tasks.add(() -> {
+                IllegalStateException failure = solvePartition(system, partition);
+                control.progress("Solving partitions", (double) done.incrementAndGet() / pending.size());
+                return failure;
+            });
+        }
+        List<IllegalStateException> results = new ArrayList<>();
+        try {
+            for (Future<IllegalStateException> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Partition solve interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new IllegalStateException("Partition solve failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return results;
+    }
+
+    private IllegalStateException solvePartition(SmartRouteOptimization system, Partition partition) {
+        control.checkCancelled();
+        partition.solved = null;
+        SmartRouteOptimization part = new SmartRouteOptimization(system.getCityGraph(), system.getDepotLocation());
+        part.setDistanceOracle(distances);
+        part.setCandidateListSize(system.getCandidateListSize());
+        part.setAssignmentMode(system.getAssignmentMode());
+        part.setRouteParallelism(1);
+        part.setSolveControl(control.child());
+        part.getMetrics().setDistanceCounting(metrics.isDistanceCounting());
+        for (DeliveryPoint dp : partition.points) {
+            part.addDeliveryPoint(dp.getId(), dp.getDemand(), dp.getTimeWindowStart(), dp.getTimeWindowEnd());
+        }
+        for (Vehicle vehicle : partition.vehicles) {
+            part.addVehicle(vehicle.getId(), vehicle.getCapacity());
+        }
+        try {
+            if (partition.vehicles.isEmpty()) {
+                throw new IllegalStateException("No vehicles added");
+            }
+            partitionStrategy.get().solve(part);
+            partition.solved = part;
+            return null;
+        } catch (IllegalStateException e) {
+            return e;
+        } finally {
+            for (SolverMetrics.Counter counter : SolverMetrics.Counter.values()) {
+                metrics.add(counter, part.getMetrics().get(counter));
+            }
+        }
+    }
+
+    // Local search over all routes, starting only from the stops nearest a
+    // border between partitions; returns the distance saved
+    private long stitch(SmartRouteOptimization system, GraphVoronoi cells, int[] stops,
+                        List<Partition> partitions, int k) {
+        int boundaryCount = (int) Math.ceil(boundaryShare * stops.length);
+        if (boundaryCount == 0 || partitions.size() <= 1) {
+            return 0;
+        }
+        control.progress("Stitching partitions", -1);
+        // Cells of one partition form one group; empty cells each get a group of their own
+        int[] group = new int[k];
+        for (int c = 0; c < k; c++) {
+            group[c] = k + c;
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            for (int label : partitions.get(i).labels) {
+                group[label] = i;
+            }
+        }
+        int[] border = cells.distancesToBorder(group);
+        long[] keys = new long[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            keys[i] = ((long) border[stops[i]] << 32) | stops[i];
+        }
+        Arrays.sort(keys);
+        int[] nodes = new int[Math.min(boundaryCount, stops.length) + 1];
+        for (int i = 0; i < nodes.length - 1; i++) {
+            nodes[i] = (int) keys[i];
+        }
+        nodes[nodes.length - 1] = system.getDepotLocation();
+
+        // Passed as is where CandidateLists can search whole rows, as getCandidateLists does
+        DistanceOracle oracle = distances instanceof LazyDistanceOracle || distances instanceof ContractionHierarchy
+                ? distances : metrics.meter(distances);
+        CandidateLists candidates = pool.submit(() ->
+                CandidateLists.build(oracle, nodes, system.getCandidateListSize())).join();
+        RouteImprover improver = new RouteImprover(metrics.meter(distances), candidates, system.getDepotLocation());
+        improver.setSolveControl(control);
+        improver.setMetrics(metrics);
+        return system.improveWithinTimeWindows(improver, system.getVehicles());
+    }
+
+    // One cluster, or several once merged, with the vehicles that serve it
+    private static final class Partition {
+        final int label;
+        final int medoid;
+        final List<Integer> labels = new ArrayList<>();
+        final List<DeliveryPoint> points = new ArrayList<>();
+        final List<Vehicle> vehicles = new ArrayList<>();
+        long demand;
+        long capacity;
+        volatile SmartRouteOptimization solved;
+
+        Partition(int label, int medoid) {
+            this.label = label;
+            this.medoid = medoid;
+            labels.add(label);
+        }
+
+        long uncovered() {
+            return demand - capacity;
+        }
+
+        void absorb(Partition other) {
+            labels.addAll(other.labels);
+            points.addAll(other.points);
+            vehicles.addAll(other.vehicles);
+            demand += other.demand;
+            capacity += other.capacity;
+            solved = null;
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.metrics.SolverMetrics;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// Anytime ruin and recreate (large neighbourhood search) on top of the plan of
+// another strategy. Each iteration cuts a few strings of consecutive stops out
+// of the routes around a random stop and its neighbours, puts the stops back
+// one at a time at the cheapest position whose vehicle still has capacity, and
+// keeps the result under a simulated annealing rule whose temperature falls
+// as the time budget runs out. Insertion positions are taken next to the
+// candidate-list neighbours of a stop, so an iteration costs about the same on
+// 500 or 50,000 stops.
+//
+// Several workers run at once, each with its own seed and its own copy of the
+// plan. They publish improvements to one AtomicReference with compareAndSet,
+// and a worker that has not found a better plan for a while restarts from the
+// shared best. The solve stops when the wall-clock budget (counted from the
+// start, construction included) is used up or the SolveControl is cancelled,
+// and the best plan found is written back. Every plan kept respects the
+// capacity of every vehicle.
+public class LnsStrategy implements RoutingStrategy {
+    private static final Logger LOG = Logger.getLogger(LnsStrategy.class.getName());
+
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 10_000;
+    private static final int MAX_STRING_LENGTH = 10;
+    private static final int AVERAGE_REMOVED = 10;
+    // Chance of passing over an insertion position, which varies the recreate a little
+    private static final double BLINK_RATE = 0.01;
+    // Annealing temperatures as multiples of the average edge of the starting plan
+    private static final double START_TEMPERATURE = 3.0;
+    private static final double END_TEMPERATURE = 0.03;
+    // Iterations without a new personal best before a worker restarts from the shared best
+    private static final int RESTART_INTERVAL = 20_000;
+    private static final int REPORT_INTERVAL = 256;
+
+    private final Supplier<RoutingStrategy> initialStrategy;
+    private final String name;
+    private long timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+
+    private SolveControl control;
+    private DistanceOracle distances;
+    private CandidateLists candidates;
+    private int depot;
+    private int[] demand;
+    private int[] capacities;
+    private int[] stops;
+    private AtomicReference<Plan> best;
+
+    // Starts from Clarke-Wright
+    public LnsStrategy() {
+        this(ClarkeWrightStrategy::new);
+    }
+
+    public LnsStrategy(Supplier<RoutingStrategy> initialStrategy) {
+        this.initialStrategy = initialStrategy;
+        this.name = "Large neighbourhood search";
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    // Wall-clock time for the whole solve, construction included
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("Time budget cannot be negative");
+        }
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1");
+        }
+        this.workers = workers;
+    }
+
+    // Worker i uses seed + i
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void solve(SmartRouteOptimization system) {
+        long start = System.nanoTime();
+        long deadline = start + timeBudgetMillis * 1_000_000L;
+        initialStrategy.get().solve(system);
+
+        List<Vehicle> vehicles = system.getVehicles();
+        SolverMetrics metrics = system.getMetrics();
+        control = system.getSolveControl();
+        distances = metrics.meter(system.getDistanceOracle());
+        candidates = system.getCandidateLists();
+        depot = system.getDepotLocation();
+        demand = new int[distances.getVertices()];
+        for (DeliveryPoint dp : system.getDeliveryPoints()) {
+            demand[dp.getId()] += dp.getDemand();
+        }
+        capacities = vehicles.stream().mapToInt(Vehicle::getCapacity).toArray();
+        int[][] routes = new int[vehicles.size()][];
+        int stopCount = 0;
+        for (int r = 0; r < routes.length; r++) {
+            routes[r] = vehicles.get(r).getRouteArray();
+            stopCount += routes[r].length - 2;
+        }
+        stops = new int[stopCount];
+        stopCount = 0;
+        for (int[] route : routes) {
+            for (int p = 1; p < route.length - 1; p++) {
+                stops[stopCount++] = route[p];
+            }
+        }
+        if (stops.length == 0 || System.nanoTime() >= deadline) {
+            return;
+        }
+
+        Plan initial = new Plan(routes, totalDistance(routes));
+        best = new AtomicReference<>(initial);
+        double averageEdge = Math.max(1.0, (double) initial.cost / (stops.length + routes.length));
+        long[] iterations = new long[workers];
+        long[] improvements = new long[workers];
+        SolverMetrics.Phase lnsPhase = metrics.startPhase("lns");
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            long searchStart = System.nanoTime();
+            for (int w = 0; w < workers; w++) {
+                int index = w;
+                tasks.add(() -> {
+                    Worker worker = new Worker(index, seed + index, averageEdge, searchStart, deadline);
+                    worker.run();
+                    iterations[index] = worker.iterations;
+                    improvements[index] = worker.improvements;
+                    return null;
+                });
+            }
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                for (Future<Void> result : pool.invokeAll(tasks)) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Large neighbourhood search interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) {
+                    throw (CancellationException) e.getCause();
+                }
+                throw new IllegalStateException("Large neighbourhood search failed: " + e.getCause().getMessage(),
+                        e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            lnsPhase.close();
+        }
+
+        Plan result = best.get();
+        long totalIterations = Arrays.stream(iterations).sum();
+        long totalImprovements = Arrays.stream(improvements).sum();
+        metrics.add(SolverMetrics.Counter.LNS_ITERATIONS, totalIterations);
+        metrics.add(SolverMetrics.Counter.LNS_IMPROVEMENTS, totalImprovements);
+        for (int r = 0; r < vehicles.size(); r++) {
+            Vehicle vehicle = vehicles.get(r);
+            int[] route = result.routes[r];
+            vehicle.clearDeliveries();
+            for (int p = 1; p < route.length - 1; p++) {
+                vehicle.addDelivery(route[p], demand[route[p]]);
+            }
+            vehicle.setRoute(route, route.length);
+        }
+        LOG.info(String.format("Large neighbourhood search ran %d iterations on %d workers, "
+                        + "%d improvements, distance %d -> %d", totalIterations, workers, totalImprovements,
+                initial.cost, result.cost));
+        control.offerRoutes(() -> Arrays.asList(result.routes));
+    }
+
+    private long totalDistance(int[][] routes) {
+        long total = 0;
+        for (int[] route : routes) {
+            for (int p = 1; p < route.length; p++) {
+                total += distances.getDistance(route[p - 1], route[p]);
+            }
+        }
+        return total;
+    }
+
+    // A complete plan, never changed once published: one route per vehicle, depot at both ends
+    private static final class Plan {
+        final int[][] routes;
+        final long cost;
+
+        Plan(int[][] routes, long cost) {
+            this.routes = routes;
+            this.cost = cost;
+        }
+    }
+
+    // One search thread with its own working plan. Changes of an iteration are
+    // undone by copying back the routes it touched.
+    private final class Worker {
+        private final int index;
+        private final Random random;
+        private final double averageEdge;
+        private final long searchStart;
+        private final long deadline;
+
+        private final int[][] routes;
+        private final int[] sizes;
+        private final int[] loads;
+        // Vertex-indexed; routeOf is -1 for stops that are out of the plan and anything else
+        private final int[] routeOf;
+        private final int[] posOf;
+        private long cost;
+
+        // Routes touched in the current iteration and their contents before it
+        private final int[][] saved;
+        private final int[] savedSizes;
+        private final int[] savedLoads;
+        private final int[] touchedAt;
+        private final int[] ruinedAt;
+        private final int[] touched;
+        private int touchedCount;
+        private int stamp;
+
+        private final int[] removed = new int[2 * AVERAGE_REMOVED + MAX_STRING_LENGTH];
+        private int removedCount;
+        private final long[] order = new long[removed.length];
+
+        long iterations;
+        long improvements;
+
+        Worker(int index, long seed, double averageEdge, long searchStart, long deadline) {
+            this.index = index;
+            this.random = new Random(seed);
+            this.averageEdge = averageEdge;
+            this.searchStart = searchStart;
+            this.deadline = deadline;
+            int routeCount = capacities.length;
+            routes = new int[routeCount][];
+            sizes = new int[routeCount];
+            loads = new int[routeCount];
+            saved = new int[routeCount][];
+            savedSizes = new int[routeCount];
+            savedLoads = new int[routeCount];
+            touchedAt = new int[routeCount];
+            ruinedAt = new int[routeCount];
+            touched = new int[routeCount];
+            routeOf = new int[demand.length];
+            posOf = new int[demand.length];
+            load(best.get());
+        }
+
+        void run() {
+            long bestCost = cost;
+            long sinceBest = 0;
+            double span = Math.max(1, deadline - searchStart);
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= deadline || control.isCancelled()) {
+                    return;
+                }
+                if (index == 0 && iterations % REPORT_INTERVAL == 0) {
+                    control.progress("Large neighbourhood search", (now - searchStart) / span);
+                    control.offerRoutes(() -> Arrays.asList(best.get().routes));
+                }
+                double temperature = averageEdge * START_TEMPERATURE
+                        * Math.pow(END_TEMPERATURE / START_TEMPERATURE, (now - searchStart) / span);
+                iterations++;
+                if (!iterate(temperature)) {
+                    if (++sinceBest > RESTART_INTERVAL) {
+                        restart();
+                        bestCost = cost;
+                        sinceBest = 0;
+                    }
+                    continue;
+                }
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    sinceBest = 0;
+                    publish();
+                } else if (++sinceBest > RESTART_INTERVAL) {
+                    restart();
+                    bestCost = cost;
+                    sinceBest = 0;
+                }
+            }
+        }
+
+        // One ruin and recreate; returns whether the result was kept
+        private boolean iterate(double temperature) {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(touchedAt, 0);
+                Arrays.fill(ruinedAt, 0);
+                stamp = 1;
+            }
+            touchedCount = 0;
+            removedCount = 0;
+            long before = cost;
+            ruin();
+            if (!recreate()) {
+                undo(before);
+                return false;
+            }
+            // Improvements always pass; a worse plan passes with probability exp(-delta / T)
+            if (cost < before - temperature * Math.log(random.nextDouble())) {
+                return true;
+            }
+            undo(before);
+            return false;
+        }
+
+        // Strings around a random stop and then around its neighbours, one string per route
+        private void ruin() {
+            int target = Math.min(1 + random.nextInt(2 * AVERAGE_REMOVED - 1), stops.length);
+            // A few centers at most, since with few routes the target may not be reachable
+            for (int centers = 0; centers < 4 && removedCount < target; centers++) {
+                int center = stops[random.nextInt(stops.length)];
+                removeStringAt(center, target);
+                int start = candidates.rowStart(center);
+                if (start < 0) {
+                    continue;
+                }
+                for (int i = start, end = start + candidates.getK(); i < end && removedCount < target; i++) {
+                    removeStringAt(candidates.getCandidate(i), target);
+                }
+            }
+        }
+
+        private void removeStringAt(int stop, int target) {
+            int r = stop == depot ? -1 : routeOf[stop];
+            if (r < 0 || ruinedAt[r] == stamp) {
+                return;
+            }
+            ruinedAt[r] = stamp;
+            int[] route = routes[r];
+            int size = sizes[r];
+            int maxLength = Math.min(Math.min(MAX_STRING_LENGTH, size - 2), target - removedCount);
+            int length = 1 + random.nextInt(maxLength);
+            int first = posOf[stop] - random.nextInt(length);
+            first = Math.max(1, Math.min(first, size - 1 - length));
+            touch(r);
+            for (int p = first - 1; p < first + length; p++) {
+                cost -= distances.getDistance(route[p], route[p + 1]);
+            }
+            cost += distances.getDistance(route[first - 1], route[first + length]);
+            for (int p = first; p < first + length; p++) {
+                int x = route[p];
+                removed[removedCount++] = x;
+                routeOf[x] = -1;
+                loads[r] -= demand[x];
+            }
+            System.arraycopy(route, first + length, route, first, size - first - length);
+            sizes[r] = size - length;
+            reindex(r, first);
+        }
+
+        // Puts every removed stop back, in one of a few orders; false when one does not fit anywhere
+        private boolean recreate() {
+            int mode = random.nextInt(4);
+            for (int i = 0; i < removedCount; i++) {
+                int x = removed[i];
+                long key;
+                switch (mode) {
+                    case 0:
+                        key = random.nextInt(Integer.MAX_VALUE);
+                        break;
+                    case 1:
+                        key = Integer.MAX_VALUE - demand[x];
+                        break;
+                    case 2:
+                        key = DistanceOracle.INFINITY - Math.min(distances.getDistance(depot, x), DistanceOracle.INFINITY);
+                        break;
+                    default:
+                        key = Math.min(distances.getDistance(depot, x), DistanceOracle.INFINITY);
+                        break;
+                }
+                order[i] = (key << 32) | i;
+            }
+            Arrays.sort(order, 0, removedCount);
+            for (int i = 0; i < removedCount; i++) {
+                if (!insert(removed[(int) order[i]])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Cheapest position next to a candidate neighbour or in an empty route, and
+        // only when none of those fits, the cheapest position anywhere
+        private boolean insert(int x) {
+            int bestRoute = -1;
+            int bestPos = -1;
+            long bestDelta = Long.MAX_VALUE;
+            int start = candidates.rowStart(x);
+            if (start >= 0) {
+                for (int i = start, end = start + candidates.getK(); i < end; i++) {
+                    int c = candidates.getCandidate(i);
+                    int r = c == depot ? -1 : routeOf[c];
+                    if (r < 0 || loads[r] + demand[x] > capacities[r]) {
+                        continue;
+                    }
+                    int p = posOf[c];
+                    for (int pos = p; pos <= p + 1; pos++) {
+                        if (random.nextDouble() < BLINK_RATE) {
+                            continue;
+                        }
+                        long delta = insertionDelta(r, pos, x);
+                        if (delta < bestDelta) {
+                            bestDelta = delta;
+                            bestRoute = r;
+                            bestPos = pos;
+                        }
+                    }
+                }
+            }
+            long depotLeg = -1;
+            for (int r = 0; r < sizes.length; r++) {
+                if (sizes[r] == 2 && loads[r] + demand[x] <= capacities[r]) {
+                    if (depotLeg < 0) {
+                        depotLeg = insertionDelta(r, 1, x);
+                    }
+                    if (depotLeg < bestDelta) {
+                        bestDelta = depotLeg;
+                        bestRoute = r;
+                        bestPos = 1;
+                    }
+                }
+            }
+            if (bestRoute < 0) {
+                for (int r = 0; r < sizes.length; r++) {
+                    if (loads[r] + demand[x] > capacities[r]) {
+                        continue;
+                    }
+                    for (int pos = 1; pos < sizes[r]; pos++) {
+                        long delta = insertionDelta(r, pos, x);
+                        if (delta < bestDelta) {
+                            bestDelta = delta;
+                            bestRoute = r;
+                            bestPos = pos;
+                        }
+                    }
+                }
+                if (bestRoute < 0) {
+                    return false;
+                }
+            }
+
+            touch(bestRoute);
+            int size = sizes[bestRoute];
+            if (size == routes[bestRoute].length) {
+                routes[bestRoute] = Arrays.copyOf(routes[bestRoute], size * 2);
+            }
+            int[] route = routes[bestRoute];
+            System.arraycopy(route, bestPos, route, bestPos + 1, size - bestPos);
+            route[bestPos] = x;
+            sizes[bestRoute] = size + 1;
+            loads[bestRoute] += demand[x];
+            routeOf[x] = bestRoute;
+            reindex(bestRoute, bestPos);
+            cost += bestDelta;
+            return true;
+        }
+
+        // Cost of putting x in front of position pos of route r
+        private long insertionDelta(int r, int pos, int x) {
+            int a = routes[r][pos - 1];
+            int b = routes[r][pos];
+            return (long) distances.getDistance(a, x) + distances.getDistance(x, b) - distances.getDistance(a, b);
+        }
+
+        private void touch(int r) {
+            if (touchedAt[r] == stamp) {
+                return;
+            }
+            touchedAt[r] = stamp;
+            touched[touchedCount++] = r;
+            if (saved[r] == null || saved[r].length < sizes[r]) {
+                saved[r] = new int[routes[r].length];
+            }
+            System.arraycopy(routes[r], 0, saved[r], 0, sizes[r]);
+            savedSizes[r] = sizes[r];
+            savedLoads[r] = loads[r];
+        }
+
+        // Every stop of the iteration started and ended in a touched route, so
+        // copying those back restores the whole plan
+        private void undo(long before) {
+            for (int i = 0; i < touchedCount; i++) {
+                int r = touched[i];
+                System.arraycopy(saved[r], 0, routes[r], 0, savedSizes[r]);
+                sizes[r] = savedSizes[r];
+                loads[r] = savedLoads[r];
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int r = touched[i];
+                for (int p = 1; p < sizes[r] - 1; p++) {
+                    routeOf[routes[r][p]] = r;
+                }
+                reindex(r, 1);
+            }
+            cost = before;
+        }
+
+        private void reindex(int r, int from) {
+            int[] route = routes[r];
+            for (int p = from, end = sizes[r] - 1; p < end; p++) {
+                posOf[route[p]] = p;
+            }
+        }
+
+        // Offers the working plan as the shared best until it is published or beaten
+        private void publish() {
+            Plan current = best.get();
+            if (cost >= current.cost) {
+                return;
+            }
+            int[][] copy = new int[routes.length][];
+            for (int r = 0; r < routes.length; r++) {
+                copy[r] = Arrays.copyOf(routes[r], sizes[r]);
+            }
+            Plan candidate = new Plan(copy, cost);
+            while (cost < current.cost) {
+                if (best.compareAndSet(current, candidate)) {
+                    improvements++;
+                    return;
+                }
+                current = best.get();
+            }
+        }
+
+        private void restart() {
+            Plan shared = best.get();
+            if (shared.cost < cost) {
+                load(shared);
+            }
+        }
+
+        private void load(Plan plan) {
+            Arrays.fill(routeOf, -1);
+            for (int r = 0; r < routes.length; r++) {
+                int[] route = plan.routes[r];
+                routes[r] = Arrays.copyOf(route, route.length + MAX_STRING_LENGTH);
+                sizes[r] = route.length;
+                int load = 0;
+                for (int p = 1; p < route.length - 1; p++) {
+                    routeOf[route[p]] = r;
+                    load += demand[route[p]];
+                }
+                loads[r] = load;
+                reindex(r, 1);
+            }
+            cost = plan.cost;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+
+// Worst-fit capacity assignment, nearest neighbour routing per vehicle, then local search
+public class NearestNeighbourStrategy implements RoutingStrategy {
+    @Override
+    public String getName() {
+        return "Nearest neighbour";
+    }
+
+    @Override
+    public void solve(SmartRouteOptimization system) {
+        system.assignDeliveries();
+        system.optimizeRoutes();
+        system.improveRoutes();
+    }
+}
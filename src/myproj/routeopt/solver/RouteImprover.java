@@ -0,0 +1,397 @@
+package myproj.routeopt.solver;
+
+import myproj.routeopt.metrics.SolverMetrics;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Local search run after route construction. Moves:
+//   2-opt    - reverse a section of one route
+//   Or-opt   - move a run of 1 to 3 stops elsewhere in the same or another route,
+//              in either orientation (a single stop moved to another route is a relocate)
+// Every move is evaluated in O(1) from the few edges it changes. Moves are only
+// tried towards the neighbour lists of a stop, and stops whose surroundings did
+// not change are skipped (don't-look bits), so a pass scales to thousands of stops.
+// Distances are assumed to be symmetric, as they are for an undirected Graph.
+// Cancelling the SolveControl ends the search early; the routes found so far
+// are still written back, since every applied move left a valid plan.
+public class RouteImprover {
+    private static final int MAX_SEGMENT_LENGTH = 3;
+    // How many stops are examined between two reads of the clock
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    private final DistanceOracle distances;
+    private final CandidateLists candidates;
+    private final int depot;
+    private long timeBudgetMillis;
+    private int maxMoves = Integer.MAX_VALUE;
+    private SolveControl control = new SolveControl();
+    private SolverMetrics metrics;
+
+    // Working copy of the plan: one int[] per vehicle, depot at both ends
+    private int[][] routes;
+    private int[] sizes;
+    private int[] loads;
+    private int[] capacities;
+    // Vertex-indexed; routeOf is -1 for anything that is not a stop
+    private int[] routeOf;
+    private int[] originalRouteOf;
+    private int[] posOf;
+    private int[] demandOf;
+
+    // Don't-look bits as a FIFO of stops that are worth another look
+    private int[] queue;
+    private boolean[] queued;
+    private int queueHead;
+    private int queueSize;
+
+    private int movesApplied;
+    // Counted locally and published once per improve() call
+    private long movesTried;
+
+    public RouteImprover(DistanceOracle distances, CandidateLists candidates, int depot) {
+        this.distances = distances;
+        this.candidates = candidates;
+        this.depot = depot;
+    }
+
+    // 0 means no time limit
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("Time budget cannot be negative");
+        }
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    public void setMaxMoves(int maxMoves) {
+        if (maxMoves < 0) {
+            throw new IllegalArgumentException("Move budget cannot be negative");
+        }
+        this.maxMoves = maxMoves;
+    }
+
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getMovesApplied() {
+        return movesApplied;
+    }
+
+    // Improves the routes of the given vehicles in place and returns the distance saved.
+    // Stops may move between vehicles when the receiving vehicle has capacity left.
+    public long improve(List<Vehicle> vehicles) {
+        load(vehicles);
+        long before = totalDistance();
+        long deadline = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+        int examined = 0;
+        movesTried = 0;
+
+        while (queueSize > 0 && movesApplied < maxMoves) {
+            if (++examined % CLOCK_CHECK_INTERVAL == 0) {
+                if (System.nanoTime() > deadline || control.isCancelled()) {
+                    break;
+                }
+                control.progress("Improving routes", -1);
+                control.offerRoutes(this::snapshot);
+            }
+            int x = poll();
+            if (routeOf[x] < 0) {
+                continue;
+            }
+            if (tryTwoOpt(x) || tryOrOpt(x)) {
+                movesApplied++;
+                push(x);
+            }
+        }
+
+        store(vehicles);
+        if (metrics != null) {
+            metrics.add(SolverMetrics.Counter.MOVES_TRIED, movesTried);
+            metrics.add(SolverMetrics.Counter.MOVES_ACCEPTED, movesApplied);
+        }
+        return before - totalDistance();
+    }
+
+    private boolean tryTwoOpt(int x) {
+        int start = candidates.rowStart(x);
+        if (start < 0) {
+            return false;
+        }
+        int r = routeOf[x];
+        int[] route = routes[r];
+        int i = posOf[x];
+        int toNext = distances.getDistance(x, route[i + 1]);
+        int toPrev = distances.getDistance(route[i - 1], x);
+
+        for (int k = start, end = start + candidates.getK(); k < end; k++) {
+            int c = candidates.getCandidate(k);
+            int dxc = candidates.getCandidateDistance(k);
+            // The new edge x-c must be shorter than an edge it replaces
+            if (dxc >= toNext && dxc >= toPrev) {
+                break;
+            }
+            if (routeOf[c] != r) {
+                continue;
+            }
+            int j = posOf[c];
+            int a = Math.min(i, j);
+            int b = Math.max(i, j);
+            int nodeA = route[a];
+            int nodeB = route[b];
+
+            // Successor variant: (A, A+1), (B, B+1) become (A, B), (A+1, B+1)
+            int afterA = route[a + 1];
+            int afterB = route[b + 1];
+            movesTried += 2;
+            long delta = (long) dxc + distances.getDistance(afterA, afterB)
+                    - distances.getDistance(nodeA, afterA) - distances.getDistance(nodeB, afterB);
+            if (delta < 0) {
+                reverse(r, a + 1, b);
+                push(nodeA, afterA, nodeB, afterB);
+                return true;
+            }
+
+            // Predecessor variant: (A-1, A), (B-1, B) become (A-1, B-1), (A, B)
+            int beforeA = route[a - 1];
+            int beforeB = route[b - 1];
+            delta = (long) dxc + distances.getDistance(beforeA, beforeB)
+                    - distances.getDistance(beforeA, nodeA) - distances.getDistance(beforeB, nodeB);
+            if (delta < 0) {
+                reverse(r, a, b - 1);
+                push(nodeA, beforeA, nodeB, beforeB);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryOrOpt(int x) {
+        int start = candidates.rowStart(x);
+        if (start < 0) {
+            return false;
+        }
+        int r = routeOf[x];
+        int[] route = routes[r];
+        int i = posOf[x];
+
+        int segmentDemand = 0;
+        for (int length = 1; length <= MAX_SEGMENT_LENGTH; length++) {
+            int last = i + length - 1;
+            if (last > sizes[r] - 2 || routeOf[route[last]] != r) {
+                break;
+            }
+            segmentDemand += demandOf[route[last]];
+            int first = route[i];
+            int segmentEnd = route[last];
+            int before = route[i - 1];
+            int after = route[last + 1];
+            long removeGain = (long) distances.getDistance(before, first) + distances.getDistance(segmentEnd, after)
+                    - distances.getDistance(before, after);
+
+            for (int k = start, end = start + candidates.getK(); k < end; k++) {
+                int c = candidates.getCandidate(k);
+                int r2 = routeOf[c];
+                if (r2 < 0) {
+                    continue;
+                }
+                if (r2 != r && loads[r2] + segmentDemand > capacities[r2]) {
+                    continue;
+                }
+                int j = posOf[c];
+                boolean insideSegment = r2 == r && j >= i && j <= last;
+                if (insideSegment) {
+                    continue;
+                }
+                // Insert between c and its successor, then between its predecessor and c
+                for (int side = 0; side < 2; side++) {
+                    int at = side == 0 ? j : j - 1;
+                    if (r2 == r && (at == i - 1 || at == last)) {
+                        continue; // same position as today
+                    }
+                    movesTried++;
+                    int a = routes[r2][at];
+                    int b = routes[r2][at + 1];
+                    int ab = distances.getDistance(a, b);
+                    long forward = (long) distances.getDistance(a, first) + distances.getDistance(segmentEnd, b) - ab;
+                    long reversed = (long) distances.getDistance(a, segmentEnd) + distances.getDistance(first, b) - ab;
+                    boolean reverse = reversed < forward;
+                    if (Math.min(forward, reversed) - removeGain < 0) {
+                        moveSegment(r, i, length, r2, at, reverse, segmentDemand);
+                        push(before, after, a, b);
+                        push(first, segmentEnd);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Moves route r positions [i, i + length) to just after position at of route r2
+    private void moveSegment(int r, int i, int length, int r2, int at, boolean reverse, int segmentDemand) {
+        int[] segment = Arrays.copyOfRange(routes[r], i, i + length);
+        if (reverse) {
+            for (int a = 0, b = length - 1; a < b; a++, b--) {
+                int t = segment[a];
+                segment[a] = segment[b];
+                segment[b] = t;
+            }
+        }
+        int[] route = routes[r];
+        System.arraycopy(route, i + length, route, i, sizes[r] - i - length);
+        sizes[r] -= length;
+        if (r2 == r && at > i) {
+            at -= length;
+        }
+        reindex(r, i);
+
+        if (sizes[r2] + length > routes[r2].length) {
+            routes[r2] = Arrays.copyOf(routes[r2], Math.max(routes[r2].length * 2, sizes[r2] + length));
+        }
+        int[] target = routes[r2];
+        System.arraycopy(target, at + 1, target, at + 1 + length, sizes[r2] - at - 1);
+        System.arraycopy(segment, 0, target, at + 1, length);
+        sizes[r2] += length;
+        for (int v : segment) {
+            routeOf[v] = r2;
+        }
+        reindex(r2, at + 1);
+        loads[r] -= segmentDemand;
+        loads[r2] += segmentDemand;
+    }
+
+    private void reverse(int r, int from, int to) {
+        int[] route = routes[r];
+        for (int a = from, b = to; a < b; a++, b--) {
+            int t = route[a];
+            route[a] = route[b];
+            route[b] = t;
+        }
+        for (int p = from; p <= to; p++) {
+            if (routeOf[route[p]] >= 0) {
+                posOf[route[p]] = p;
+            }
+        }
+    }
+
+    private void reindex(int r, int from) {
+        int[] route = routes[r];
+        for (int p = from; p < sizes[r]; p++) {
+            if (routeOf[route[p]] >= 0) {
+                posOf[route[p]] = p;
+            }
+        }
+    }
+
+    private void load(List<Vehicle> vehicles) {
+        int n = distances.getVertices();
+        routes = new int[vehicles.size()][];
+        sizes = new int[vehicles.size()];
+        loads = new int[vehicles.size()];
+        capacities = new int[vehicles.size()];
+        routeOf = new int[n];
+        posOf = new int[n];
+        demandOf = new int[n];
+        queue = new int[n];
+        queued = new boolean[n];
+        queueHead = 0;
+        queueSize = 0;
+        movesApplied = 0;
+        Arrays.fill(routeOf, -1);
+
+        for (int r = 0; r < vehicles.size(); r++) {
+            Vehicle vehicle = vehicles.get(r);
+            int routeSize = vehicle.getRouteSize();
+            if (routeSize < 2 || vehicle.getRouteStop(0) != depot || vehicle.getRouteStop(routeSize - 1) != depot) {
+                throw new IllegalStateException(String.format(
+                        "Vehicle %d has no depot-to-depot route to improve", vehicle.getId()));
+            }
+            int[] copy = new int[routeSize + MAX_SEGMENT_LENGTH];
+            for (int p = 0; p < routeSize; p++) {
+                copy[p] = vehicle.getRouteStop(p);
+            }
+            routes[r] = copy;
+            sizes[r] = routeSize;
+            capacities[r] = vehicle.getCapacity();
+            loads[r] = vehicle.getCurrentLoad();
+            for (int stop : vehicle.getDeliveryIds()) {
+                demandOf[stop] = vehicle.getDeliveryLoad(stop);
+            }
+            for (int p = 1; p < routeSize - 1; p++) {
+                int stop = copy[p];
+                if (stop != depot) {
+                    routeOf[stop] = r;
+                    posOf[stop] = p;
+                    push(stop);
+                }
+            }
+        }
+        originalRouteOf = routeOf.clone();
+    }
+
+    // Writes the working routes back; stops that changed vehicle move their load with them
+    private void store(List<Vehicle> vehicles) {
+        for (int r = 0; r < routes.length; r++) {
+            for (int p = 1; p < sizes[r] - 1; p++) {
+                int stop = routes[r][p];
+                if (routeOf[stop] >= 0 && originalRouteOf[stop] != r) {
+                    vehicles.get(originalRouteOf[stop]).removeDelivery(stop);
+                }
+            }
+        }
+        for (int r = 0; r < routes.length; r++) {
+            Vehicle vehicle = vehicles.get(r);
+            for (int p = 0; p < sizes[r]; p++) {
+                int stop = routes[r][p];
+                if (p > 0 && p < sizes[r] - 1 && routeOf[stop] >= 0 && originalRouteOf[stop] != r) {
+                    vehicle.addDelivery(stop, demandOf[stop]);
+                }
+            }
+            vehicle.setRoute(routes[r], sizes[r]);
+        }
+    }
+
+    private List<int[]> snapshot() {
+        List<int[]> copies = new ArrayList<>(routes.length);
+        for (int r = 0; r < routes.length; r++) {
+            copies.add(Arrays.copyOf(routes[r], sizes[r]));
+        }
+        return copies;
+    }
+
+    private long totalDistance() {
+        long total = 0;
+        for (int r = 0; r < routes.length; r++) {
+            for (int p = 1; p < sizes[r]; p++) {
+                total += distances.getDistance(routes[r][p - 1], routes[r][p]);
+            }
+        }
+        return total;
+    }
+
+    private void push(int... nodes) {
+        for (int v : nodes) {
+            if (v != depot && routeOf[v] >= 0 && !queued[v]) {
+                queued[v] = true;
+                queue[(queueHead + queueSize) % queue.length] = v;
+                queueSize++;
+            }
+        }
+    }
+
+    private int poll() {
+        int v = queue[queueHead];
+        queueHead = (queueHead + 1) % queue.length;
+        queueSize--;
+        queued[v] = false;
+        return v;
+    }
+}
@@ -0,0 +1,11 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+
+// One way of turning the delivery points and fleet of a system into routes.
+// Implementations assign deliveries and set every vehicle's route.
+public interface RoutingStrategy {
+    String getName();
+
+    void solve(SmartRouteOptimization system);
+}
@@ -0,0 +1,187 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.ProblemSnapshot;
+import myproj.routeopt.model.Solution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// Solves many what-if scenarios of one problem side by side, for example the
+// same day with 20 to 60 trucks. Every scenario is an immutable
+// ProblemSnapshot and gets a SmartRouteOptimization and strategy of its own, so
+// the only state the solves share is the read-only graph, distance oracle and
+// delivery points. Scenarios made with withFleet from one snapshot also share
+// their candidate lists, which are built once. Each scenario runs on one
+// thread, scenarios run in parallel, and the results come back as Solution
+// values in scenario order. With parallelism 1 they run one after another on
+// the calling thread, for callers that already solve on a pool of their own.
+public class ScenarioRunner {
+    private static final Logger LOG = Logger.getLogger(ScenarioRunner.class.getName());
+
+    private final Supplier<RoutingStrategy> strategy;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private SolveControl control = new SolveControl();
+
+    // Starts from Clarke-Wright
+    public ScenarioRunner() {
+        this(ClarkeWrightStrategy::new);
+    }
+
+    // A new strategy per scenario, since strategies keep state while solving
+    public ScenarioRunner(Supplier<RoutingStrategy> strategy) {
+        this.strategy = strategy;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    // Progress is reported per finished scenario; cancelling stops every scenario
+    public void setSolveControl(SolveControl control) {
+        this.control = control == null ? new SolveControl() : control;
+    }
+
+    // One fleet of count vehicles of the given capacity per count in [minVehicles, maxVehicles]
+    public List<Solution> solveFleetSizes(ProblemSnapshot base, int minVehicles, int maxVehicles, int capacity) {
+        if (minVehicles < 1 || maxVehicles < minVehicles) {
+            throw new IllegalArgumentException(String.format("Bad fleet size range %d to %d",
+                    minVehicles, maxVehicles));
+        }
+        List<ProblemSnapshot> scenarios = new ArrayList<>();
+        for (int count = minVehicles; count <= maxVehicles; count++) {
+            scenarios.add(base.withFleetSize(count, capacity));
+        }
+        return solveAll(scenarios);
+    }
+
+    // A scenario that cannot be solved, for example because its fleet is too
+    // small, comes back as an infeasible Solution rather than failing the rest
+    public List<Solution> solveAll(List<ProblemSnapshot> scenarios) {
+        long start = System.nanoTime();
+        control.progress("Building candidate lists", -1);
+        List<SharedLists> shared = new ArrayList<>();
+        List<CandidateLists> lists = new ArrayList<>();
+        for (ProblemSnapshot scenario : scenarios) {
+            SharedLists match = null;
+            for (SharedLists candidate : shared) {
+                if (candidate.fits(scenario)) {
+                    match = candidate;
+                    break;
+                }
+            }
+            if (match == null) {
+                match = new SharedLists(scenario);
+                shared.add(match);
+            }
+            lists.add(match.lists);
+        }
+
+        String name = strategy.get().getName();
+        AtomicInteger done = new AtomicInteger();
+        List<Callable<Solution>> tasks = new ArrayList<>();
+        for (int i = 0; i < scenarios.size(); i++) {
+            ProblemSnapshot scenario = scenarios.get(i);
+            CandidateLists candidates = lists.get(i);
+            tasks.add(() -> {
+                Solution solution = solve(scenario, candidates, name);
+                control.progress("Solving scenarios", (double) done.incrementAndGet() / scenarios.size());
+                return solution;
+            });
+        }
+
+        List<Solution> solutions = new ArrayList<>();
+        if (parallelism == 1) {
+            try {
+                for (Callable<Solution> task : tasks) {
+                    solutions.add(task.call());
+                }
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Scenario solve failed: " + e.getMessage(), e);
+            }
+            LOG.info(String.format("Solved %d scenarios on the calling thread in %d ms", scenarios.size(),
+                    (System.nanoTime() - start) / 1_000_000));
+            return solutions;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<Solution> result : pool.invokeAll(tasks)) {
+                solutions.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Scenario solve interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new IllegalStateException("Scenario solve failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        LOG.info(String.format("Solved %d scenarios on %d threads in %d ms", scenarios.size(), parallelism,
+                (System.nanoTime() - start) / 1_000_000));
+        return solutions;
+    }
+
+    private Solution solve(ProblemSnapshot scenario, CandidateLists candidates, String name) {
+        control.checkCancelled();
+        long start = System.nanoTime();
+        SmartRouteOptimization system = SmartRouteOptimization.fromSnapshot(scenario);
+        system.setCandidateLists(candidates);
+        system.setRouteParallelism(1);
+        system.setSolveControl(control.child());
+        int[] ids = new int[scenario.getVehicleCount()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = scenario.getVehicleId(i);
+        }
+        try {
+            if (ids.length == 0) {
+                throw new IllegalStateException("No vehicles added");
+            }
+            strategy.get().solve(system);
+        } catch (IllegalStateException e) {
+            return Solution.infeasible(name, ids, e.getMessage(), System.nanoTime() - start);
+        }
+        return system.toSolution(name, System.nanoTime() - start);
+    }
+
+    // Candidate lists for every scenario over the same delivery points list,
+    // distance oracle and list size
+    private static final class SharedLists {
+        final List<DeliveryPoint> points;
+        final DistanceOracle distances;
+        final CandidateLists lists;
+
+        SharedLists(ProblemSnapshot scenario) {
+            points = scenario.getDeliveryPoints();
+            distances = scenario.getDistanceOracle();
+            int[] nodes = new int[points.size() + 1];
+            for (int i = 0; i < points.size(); i++) {
+                nodes[i] = points.get(i).getId();
+            }
+            nodes[points.size()] = scenario.getDepot();
+            lists = CandidateLists.build(distances, nodes, scenario.getCandidateListSize());
+        }
+
+        boolean fits(ProblemSnapshot scenario) {
+            return scenario.getDeliveryPoints() == points && scenario.getDistanceOracle() == distances
+                    && scenario.getCandidateListSize() == lists.getK();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package myproj.routeopt.solver;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Cancellation token and progress sink for one solve. The solver loops poll
+// isCancelled / checkCancelled every so many iterations. Progress and
+// best-so-far routes are passed to the listener at most once per interval,
+// whichever thread reports them, so a UI is never flooded. Listener calls
+// come from solver threads.
+public class SolveControl {
+    public interface Listener {
+        // fraction in [0, 1], or -1 when the phase has no known end
+        void progress(String phase, double fraction);
+
+        // One stop sequence per vehicle, depot at both ends; the arrays are copies
+        void routes(List<int[]> routes);
+    }
+
+    private final Listener listener;
+    // A child is also cancelled when its parent is
+    private final SolveControl parent;
+    private final long intervalNanos;
+    private final AtomicLong nextProgressNanos = new AtomicLong();
+    private final AtomicLong nextRoutesNanos = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile String phase = "";
+
+    // A token without a listener, only for cancellation
+    public SolveControl() {
+        this(null, 0);
+    }
+
+    public SolveControl(Listener listener, long intervalMillis) {
+        this(listener, intervalMillis, null);
+    }
+
+    private SolveControl(Listener listener, long intervalMillis, SolveControl parent) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Reporting interval cannot be negative");
+        }
+        this.listener = listener;
+        this.parent = parent;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+        long now = System.nanoTime();
+        nextProgressNanos.set(now);
+        nextRoutesNanos.set(now);
+    }
+
+    // Token for one part of a larger solve: cancelled along with this one, but
+    // reports nothing, so parts running side by side do not interleave phases
+    public SolveControl child() {
+        return new SolveControl(null, 0, this);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Optimization cancelled");
+        }
+    }
+
+    // A new phase is always reported; progress within a phase is throttled
+    public void progress(String phase, double fraction) {
+        if (listener == null) {
+            return;
+        }
+        if (!phase.equals(this.phase)) {
+            this.phase = phase;
+            nextProgressNanos.set(System.nanoTime() + intervalNanos);
+            listener.progress(phase, fraction);
+        } else if (due(nextProgressNanos)) {
+            listener.progress(phase, fraction);
+        }
+    }
+
+    // The snapshot is only taken when the listener is due for new routes
+    public void offerRoutes(Supplier<List<int[]>> snapshot) {
+        if (listener != null && due(nextRoutesNanos)) {
+            listener.routes(snapshot.get());
+        }
+    }
+
+    private boolean due(AtomicLong next) {
+        long now = System.nanoTime();
+        long at = next.get();
+        return now - at >= 0 && next.compareAndSet(at, now + intervalNanos);
+    }
+}
@@ -0,0 +1,296 @@
+package myproj.routeopt.solver;
+
+import myproj.routeopt.metrics.SolverMetrics;
+import myproj.routeopt.model.DeliveryPoint;
+import myproj.routeopt.model.DistanceOracle;
+import myproj.routeopt.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Solomon I1 style insertion for deliveries with time windows. Routes are
+// opened one vehicle at a time from the farthest unrouted stop, then filled by
+// repeatedly inserting the stop with the best
+//   c2 = distance(depot, u) - (added distance + delay pushed onto the next stop)
+// Travel time equals distance, service is instantaneous and vehicles leave the
+// depot at time 0.
+//
+// For every route position we cache the earliest service start and the latest
+// start that keeps every later stop inside its window (so latest - earliest is
+// the forward slack). Checking an insertion then only needs its two neighbours.
+// The same checks are public (schedule, startAfterInsertion, meetsWindows) so
+// changes to a finished plan can keep its windows.
+public class TimeWindowInsertion {
+    private static final long NO_DEADLINE = Long.MAX_VALUE / 4;
+
+    private final DistanceOracle distances;
+    private final CandidateLists candidates;
+    private final int depot;
+
+    private long[] earliest;
+    private long[] latest;
+    private int[] demand;
+    private boolean[] pending;
+
+    // The route being filled
+    private int[] route;
+    private long[] begin;
+    private long[] latestStart;
+    private int size;
+
+    private final List<Integer> unserved = new ArrayList<>();
+    private SolveControl control = new SolveControl();
+    private SolverMetrics metrics;
+    private long insertionsTried;
+
+    public TimeWindowInsertion(DistanceOracle distances, CandidateLists candidates, int depot) {
+        this.distances = distances;
+        this.candidates = candidates;
+        this.depot = depot;
+    }
+
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Assigns and sequences the delivery points over the vehicles, which are
+    // cleared first. Returns the ids that could not be served by any vehicle.
+    public List<Integer> solve(List<DeliveryPoint> deliveryPoints, List<Vehicle> vehicles) {
+        int n = distances.getVertices();
+        earliest = new long[n];
+        latest = new long[n];
+        demand = new int[n];
+        pending = new boolean[n];
+        unserved.clear();
+        insertionsTried = 0;
+        int pendingCount = 0;
+        for (DeliveryPoint dp : deliveryPoints) {
+            int id = dp.getId();
+            earliest[id] = dp.getTimeWindowStart();
+            latest[id] = dp.getTimeWindowEnd();
+            demand[id] = dp.getDemand();
+            if (!pending[id]) {
+                pending[id] = true;
+                pendingCount++;
+            }
+        }
+        int[] customers = Arrays.stream(deliveryPoints.stream().mapToInt(DeliveryPoint::getId).toArray())
+                .distinct().toArray();
+        route = new int[Math.max(4, customers.length + 2)];
+        begin = new long[route.length];
+        latestStart = new long[route.length];
+
+        int total = pendingCount;
+        List<int[]> finished = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            control.checkCancelled();
+            vehicle.clearDeliveries();
+            int load = 0;
+            int seed = pendingCount == 0 ? -1 : findSeed(customers, vehicle.getCapacity());
+            if (seed < 0) {
+                setEmptyRoute(vehicle);
+                finished.add(new int[]{depot, depot});
+                continue;
+            }
+            size = 0;
+            route[size++] = depot;
+            route[size++] = seed;
+            route[size++] = depot;
+            pending[seed] = false;
+            pendingCount--;
+            load += demand[seed];
+            updateSchedule(0);
+
+            while (pendingCount > 0) {
+                if ((pendingCount & 63) == 0) {
+                    control.checkCancelled();
+                    control.progress("Inserting stops", 1 - (double) pendingCount / total);
+                }
+                int capacityLeft = vehicle.getCapacity() - load;
+                long best = findBestInsertion(capacityLeft, true);
+                if (best == -1) {
+                    best = findBestInsertion(capacityLeft, false);
+                }
+                if (best == -1) {
+                    break;
+                }
+                int u = (int) (best >>> 32);
+                int position = (int) best;
+                insert(u, position);
+                pending[u] = false;
+                pendingCount--;
+                load += demand[u];
+            }
+
+            for (int p = 1; p < size - 1; p++) {
+                vehicle.addDelivery(route[p], demand[route[p]]);
+            }
+            vehicle.setRoute(route, size);
+            finished.add(Arrays.copyOf(route, size));
+            control.offerRoutes(() -> new ArrayList<>(finished));
+        }
+
+        for (int id : customers) {
+            if (pending[id]) {
+                unserved.add(id);
+            }
+        }
+        if (metrics != null) {
+            metrics.add(SolverMetrics.Counter.INSERTIONS_TRIED, insertionsTried);
+            metrics.add(SolverMetrics.Counter.STOPS_INSERTED, customers.length - unserved.size());
+        }
+        return new ArrayList<>(unserved);
+    }
+
+    // Farthest pending stop that a vehicle can serve on its own
+    private int findSeed(int[] customers, int capacity) {
+        int seed = -1;
+        long farthest = -1;
+        for (int u : customers) {
+            if (!pending[u] || demand[u] > capacity) {
+                continue;
+            }
+            long toU = distances.getDistance(depot, u);
+            if (toU >= DistanceOracle.INFINITY || Math.max(earliest[u], toU) > latest[u]) {
+                continue;
+            }
+            if (toU > farthest) {
+                farthest = toU;
+                seed = u;
+            }
+        }
+        return seed;
+    }
+
+    // Best (stop, position) packed as stop << 32 | position, or -1. With
+    // useCandidates only stops from the neighbour lists of route members are
+    // considered; otherwise every pending stop is tried at every position.
+    private long findBestInsertion(int capacityLeft, boolean useCandidates) {
+        long bestScore = Long.MIN_VALUE;
+        long best = -1;
+        if (useCandidates) {
+            for (int p = 0; p < size; p++) {
+                int start = candidates.rowStart(route[p]);
+                if (start < 0) {
+                    continue;
+                }
+                for (int k = start, end = start + candidates.getK(); k < end; k++) {
+                    int u = candidates.getCandidate(k);
+                    if (!pending[u] || demand[u] > capacityLeft) {
+                        continue;
+                    }
+                    // Edges on both sides of route[p]
+                    for (int edge = Math.max(0, p - 1); edge <= Math.min(p, size - 2); edge++) {
+                        long score = insertionScore(u, edge);
+                        if (score > bestScore) {
+                            bestScore = score;
+                            best = ((long) u << 32) | edge;
+                        }
+                    }
+                }
+            }
+        } else {
+            for (int u = 0; u < pending.length; u++) {
+                if (!pending[u] || demand[u] > capacityLeft) {
+                    continue;
+                }
+                for (int edge = 0; edge < size - 1; edge++) {
+                    long score = insertionScore(u, edge);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = ((long) u << 32) | edge;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // c2 for inserting u between route[p] and route[p + 1], Long.MIN_VALUE if infeasible
+    private long insertionScore(int u, int p) {
+        insertionsTried++;
+        long startJ = startAfterInsertion(distances, route, size, earliest, latest, begin, latestStart, u, p);
+        if (startJ < 0) {
+            return Long.MIN_VALUE;
+        }
+        int i = route[p];
+        int j = route[p + 1];
+        long addedDistance = (long) distances.getDistance(i, u) + distances.getDistance(u, j)
+                - distances.getDistance(i, j);
+        long delay = startJ - begin[p + 1];
+        return distances.getDistance(depot, u) - (addedDistance + delay);
+    }
+
+    // Service start at route[p + 1] once u is inserted before it, or -1 if u or
+    // any later stop would then miss its window. begin and latestStart come from
+    // schedule; earliest and latest are indexed by vertex.
+    public static long startAfterInsertion(DistanceOracle distances, int[] route, int size, long[] earliest,
+                                           long[] latest, long[] begin, long[] latestStart, int u, int p) {
+        long iu = distances.getDistance(route[p], u);
+        long uj = distances.getDistance(u, route[p + 1]);
+        if (iu >= DistanceOracle.INFINITY || uj >= DistanceOracle.INFINITY) {
+            return -1;
+        }
+        long startU = Math.max(earliest[u], begin[p] + iu);
+        if (startU > latest[u]) {
+            return -1;
+        }
+        long startJ = Math.max(p + 1 == size - 1 ? 0 : earliest[route[p + 1]], startU + uj);
+        return startJ > latestStart[p + 1] ? -1 : startJ;
+    }
+
+    // Earliest service start (begin) of positions forwardFrom + 1 on, and latest
+    // start (latestStart) of positions backwardFrom down to 1, for the depot to
+    // depot route[0..size). Pass 0 and size - 2 for the whole route.
+    public static void schedule(DistanceOracle distances, int[] route, int size, long[] earliest, long[] latest,
+                                long[] begin, long[] latestStart, int forwardFrom, int backwardFrom) {
+        begin[0] = 0;
+        for (int q = forwardFrom + 1; q < size; q++) {
+            long arrival = begin[q - 1] + distances.getDistance(route[q - 1], route[q]);
+            begin[q] = q == size - 1 ? arrival : Math.max(earliest[route[q]], arrival);
+        }
+        latestStart[size - 1] = NO_DEADLINE;
+        for (int q = backwardFrom; q >= 1; q--) {
+            long next = latestStart[q + 1] - distances.getDistance(route[q], route[q + 1]);
+            latestStart[q] = Math.min(latest[route[q]], next);
+        }
+        latestStart[0] = NO_DEADLINE;
+    }
+
+    // Whether every stop of a scheduled route starts service inside its window
+    public static boolean meetsWindows(int[] route, int size, long[] latest, long[] begin) {
+        for (int q = 1; q < size - 1; q++) {
+            if (begin[q] > latest[route[q]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int u, int p) {
+        if (size == route.length) {
+            route = Arrays.copyOf(route, size * 2);
+            begin = Arrays.copyOf(begin, size * 2);
+            latestStart = Arrays.copyOf(latestStart, size * 2);
+        }
+        System.arraycopy(route, p + 1, route, p + 2, size - p - 1);
+        System.arraycopy(latestStart, p + 1, latestStart, p + 2, size - p - 1);
+        route[p + 1] = u;
+        size++;
+        updateSchedule(p);
+    }
+
+    // After an insertion at edge p only later earliest starts and earlier latest starts change
+    private void updateSchedule(int p) {
+        schedule(distances, route, size, earliest, latest, begin, latestStart, p, Math.min(p + 1, size - 2));
+    }
+
+    private void setEmptyRoute(Vehicle vehicle) {
+        vehicle.setRoute(new int[]{depot, depot}, 2);
+    }
+}
@@ -0,0 +1,17 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+
+// Solomon insertion honouring time windows; see TimeWindowInsertion. The local
+// search does not check windows, so construction is final here.
+public class TimeWindowInsertionStrategy implements RoutingStrategy {
+    @Override
+    public String getName() {
+        return "Time window insertion";
+    }
+
+    @Override
+    public void solve(SmartRouteOptimization system) {
+        system.constructTimeWindowRoutes();
+    }
+}
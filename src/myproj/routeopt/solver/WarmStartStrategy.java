@@ -0,0 +1,31 @@
+package myproj.routeopt.solver;
+
+import myproj.SmartRouteOptimization;
+import myproj.routeopt.io.PlanSnapshot;
+
+// Starts from a stored plan instead of constructing one; see
+// SmartRouteOptimization.warmStart. Mostly useful as the initial strategy of
+// LnsStrategy, which improves a repaired plan faster than a fresh one.
+public class WarmStartStrategy implements RoutingStrategy {
+    private final PlanSnapshot plan;
+    private int inserted;
+
+    public WarmStartStrategy(PlanSnapshot plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public String getName() {
+        return "Warm start";
+    }
+
+    @Override
+    public void solve(SmartRouteOptimization system) {
+        inserted = system.warmStart(plan);
+    }
+
+    // Stops of the last solve that were not in the stored plan
+    public int getInserted() {
+        return inserted;
+    }
+}
@@ -2,13 +2,23 @@ package myproj.routeopt.view;
 
 import myproj.SmartRouteOptimization;
 import myproj.routeopt.controller.MainController;
+import myproj.routeopt.io.EdgeListReader;
+import myproj.routeopt.model.DeliveryPoint;
 import myproj.routeopt.model.Vehicle;
+import myproj.routeopt.solver.RoutingStrategy;
+import myproj.routeopt.solver.SolveControl;
 
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 import javax.swing.border.LineBorder;
 
@@ -19,6 +29,14 @@ public class MainView extends JFrame {
     private Font primaryFont = new Font("Apercu", Font.PLAIN, 14);
     private Color primaryColor = new Color(0, 4, 40); // Green
     private Color secondaryColor = new Color(139, 153, 223); // Light orange
+    // Minimum time between two progress or route updates from a running solve
+    private static final long SOLVE_UPDATE_MILLIS = 250;
+    // Non-null while a solve runs on the controller's solver thread
+    private SolveControl activeSolve;
+    // Whether activeSolve is a strategy comparison rather than one optimization
+    private boolean comparing;
+    // Non-null while an edge list is read; its edges are applied to the graph when it is done
+    private SwingWorker<int[][], Void> activeImport;
 
     public MainView() {
         controller = new MainController();
@@ -54,12 +72,17 @@ public class MainView extends JFrame {
 
         JButton initButton = createStyledButton("Initialize System");
         initButton.addActionListener(e -> {
+            if (rejectWhileSolving()) {
+                return;
+            }
             try {
                 int locations = Integer.parseInt(locationCount.getText());
                 int depot = Integer.parseInt(depotLocation.getText());
                 controller.initializeSystem(locations, depot);
 
-                int edges = Integer.parseInt(edgeCount.getText());
+                // Leave the edge count empty to import the edges from a file instead
+                String edgeText = edgeCount.getText().trim();
+                int edges = edgeText.isEmpty() ? 0 : Integer.parseInt(edgeText);
                 for (int i = 0; i < edges; i++) {
                     showEdgeInputDialog();
                 }
@@ -68,13 +91,114 @@ public class MainView extends JFrame {
             }
         });
 
+        JProgressBar importProgress = new JProgressBar(0, 100);
+        importProgress.setStringPainted(true);
+        importProgress.setVisible(false);
+        JButton importButton = createStyledButton("Import Edges...");
+        importButton.addActionListener(e -> {
+            if (activeImport != null) {
+                activeImport.cancel(true);
+                importButton.setEnabled(false);
+                return;
+            }
+            if (rejectWhileSolving()) {
+                return;
+            }
+            if (controller.getSystem() == null) {
+                showError("Initialize the system before importing edges");
+                return;
+            }
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Import edge list (CSV or binary)");
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                importEdges(chooser.getSelectedFile(), importButton, initButton, importProgress);
+            }
+        });
+
         panel.add(locationCount);
         panel.add(depotLocation);
         panel.add(edgeCount);
         panel.add(initButton);
+        panel.add(importButton);
+        panel.add(importProgress);
         return panel;
     }
 
+    // Parses the whole file on a worker thread, then hands every edge to the
+    // controller in one batch on the EDT, so the model is only ever touched
+    // from one thread and a bad line leaves the graph as it was. Solving is
+    // refused until then, and the import button turns into Cancel meanwhile.
+    private void importEdges(File file, JButton importButton, JButton initButton, JProgressBar progressBar) {
+        SwingWorker<int[][], Void> worker = new SwingWorker<int[][], Void>() {
+            private int[] u = new int[0];
+            private int[] v = new int[0];
+            private int[] w = new int[0];
+            private int size;
+
+            @Override
+            protected int[][] doInBackground() throws Exception {
+                new EdgeListReader().read(file.toPath(),
+                        (bu, bv, bw) -> {
+                            if (isCancelled()) {
+                                throw new CancellationException();
+                            }
+                            append(bu, bv, bw);
+                        },
+                        (read, total) -> setProgress(total == 0 ? 100 : (int) (read * 100 / total)));
+                return new int[][]{Arrays.copyOf(u, size), Arrays.copyOf(v, size), Arrays.copyOf(w, size)};
+            }
+
+            private void append(int[] bu, int[] bv, int[] bw) {
+                if (size + bu.length > u.length) {
+                    int capacity = Math.max(size + bu.length, u.length * 2);
+                    u = Arrays.copyOf(u, capacity);
+                    v = Arrays.copyOf(v, capacity);
+                    w = Arrays.copyOf(w, capacity);
+                }
+                System.arraycopy(bu, 0, u, size, bu.length);
+                System.arraycopy(bv, 0, v, size, bu.length);
+                System.arraycopy(bw, 0, w, size, bu.length);
+                size += bu.length;
+            }
+
+            @Override
+            protected void done() {
+                activeImport = null;
+                importButton.setText("Import Edges...");
+                importButton.setEnabled(true);
+                initButton.setEnabled(true);
+                progressBar.setVisible(false);
+                try {
+                    int[][] edges = get();
+                    controller.addEdges(edges[0], edges[1], edges[2]);
+                    JOptionPane.showMessageDialog(MainView.this,
+                            String.format("Imported %d edges from %s", edges[0].length, file.getName()),
+                            "Edge Import", JOptionPane.INFORMATION_MESSAGE);
+                } catch (CancellationException ex) {
+                    showError("Edge import cancelled");
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    showError("Edge Import Error", ex.getCause().getMessage());
+                } catch (IllegalArgumentException | IllegalStateException ex) {
+                    showError("Edge Import Error", ex.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                progressBar.setValue((Integer) evt.getNewValue());
+            }
+        });
+        activeImport = worker;
+        importButton.setText("Cancel Import");
+        initButton.setEnabled(false);
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        progressBar.getParent().revalidate();
+        worker.execute();
+    }
+
     private JPanel createDeliverySection() {
         JPanel panel = new JPanel(new FlowLayout());
         stylePanel(panel, "Add Delivery Points");
@@ -86,6 +210,9 @@ public class MainView extends JFrame {
 
         JButton addDeliveryButton = createStyledButton("Add Delivery Point");
         addDeliveryButton.addActionListener(e -> {
+            if (rejectWhileSolving()) {
+                return;
+            }
             try {
                 int id = Integer.parseInt(dpId.getText());
                 int demand = Integer.parseInt(dpDemand.getText());
@@ -96,6 +223,8 @@ public class MainView extends JFrame {
                 clearFields(dpId, dpDemand, dpTimeStart, dpTimeEnd);
             } catch (NumberFormatException ex) {
                 showError("Please enter valid numbers");
+            } catch (IllegalArgumentException ex) {
+                showError("Delivery Point Error", ex.getMessage());
             }
         });
 
@@ -115,6 +244,9 @@ public class MainView extends JFrame {
         JButton addVehicleButton = createStyledButton("Add Vehicle");
 
         addVehicleButton.addActionListener(e -> {
+            if (rejectWhileSolving()) {
+                return;
+            }
             try {
                 int capacity = Integer.parseInt(vehicleCapacity.getText());
                 controller.addVehicle(capacity);
@@ -129,29 +261,200 @@ public class MainView extends JFrame {
         return panel;
     }
 
-    private JPanel routeDisplayPanel;
+    private RoutePanel routeView;
 
     private JPanel createRouteDisplaySection() {
         JPanel panel = new JPanel();
         panel.setLayout(new BorderLayout());
         panel.setBorder(BorderFactory.createTitledBorder("Routes"));
 
-        routeDisplayPanel = new JPanel();
-        routeDisplayPanel.setLayout(new BoxLayout(routeDisplayPanel, BoxLayout.Y_AXIS));
+        routeView = new RoutePanel();
+
+        JComboBox<RoutingStrategy> strategyBox = new JComboBox<>(
+                controller.getRoutingStrategies().toArray(new RoutingStrategy[0]));
+        strategyBox.setSelectedItem(controller.getRoutingStrategy());
+        strategyBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Object label = value instanceof RoutingStrategy ? ((RoutingStrategy) value).getName() : value;
+                return super.getListCellRendererComponent(list, label, index, isSelected, cellHasFocus);
+            }
+        });
+        strategyBox.addActionListener(e ->
+                controller.setRoutingStrategy((RoutingStrategy) strategyBox.getSelectedItem()));
+
+        JProgressBar solveProgress = new JProgressBar(0, 100);
+        solveProgress.setStringPainted(true);
+        solveProgress.setVisible(false);
 
         JButton optimizeButton = new JButton("Optimize Routes");
         optimizeButton.addActionListener(e -> {
-            controller.optimizeRoutes();
-            updateRouteDisplay();
+            if (activeSolve != null) {
+                activeSolve.cancel();
+                optimizeButton.setEnabled(false);
+                return;
+            }
+            if (rejectWhileImporting()) {
+                return;
+            }
+            startOptimization(optimizeButton, solveProgress);
         });
 
-        panel.add(optimizeButton, BorderLayout.NORTH);
-        panel.add(new JScrollPane(routeDisplayPanel), BorderLayout.CENTER);
+        JButton compareButton = new JButton("Compare Strategies");
+        compareButton.addActionListener(e -> {
+            if (activeSolve != null && comparing) {
+                activeSolve.cancel();
+                compareButton.setEnabled(false);
+                return;
+            }
+            if (rejectWhileSolving() || rejectWhileImporting()) {
+                return;
+            }
+            startComparison(compareButton, optimizeButton, solveProgress);
+        });
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(strategyBox);
+        controls.add(optimizeButton);
+        controls.add(compareButton);
+        controls.add(solveProgress);
+        // Ctrl + mouse wheel over the routes zooms as well
+        JButton zoomOutButton = new JButton("-");
+        zoomOutButton.addActionListener(e -> routeView.setZoom(routeView.getZoom() / 1.5));
+        JButton zoomInButton = new JButton("+");
+        zoomInButton.addActionListener(e -> routeView.setZoom(routeView.getZoom() * 1.5));
+        controls.add(zoomOutButton);
+        controls.add(zoomInButton);
+
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(routeView), BorderLayout.CENTER);
 
         return panel;
     }
 
 
+    // Runs the solve on the controller's solver thread; the button turns into Cancel
+    // until it finishes. Progress and best-so-far routes arrive throttled, and the
+    // route display is only rebuilt when such results arrive.
+    private void startOptimization(JButton optimizeButton, JProgressBar progressBar) {
+        SolveControl control = newSolveControl(progressBar);
+        try {
+            controller.optimizeRoutesAsync(control).whenComplete((unserved, error) -> SwingUtilities.invokeLater(() -> {
+                activeSolve = null;
+                optimizeButton.setText("Optimize Routes");
+                optimizeButton.setEnabled(true);
+                progressBar.setVisible(false);
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof CancellationException) {
+                    showError("Optimization Cancelled", "Optimization was cancelled before routes were complete");
+                } else if (cause != null) {
+                    showError("Optimization Error", cause.getMessage());
+                } else {
+                    controller.printDetailedStatistics();
+                    updateRouteDisplay();
+                    if (!unserved.isEmpty()) {
+                        JOptionPane.showMessageDialog(this, String.format(
+                                "%d delivery points are not on any route: %s", unserved.size(), unserved),
+                                "Incomplete Plan", JOptionPane.WARNING_MESSAGE);
+                    }
+                }
+            }));
+        } catch (IllegalStateException ex) {
+            showError("Optimization Error", ex.getMessage());
+            return;
+        }
+        activeSolve = control;
+        optimizeButton.setText("Cancel");
+        showSolveProgress(progressBar);
+    }
+
+    // Runs every strategy on the solver thread like startOptimization; the compare
+    // button turns into Cancel and optimizing is disabled until it finishes
+    private void startComparison(JButton compareButton, JButton optimizeButton, JProgressBar progressBar) {
+        SolveControl control = newSolveControl(progressBar);
+        try {
+            controller.compareStrategiesAsync(control).whenComplete((totals, error) -> SwingUtilities.invokeLater(() -> {
+                activeSolve = null;
+                comparing = false;
+                compareButton.setText("Compare Strategies");
+                compareButton.setEnabled(true);
+                optimizeButton.setEnabled(true);
+                progressBar.setVisible(false);
+                updateRouteDisplay();
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof CancellationException) {
+                    showError("Comparison Cancelled", "The routes shown are from the last strategy that ran");
+                } else if (cause != null) {
+                    showError("Optimization Error", cause.getMessage());
+                } else {
+                    StringBuilder message = new StringBuilder("Total distance per strategy:\n");
+                    totals.forEach((name, total) -> message.append(total == MainController.UNSERVED
+                            ? String.format("%s: not every stop served\n", name)
+                            : String.format("%s: %d\n", name, total)));
+                    JOptionPane.showMessageDialog(this, message.toString(), "Strategy Comparison",
+                            JOptionPane.INFORMATION_MESSAGE);
+                }
+            }));
+        } catch (IllegalStateException ex) {
+            showError("Optimization Error", ex.getMessage());
+            return;
+        }
+        activeSolve = control;
+        comparing = true;
+        compareButton.setText("Cancel");
+        optimizeButton.setEnabled(false);
+        showSolveProgress(progressBar);
+    }
+
+    private void showSolveProgress(JProgressBar progressBar) {
+        progressBar.setValue(0);
+        progressBar.setString("Starting");
+        progressBar.setVisible(true);
+        progressBar.getParent().revalidate();
+    }
+
+    // Progress and best-so-far routes from the solver thread, handed to the EDT
+    private SolveControl newSolveControl(JProgressBar progressBar) {
+        return new SolveControl(new SolveControl.Listener() {
+            @Override
+            public void progress(String phase, double fraction) {
+                SwingUtilities.invokeLater(() -> {
+                    progressBar.setIndeterminate(fraction < 0);
+                    progressBar.setValue(fraction < 0 ? 0 : (int) (fraction * 100));
+                    progressBar.setString(phase);
+                });
+            }
+
+            @Override
+            public void routes(List<int[]> routes) {
+                SwingUtilities.invokeLater(() -> {
+                    if (activeSolve != null) {
+                        showRouteSnapshot(routes);
+                    }
+                });
+            }
+        }, SOLVE_UPDATE_MILLIS);
+    }
+
+    private boolean rejectWhileSolving() {
+        if (activeSolve != null) {
+            showError("Optimization Running", "Wait for the optimization to finish or cancel it first");
+            return true;
+        }
+        return false;
+    }
+
+    // The imported edges are applied on the EDT when the import finishes, which
+    // must not happen while the solver thread is reading the graph
+    private boolean rejectWhileImporting() {
+        if (activeImport != null) {
+            showError("Import Running", "Wait for the edge import to finish or cancel it first");
+            return true;
+        }
+        return false;
+    }
+
     private void showEdgeInputDialog() {
         JTextField fromLocation = new JTextField(5);
         JTextField toLocation = new JTextField(5);
@@ -179,7 +482,6 @@ public class MainView extends JFrame {
     }
 
     private void updateRouteDisplay() {
-        routeDisplayPanel.removeAll();
         try {
             StringBuilder displayText = new StringBuilder();
             SmartRouteOptimization system = controller.getSystem();
@@ -190,24 +492,41 @@ public class MainView extends JFrame {
             displayText.append(String.format("Total Vehicles: %s\n", stats.get("Total Vehicles")));
             displayText.append(String.format("Total Delivery Points: %s\n\n", stats.get("Total Delivery Points")));
 
+            List<RoutePanel.RouteRow> rows = new ArrayList<>();
             for (Vehicle vehicle : system.getVehicles()) {
-                RoutePanel routePanel = new RoutePanel(
-                        vehicle.getId(),
-                        vehicle.getCapacity(),
-                        vehicle.getCurrentLoad(),
-                        vehicle.getRoute()
-                );
-                routeDisplayPanel.add(routePanel);
+                rows.add(new RoutePanel.RouteRow(vehicle.getId(), vehicle.getCapacity(), vehicle.getCurrentLoad(),
+                        vehicle.getRouteArray()));
             }
-
-            routeDisplayPanel.revalidate();
-            routeDisplayPanel.repaint();
+            routeView.setRoutes(system.getDepotLocation(), rows);
 
         } catch (IllegalStateException e) {
             showError("Optimization Error", e.getMessage());
         }
     }
 
+    // Intermediate routes of a running solve, one array per vehicle in vehicle order.
+    // Loads are summed from the delivery points, which do not change during a solve.
+    private void showRouteSnapshot(List<int[]> routes) {
+        SmartRouteOptimization system = controller.getSystem();
+        int[] demand = new int[system.getCityGraph().getVertices()];
+        for (DeliveryPoint dp : system.getDeliveryPoints()) {
+            demand[dp.getId()] += dp.getDemand();
+        }
+        List<Vehicle> vehicles = system.getVehicles();
+        List<RoutePanel.RouteRow> rows = new ArrayList<>();
+        for (int i = 0; i < routes.size() && i < vehicles.size(); i++) {
+            int load = 0;
+            for (int stop : routes.get(i)) {
+                if (stop != system.getDepotLocation()) {
+                    load += demand[stop];
+                }
+            }
+            Vehicle vehicle = vehicles.get(i);
+            rows.add(new RoutePanel.RouteRow(vehicle.getId(), vehicle.getCapacity(), load, routes.get(i)));
+        }
+        routeView.setRoutes(system.getDepotLocation(), rows);
+    }
+
     private JButton createStyledButton(String text) {
         JButton button = new JButton(text);
         button.setBackground(primaryColor);
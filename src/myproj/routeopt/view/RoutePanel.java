@@ -2,80 +2,326 @@ package myproj.routeopt.view;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class RoutePanel extends JPanel {
-    private List<Integer> route;
-    private int vehicleId;
-    private int vehicleCapacity;
-    private int vehicleLoad;
+// One scrollable view for the routes of the whole fleet, one row per vehicle.
+// Only the rows and stops inside the clip rectangle are painted. Rows are
+// rendered in fixed width tiles that are cached as images, so scrolling only
+// copies images. Routes longer than COLLAPSE_STOPS show their first and last
+// stops around a "more" box until the row is clicked. Ctrl + mouse wheel
+// zooms; zoomed out, boxes shrink, drop labels that no longer fit and finally
+// become dots.
+public class RoutePanel extends JPanel implements Scrollable {
+    public static final class RouteRow {
+        final int vehicleId;
+        final int capacity;
+        final int load;
+        final int[] stops;
 
-    public RoutePanel(int vehicleId, int vehicleCapacity, int vehicleLoad, List<Integer> route) {
-        this.vehicleId = vehicleId;
-        this.vehicleCapacity = vehicleCapacity;
-        this.vehicleLoad = vehicleLoad;
-        this.route = route;
-        setPreferredSize(new Dimension(600, 150));
+        // stops is the full route including the depot at both ends; it is not copied
+        public RouteRow(int vehicleId, int capacity, int load, int[] stops) {
+            this.vehicleId = vehicleId;
+            this.capacity = capacity;
+            this.load = load;
+            this.stops = stops;
+        }
+    }
+
+    private static final int ROW_HEIGHT = 70;
+    private static final int LEFT_MARGIN = 20;
+    private static final int BOX_Y = 30;
+    private static final int BOX_HEIGHT = 30;
+    private static final int BASE_SPACING = 100;
+    private static final int BASE_BOX_WIDTH = 80;
+    private static final int TILE_WIDTH = 1024;
+    // About 30 MB of tiles, enough for several screens of a maximized window
+    private static final int MAX_CACHED_TILES = 128;
+    private static final int COLLAPSE_STOPS = 50;
+    private static final int COLLAPSED_HEAD = 20;
+    private static final int COLLAPSED_TAIL = 20;
+    private static final double MIN_ZOOM = 0.05;
+    private static final double MAX_ZOOM = 1.0;
+
+    private List<RouteRow> rows = Collections.emptyList();
+    private int depot = -1;
+    private final Set<Integer> expandedRows = new HashSet<>();
+    private double zoom = 1.0;
+    private int widestRowItems;
+
+    // (row << 32 | tile) -> rendered tile, least recently used dropped first
+    private final Map<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+    private double tileScale = 1.0;
+
+    public RoutePanel() {
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = e.getY() / ROW_HEIGHT;
+                if (row < rows.size() && rows.get(row).stops.length > COLLAPSE_STOPS) {
+                    if (!expandedRows.remove(row)) {
+                        expandedRows.add(row);
+                    }
+                    invalidateRow(row);
+                    updateLayout();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0) {
+                    setZoom(zoom * Math.pow(0.9, e.getPreciseWheelRotation()));
+                } else if (getParent() != null) {
+                    // Plain wheel events still scroll the enclosing scroll pane
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(RoutePanel.this, e, getParent()));
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    public void setRoutes(int depot, List<RouteRow> rows) {
+        this.depot = depot;
+        this.rows = rows;
+        expandedRows.clear();
+        tiles.clear();
+        updateLayout();
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public void setZoom(double zoom) {
+        double clamped = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        if (clamped != this.zoom) {
+            this.zoom = clamped;
+            tiles.clear();
+            updateLayout();
+        }
+    }
+
+    private void updateLayout() {
+        widestRowItems = 0;
+        for (int r = 0; r < rows.size(); r++) {
+            widestRowItems = Math.max(widestRowItems, itemCount(r));
+        }
+        revalidate();
+        repaint();
+    }
+
+    private void invalidateRow(int row) {
+        tiles.keySet().removeIf(key -> (int) (key >>> 32) == row);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        long width = LEFT_MARGIN * 2L + (long) widestRowItems * spacing();
+        return new Dimension((int) Math.min(Integer.MAX_VALUE / 2, Math.max(400, width)),
+                Math.max(ROW_HEIGHT, rows.size() * ROW_HEIGHT));
     }
 
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
 
-        int x = 20; // Starting x position
-        int y = 60; // y position for route
+        // Tiles are rendered at the device scale so they stay sharp on HiDPI screens
+        AffineTransform transform = ((Graphics2D) g).getTransform();
+        double scale = Math.max(1.0, transform.getScaleX());
+        if (scale != tileScale) {
+            tileScale = scale;
+            tiles.clear();
+        }
 
-        // Draw Vehicle Info at the top
-        g2.drawString(String.format("Vehicle %d (Capacity: %d, Load: %d)", vehicleId, vehicleCapacity, vehicleLoad), x, 20);
+        int firstRow = Math.max(0, clip.y / ROW_HEIGHT);
+        int lastRow = Math.min(rows.size() - 1, (clip.y + clip.height - 1) / ROW_HEIGHT);
+        int firstTile = Math.max(0, clip.x / TILE_WIDTH);
+        int lastTile = (clip.x + clip.width - 1) / TILE_WIDTH;
+        for (int r = firstRow; r <= lastRow; r++) {
+            int rowTiles = (rowWidth(r) + TILE_WIDTH - 1) / TILE_WIDTH;
+            for (int t = firstTile; t <= lastTile && t < rowTiles; t++) {
+                g.drawImage(tile(r, t), t * TILE_WIDTH, r * ROW_HEIGHT, TILE_WIDTH, ROW_HEIGHT, null);
+            }
+        }
+    }
 
-        // Draw depot at the start
-        drawLocation(g2, x, y, "Depot", Color.LIGHT_GRAY);
-        x += 100;
+    private BufferedImage tile(int row, int tile) {
+        long key = ((long) row << 32) | tile;
+        BufferedImage image = tiles.get(key);
+        if (image == null) {
+            image = new BufferedImage((int) Math.ceil(TILE_WIDTH * tileScale), (int) Math.ceil(ROW_HEIGHT * tileScale),
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = image.createGraphics();
+            try {
+                g2.scale(tileScale, tileScale);
+                g2.setColor(getBackground());
+                g2.fillRect(0, 0, TILE_WIDTH, ROW_HEIGHT);
+                g2.translate(-tile * TILE_WIDTH, 0);
+                g2.setFont(getFont());
+                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                paintRow(g2, row, tile * TILE_WIDTH, (tile + 1) * TILE_WIDTH);
+            } finally {
+                g2.dispose();
+            }
+            tiles.put(key, image);
+        }
+        return image;
+    }
 
-        // Draw each location in the route
-        int stopNumber = 1;
-        for (Integer locationId : route) {
-            drawArrow(g2, x - 50, y + 10, x, y + 10);
-            drawLocation(g2, x, y, "Stop " + stopNumber + ": " + locationId, Color.CYAN);
-            x += 100;
-            stopNumber++;
+    // Paints the part of one row between x pixels from and to, in row coordinates
+    private void paintRow(Graphics2D g2, int row, int from, int to) {
+        RouteRow route = rows.get(row);
+        int items = itemCount(row);
+        if (from < TILE_WIDTH) {
+            g2.setColor(Color.BLACK);
+            g2.drawString(String.format("Vehicle %d (Capacity: %d, Load: %d, Stops: %d)%s", route.vehicleId,
+                    route.capacity, route.load, Math.max(0, route.stops.length - 2),
+                    isCollapsed(row) ? "  - click to expand" : ""), LEFT_MARGIN, 20);
         }
 
-        // Draw arrow back to the depot
-        drawArrow(g2, x - 50, y + 10, x, y + 10);
-        drawLocation(g2, x, y, "Depot", Color.LIGHT_GRAY);
+        int spacing = spacing();
+        int boxWidth = boxWidth();
+        int first = Math.max(0, (from - LEFT_MARGIN - boxWidth) / spacing);
+        int last = Math.min(items - 1, (to - LEFT_MARGIN) / spacing + 1);
+        for (int i = first; i <= last; i++) {
+            int x = LEFT_MARGIN + i * spacing;
+            if (i > 0) {
+                drawArrow(g2, x - spacing + boxWidth, BOX_Y + BOX_HEIGHT / 2, x, BOX_Y + BOX_HEIGHT / 2,
+                        spacing - boxWidth >= 12);
+            }
+            drawItem(g2, row, i, x, boxWidth);
+        }
     }
 
-    private void drawLocation(Graphics2D g2, int x, int y, String label, Color color) {
+    private void drawItem(Graphics2D g2, int row, int item, int x, int boxWidth) {
+        RouteRow route = rows.get(row);
+        int stopIndex = stopIndex(row, item);
+        String label;
+        String shortLabel = null;
+        Color color;
+        if (stopIndex < 0) {
+            int hidden = route.stops.length - COLLAPSED_HEAD - COLLAPSED_TAIL;
+            label = String.format("+%d more", hidden);
+            color = Color.ORANGE;
+        } else if (route.stops[stopIndex] == depot && (stopIndex == 0 || stopIndex == route.stops.length - 1)) {
+            label = "Depot";
+            color = Color.LIGHT_GRAY;
+        } else {
+            label = "Stop " + stopIndex + ": " + route.stops[stopIndex];
+            shortLabel = String.valueOf(route.stops[stopIndex]);
+            color = Color.CYAN;
+        }
+
+        if (boxWidth < 6) {
+            g2.setColor(color.darker());
+            g2.fillOval(x, BOX_Y + BOX_HEIGHT / 2 - 2, 4, 4);
+            return;
+        }
         g2.setColor(color);
-        g2.fillRoundRect(x, y, 80, 30, 10, 10);
+        g2.fillRoundRect(x, BOX_Y, boxWidth, BOX_HEIGHT, 10, 10);
         g2.setColor(Color.BLACK);
-        g2.drawRoundRect(x, y, 80, 30, 10, 10);
-        g2.drawString(label, x + 10, y + 20);
+        g2.drawRoundRect(x, BOX_Y, boxWidth, BOX_HEIGHT, 10, 10);
+        FontMetrics metrics = g2.getFontMetrics();
+        if (metrics.stringWidth(label) > boxWidth - 4 && shortLabel != null) {
+            label = shortLabel;
+        }
+        if (metrics.stringWidth(label) <= boxWidth - 4) {
+            g2.drawString(label, x + (boxWidth - metrics.stringWidth(label)) / 2, BOX_Y + 20);
+        }
     }
 
-    private void drawArrow(Graphics2D g2, int x1, int y1, int x2, int y2) {
+    private void drawArrow(Graphics2D g2, int x1, int y1, int x2, int y2, boolean withHead) {
         g2.setColor(Color.BLACK);
         g2.drawLine(x1, y1, x2, y2);
-        int arrowSize = 6;
-        int dx = x2 - x1, dy = y2 - y1;
-        double D = Math.sqrt(dx * dx + dy * dy);
-        double xm = D - arrowSize, xn = xm, ym = arrowSize, yn = -arrowSize, x;
-        double sin = dy / D, cos = dx / D;
+        if (withHead) {
+            int arrowSize = 6;
+            g2.fillPolygon(new int[]{x2, x2 - arrowSize, x2 - arrowSize},
+                    new int[]{y2, y2 - arrowSize, y2 + arrowSize}, 3);
+        }
+    }
+
+    // Items are the drawn boxes: every stop, or head + "more" box + tail when collapsed
+    private int itemCount(int row) {
+        int stops = rows.get(row).stops.length;
+        return isCollapsed(row) ? COLLAPSED_HEAD + 1 + COLLAPSED_TAIL : stops;
+    }
+
+    // Index into the route of a drawn item, -1 for the "more" box
+    private int stopIndex(int row, int item) {
+        if (!isCollapsed(row) || item < COLLAPSED_HEAD) {
+            return item;
+        }
+        if (item == COLLAPSED_HEAD) {
+            return -1;
+        }
+        return rows.get(row).stops.length - (COLLAPSED_HEAD + 1 + COLLAPSED_TAIL - item);
+    }
+
+    private boolean isCollapsed(int row) {
+        return rows.get(row).stops.length > COLLAPSE_STOPS && !expandedRows.contains(row);
+    }
+
+    private int rowWidth(int row) {
+        // The header text needs at least the first tile
+        return Math.max(TILE_WIDTH, LEFT_MARGIN * 2 + itemCount(row) * spacing());
+    }
+
+    private int spacing() {
+        return Math.max(4, (int) Math.round(BASE_SPACING * zoom));
+    }
 
-        x = xm * cos - ym * sin + x1;
-        ym = xm * sin + ym * cos + y1;
-        xm = x;
+    private int boxWidth() {
+        return Math.max(2, (int) Math.round(BASE_BOX_WIDTH * zoom));
+    }
 
-        x = xn * cos - yn * sin + x1;
-        yn = xn * sin + yn * cos + y1;
-        xn = x;
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(600, ROW_HEIGHT * 3);
+    }
 
-        int[] xpoints = {x2, (int) xm, (int) xn};
-        int[] ypoints = {y2, (int) ym, (int) yn};
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? ROW_HEIGHT / 2 : spacing();
+    }
 
-        g2.fillPolygon(xpoints, ypoints, 3);
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL
+                ? Math.max(ROW_HEIGHT, visibleRect.height - ROW_HEIGHT)
+                : Math.max(spacing(), visibleRect.width - spacing());
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
     }
 }